@@ -0,0 +1,320 @@
+package benchmarks;
+
+import java.io.*;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.regex.Pattern;
+import utils.FileBenchmarks;
+
+/**
+ * Runs the benchmark suites and compares the results with a baseline.
+ *
+ * Each benchmark is warmed up, then measured over several fixed-length
+ * iterations; every thread calls the operation in a loop until the
+ * iteration ends. Reported per benchmark: mean throughput with its standard
+ * deviation across iterations, bytes allocated per operation by the
+ * measuring threads, and the collections and GC time during measurement.
+ *
+ * Usage: java benchmarks.BenchmarkRunner [--scales 10000,1000000,10000000]
+ *        [--groups service,contention,file] [--filter regex] [--threads n]
+ *        [--warmup n] [--iterations n] [--time-ms n] [--out results.csv]
+ *        [--baseline baseline.csv]
+ */
+public final class BenchmarkRunner {
+    private static final String HEADER = "benchmark,scale,threads,ops_per_sec,stdev,alloc_bytes_per_op,gc_count,gc_time_ms";
+
+    // Each result is compared with a value that never matches, so the JIT cannot drop the work
+    private static volatile Object neverReturned = new Object();
+    private static volatile Object sink;
+
+    private final int warmupIterations;
+    private final int measuredIterations;
+    private final long iterationMillis;
+
+    private BenchmarkRunner(int warmupIterations, int measuredIterations, long iterationMillis) {
+        this.warmupIterations = warmupIterations;
+        this.measuredIterations = measuredIterations;
+        this.iterationMillis = iterationMillis;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseOptions(args);
+        int[] scales = Arrays.stream(options.getOrDefault("scales", "10000").split(","))
+                             .mapToInt(scale -> Integer.parseInt(scale.trim())).toArray();
+        Set<String> groups = new HashSet<>(Arrays.asList(
+                options.getOrDefault("groups", "service,contention,file").split(",")));
+        Pattern filter = Pattern.compile(options.getOrDefault("filter", ".*"));
+        int threads = Integer.parseInt(options.getOrDefault("threads",
+                String.valueOf(Math.max(2, Runtime.getRuntime().availableProcessors()))));
+        BenchmarkRunner runner = new BenchmarkRunner(Integer.parseInt(options.getOrDefault("warmup", "3")),
+                                                     Integer.parseInt(options.getOrDefault("iterations", "5")),
+                                                     Long.parseLong(options.getOrDefault("time-ms", "1000")));
+
+        List<Result> results = new ArrayList<>();
+        for (int scale : scales) {
+            BenchmarkSuite suite = new BenchmarkSuite(scale, threads);
+            if (groups.contains("service")) {
+                ServiceBenchmarks.register(suite);
+            }
+            if (groups.contains("contention")) {
+                ContentionBenchmarks.register(suite);
+            }
+            if (groups.contains("file")) {
+                FileBenchmarks.register(suite);
+            }
+            for (BenchmarkSuite.Entry entry : suite.getEntries()) {
+                if (filter.matcher(entry.name).find()) {
+                    Result result = runner.run(entry, scale);
+                    System.out.println(result.format());
+                    results.add(result);
+                }
+            }
+        }
+
+        if (options.containsKey("out")) {
+            writeResults(new File(options.get("out")), results);
+        }
+        if (options.containsKey("baseline")) {
+            compare(readResults(new File(options.get("baseline"))), results);
+        }
+    }
+
+    private Result run(BenchmarkSuite.Entry entry, int scale) throws Exception {
+        BenchmarkSuite.Operation operation = entry.setup.create();
+        for (int i = 0; i < warmupIterations; i++) {
+            if (entry.setupPerIteration && i > 0) {
+                operation = entry.setup.create();
+            }
+            iterate(operation, entry.threads);
+        }
+
+        double[] throughput = new double[measuredIterations];
+        long operations = 0;
+        long allocated = 0;
+        long gcCount = 0;
+        long gcMillis = 0;
+        for (int i = 0; i < measuredIterations; i++) {
+            if (entry.setupPerIteration) {
+                operation = entry.setup.create();
+                System.gc(); // Collect setup garbage before measuring
+            }
+            long countBefore = gcCount();
+            long millisBefore = gcMillis();
+            Iteration iteration = iterate(operation, entry.threads);
+            gcCount += gcCount() - countBefore;
+            gcMillis += gcMillis() - millisBefore;
+            throughput[i] = iteration.operations * 1e9 / iteration.nanos;
+            operations += iteration.operations;
+            allocated = allocated < 0 || iteration.allocatedBytes < 0 ? -1 : allocated + iteration.allocatedBytes;
+        }
+        return new Result(entry.name, scale, entry.threads, mean(throughput), stdev(throughput),
+                          allocated < 0 ? -1 : (double) allocated / Math.max(1, operations), gcCount, gcMillis);
+    }
+
+    // Run the operation on each thread until the iteration time is up
+    private Iteration iterate(BenchmarkSuite.Operation operation, int threads) throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        long[] counts = new long[threads];
+        long[] allocations = new long[threads];
+        Exception[] failures = new Exception[threads];
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            workers[t] = new Thread(() -> {
+                long allocatedBefore = threadAllocatedBytes();
+                long count = 0;
+                try {
+                    start.await();
+                    long deadline = System.nanoTime() + iterationMillis * 1_000_000;
+                    do {
+                        if (operation.run(thread) == neverReturned) {
+                            sink = neverReturned;
+                        }
+                        count++;
+                    } while (System.nanoTime() < deadline);
+                } catch (Exception e) {
+                    failures[thread] = e;
+                }
+                counts[thread] = count;
+                long allocatedAfter = threadAllocatedBytes();
+                allocations[thread] = allocatedBefore < 0 ? -1 : allocatedAfter - allocatedBefore;
+            }, "benchmark-" + t);
+            workers[t].start();
+        }
+
+        long started = System.nanoTime();
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        long nanos = System.nanoTime() - started;
+        for (Exception failure : failures) {
+            if (failure != null) {
+                throw failure;
+            }
+        }
+
+        Iteration iteration = new Iteration();
+        iteration.nanos = nanos;
+        for (int t = 0; t < threads; t++) {
+            iteration.operations += counts[t];
+            iteration.allocatedBytes = allocations[t] < 0 || iteration.allocatedBytes < 0
+                                       ? -1 : iteration.allocatedBytes + allocations[t];
+        }
+        return iteration;
+    }
+
+    // Bytes allocated by the current thread, or -1 if the JVM cannot tell
+    private static long threadAllocatedBytes() {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, collector.getCollectionCount());
+        }
+        return count;
+    }
+
+    private static long gcMillis() {
+        long millis = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            millis += Math.max(0, collector.getCollectionTime());
+        }
+        return millis;
+    }
+
+    private static double mean(double[] values) {
+        double sum = 0;
+        for (double value : values) {
+            sum += value;
+        }
+        return values.length > 0 ? sum / values.length : 0;
+    }
+
+    private static double stdev(double[] values) {
+        if (values.length < 2) {
+            return 0;
+        }
+        double mean = mean(values);
+        double squares = 0;
+        for (double value : values) {
+            squares += (value - mean) * (value - mean);
+        }
+        return Math.sqrt(squares / (values.length - 1));
+    }
+
+    // Results files
+    private static void writeResults(File file, List<Result> results) throws IOException {
+        try (PrintWriter writer = new PrintWriter(file, StandardCharsets.UTF_8)) {
+            writer.println(HEADER);
+            for (Result result : results) {
+                writer.println(result.toCsv());
+            }
+        }
+        System.out.println("Results written to: " + file);
+    }
+
+    private static Map<String, Result> readResults(File file) throws IOException {
+        Map<String, Result> results = new LinkedHashMap<>();
+        try (BufferedReader reader = new BufferedReader(new FileReader(file, StandardCharsets.UTF_8))) {
+            String line = reader.readLine(); // Skip header
+            while ((line = reader.readLine()) != null) {
+                if (!line.trim().isEmpty()) {
+                    Result result = Result.parse(line);
+                    results.put(result.key(), result);
+                }
+            }
+        }
+        return results;
+    }
+
+    // Throughput change against the baseline; allocation changes show the GC side
+    private static void compare(Map<String, Result> baseline, List<Result> results) {
+        System.out.println("\n--- COMPARED WITH BASELINE ---");
+        System.out.printf("%-28s %10s %8s %14s %14s %8s %12s%n",
+                          "Benchmark", "Scale", "Threads", "Baseline op/s", "Current op/s", "Change", "B/op change");
+        for (Result result : results) {
+            Result base = baseline.get(result.key());
+            if (base == null) {
+                System.out.printf("%-28s %10d %8d %14s %14.1f %8s %12s%n",
+                                  result.name, result.scale, result.threads, "-", result.opsPerSecond, "new", "-");
+                continue;
+            }
+            double change = (result.opsPerSecond - base.opsPerSecond) / base.opsPerSecond * 100;
+            double allocationChange = result.allocatedPerOp - base.allocatedPerOp;
+            System.out.printf("%-28s %10d %8d %14.1f %14.1f %+7.1f%% %+12.1f%n",
+                              result.name, result.scale, result.threads, base.opsPerSecond, result.opsPerSecond,
+                              change, allocationChange);
+        }
+    }
+
+    private static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--") || i + 1 >= args.length) {
+                throw new IllegalArgumentException("Expected --option value, got: " + args[i]);
+            }
+            options.put(args[i].substring(2), args[++i]);
+        }
+        return options;
+    }
+
+    private static final class Iteration {
+        long operations;
+        long nanos;
+        long allocatedBytes;
+    }
+
+    private static final class Result {
+        final String name;
+        final int scale;
+        final int threads;
+        final double opsPerSecond;
+        final double stdev;
+        final double allocatedPerOp; // -1 if unknown
+        final long gcCount;
+        final long gcMillis;
+
+        Result(String name, int scale, int threads, double opsPerSecond, double stdev,
+               double allocatedPerOp, long gcCount, long gcMillis) {
+            this.name = name;
+            this.scale = scale;
+            this.threads = threads;
+            this.opsPerSecond = opsPerSecond;
+            this.stdev = stdev;
+            this.allocatedPerOp = allocatedPerOp;
+            this.gcCount = gcCount;
+            this.gcMillis = gcMillis;
+        }
+
+        static Result parse(String line) {
+            String[] fields = line.split(",");
+            return new Result(fields[0], Integer.parseInt(fields[1]), Integer.parseInt(fields[2]),
+                              Double.parseDouble(fields[3]), Double.parseDouble(fields[4]),
+                              Double.parseDouble(fields[5]), Long.parseLong(fields[6]), Long.parseLong(fields[7]));
+        }
+
+        String key() {
+            return name + "/" + scale + "/" + threads;
+        }
+
+        String toCsv() {
+            return String.format(Locale.ROOT, "%s,%d,%d,%.1f,%.1f,%.1f,%d,%d",
+                                 name, scale, threads, opsPerSecond, stdev, allocatedPerOp, gcCount, gcMillis);
+        }
+
+        String format() {
+            return String.format("%-28s scale=%-9d threads=%-3d %14.1f +- %-12.1f op/s %12.1f B/op  gc: %d (%d ms)",
+                                 name, scale, threads, opsPerSecond, stdev, allocatedPerOp, gcCount, gcMillis);
+        }
+    }
+}
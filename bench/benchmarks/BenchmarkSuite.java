@@ -0,0 +1,72 @@
+package benchmarks;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The benchmarks to run at one data scale.
+ *
+ * A benchmark is an operation timed in a loop by one or more threads. Its
+ * setup runs once, or before every iteration for operations that grow
+ * state (e.g. circulation, which appends to the transaction log), so
+ * iterations stay comparable.
+ */
+public final class BenchmarkSuite {
+
+    // One timed call; thread is 0..threads-1 so threads can work on disjoint data
+    public interface Operation {
+        Object run(int thread) throws Exception;
+    }
+
+    // Builds the state an operation works on, outside the timed loop
+    public interface Setup {
+        Operation create() throws Exception;
+    }
+
+    private final int scale;
+    private final int threads;
+    private final List<Entry> entries;
+
+    BenchmarkSuite(int scale, int threads) {
+        this.scale = scale;
+        this.threads = threads;
+        this.entries = new ArrayList<>();
+    }
+
+    // Records in the generated data set
+    public int getScale() {
+        return scale;
+    }
+
+    // Threads used by multi-threaded benchmarks
+    public int getThreads() {
+        return threads;
+    }
+
+    public void add(String name, int threads, Operation operation) {
+        entries.add(new Entry(name, threads, () -> operation, false));
+    }
+
+    public void addFresh(String name, int threads, Setup setup) {
+        entries.add(new Entry(name, threads, setup, true));
+    }
+
+    List<Entry> getEntries() {
+        return Collections.unmodifiableList(entries);
+    }
+
+    static final class Entry {
+        final String name;
+        final int threads;
+        final Setup setup;
+        final boolean setupPerIteration;
+
+        Entry(String name, int threads, Setup setup, boolean setupPerIteration) {
+            this.name = name;
+            this.threads = threads;
+            this.setup = setup;
+            this.setupPerIteration = setupPerIteration;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package benchmarks;
+
+import java.time.LocalDate;
+import models.Book;
+import models.LoanState;
+
+/**
+ * Borrow and return on a few hot books, comparing the lock-free
+ * compare-and-set on Book's LoanState with the same state guarded by a
+ * monitor, as loans were handled before they became optimistic.
+ */
+public final class ContentionBenchmarks {
+    private static final int HOT_BOOKS = 4;
+
+    private ContentionBenchmarks() {
+    }
+
+    public static void register(BenchmarkSuite suite) {
+        int threads = suite.getThreads();
+        for (int count : new int[] {1, threads}) {
+            suite.addFresh("loanCas", count, () -> casLoans(count));
+            suite.addFresh("loanSynchronized", count, () -> synchronizedLoans(count));
+        }
+    }
+
+    private static BenchmarkSuite.Operation casLoans(int threads) {
+        Book[] books = new Book[HOT_BOOKS];
+        for (int i = 0; i < HOT_BOOKS; i++) {
+            books[i] = new Book(Datasets.bookId(i), "Hot " + i, "Author", "978-" + i, "Fiction");
+        }
+        LocalDate today = LocalDate.now();
+        LocalDate due = today.plusDays(14);
+        String[] memberIds = memberIds(threads);
+        int[] positions = new int[threads * 16]; // Padded so threads do not share a cache line
+        return thread -> {
+            Book book = books[(thread + positions[thread * 16]++) % HOT_BOOKS];
+            while (true) {
+                LoanState current = book.getLoanState();
+                if (!current.isAvailable()) {
+                    return Boolean.FALSE; // Another thread holds it
+                }
+                LoanState loan = current.borrowed(memberIds[thread], today, due);
+                if (book.compareAndSetLoanState(current, loan)) {
+                    book.compareAndSetLoanState(loan, loan.returned());
+                    return Boolean.TRUE;
+                }
+            }
+        };
+    }
+
+    private static BenchmarkSuite.Operation synchronizedLoans(int threads) {
+        LockedLoan[] books = new LockedLoan[HOT_BOOKS];
+        for (int i = 0; i < HOT_BOOKS; i++) {
+            books[i] = new LockedLoan();
+        }
+        LocalDate today = LocalDate.now();
+        LocalDate due = today.plusDays(14);
+        String[] memberIds = memberIds(threads);
+        int[] positions = new int[threads * 16];
+        return thread -> {
+            LockedLoan book = books[(thread + positions[thread * 16]++) % HOT_BOOKS];
+            if (!book.borrow(memberIds[thread], today, due)) {
+                return Boolean.FALSE;
+            }
+            book.giveBack();
+            return Boolean.TRUE;
+        };
+    }
+
+    private static String[] memberIds(int threads) {
+        String[] memberIds = new String[threads];
+        for (int i = 0; i < threads; i++) {
+            memberIds[i] = Datasets.memberId(i);
+        }
+        return memberIds;
+    }
+
+    // Loan fields behind a monitor
+    private static final class LockedLoan {
+        private boolean available = true;
+        private String borrowedBy;
+        private LocalDate borrowDate;
+        private LocalDate dueDate;
+
+        synchronized boolean borrow(String memberId, LocalDate borrowDate, LocalDate dueDate) {
+            if (!available) {
+                return false;
+            }
+            this.available = false;
+            this.borrowedBy = memberId;
+            this.borrowDate = borrowDate;
+            this.dueDate = dueDate;
+            return true;
+        }
+
+        synchronized void giveBack() {
+            available = true;
+            borrowedBy = null;
+            borrowDate = null;
+            dueDate = null;
+        }
+    }
+}
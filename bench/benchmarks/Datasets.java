@@ -0,0 +1,98 @@
+package benchmarks;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import models.*;
+
+/**
+ * Deterministic library data for benchmarks, so runs at the same scale
+ * work on the same records and can be compared with a baseline.
+ */
+public final class Datasets {
+    static final String[] WORDS = {
+        "history", "garden", "river", "night", "stone", "empire", "silent", "winter", "ocean", "shadow",
+        "machine", "letters", "island", "journey", "mountain", "fire", "glass", "kingdom", "memory", "light",
+        "storm", "city", "forest", "secret", "iron", "summer", "bridge", "dream", "north", "crown"
+    };
+    static final String[] AUTHORS = {
+        "Austen", "Orwell", "Tolstoy", "Woolf", "Dickens", "Morrison", "Achebe", "Borges", "Calvino",
+        "Eliot", "Hemingway", "Ishiguro", "Kafka", "Le Guin", "Murakami", "Nabokov", "Okri", "Pamuk"
+    };
+    static final String[] CATEGORIES = {
+        "Fiction", "History", "Science", "Poetry", "Travel", "Biography", "Children", "Reference",
+        "Philosophy", "Art", "Romance", "Dystopian"
+    };
+    private static final long SEED = 20240601L;
+
+    private Datasets() {
+    }
+
+    public static String bookId(int index) {
+        return String.format("B%08d", index);
+    }
+
+    public static String memberId(int index) {
+        return String.format("M%08d", index);
+    }
+
+    public static List<Book> books(int count) {
+        List<Book> books = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            books.add(new Book(bookId(i), titleWords(i) + " " + i, author(i), "978-" + i, CATEGORIES[i % CATEGORIES.length]));
+        }
+        return books;
+    }
+
+    /**
+     * Queries copied from books spread over the catalog, alternating the
+     * two title words and the author, so each matches at least that book
+     * (search matches the query within a single field)
+     */
+    public static String[] searchQueries(int count, int books) {
+        String[] queries = new String[count];
+        for (int i = 0; i < count; i++) {
+            int book = (int) ((long) i * 7919 % Math.max(1, books));
+            queries[i] = i % 2 == 0 ? titleWords(book) : author(book);
+        }
+        return queries;
+    }
+
+    private static String titleWords(int book) {
+        return WORDS[book % WORDS.length] + " " + WORDS[(book * 7 + 3) % WORDS.length];
+    }
+
+    private static String author(int book) {
+        return AUTHORS[(book * 13) % AUTHORS.length] + ", " + WORDS[(book * 11) % WORDS.length];
+    }
+
+    public static List<Member> members(int count) {
+        Member.MemberType[] types = Member.MemberType.values();
+        List<Member> members = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            members.add(new Member(memberId(i), "Member " + i, "member" + i + "@example.org",
+                                   "555-" + i, i + " Main St, \"Unit\" " + (i % 40), types[i % types.length]));
+        }
+        return members;
+    }
+
+    // A year of borrows and returns over the given books and members
+    public static List<Transaction> transactions(int count, int books, int members) {
+        Random random = new Random(SEED);
+        LocalDateTime start = LocalDateTime.of(2024, 1, 1, 9, 0);
+        long secondsPerTransaction = Math.max(1, 365L * 24 * 3600 / Math.max(1, count));
+        List<Transaction> transactions = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            boolean isReturn = (i & 1) == 1;
+            Transaction transaction = new Transaction(String.format("TXN%08d", i + 1),
+                    memberId(random.nextInt(members)), bookId(random.nextInt(books)),
+                    isReturn ? Transaction.TransactionType.RETURN : Transaction.TransactionType.BORROW,
+                    isReturn && random.nextInt(10) == 0 ? random.nextInt(20) : 0.0,
+                    isReturn ? "Book returned" : "Book borrowed");
+            transaction.setTransactionDate(start.plusSeconds(i * secondsPerTransaction));
+            transactions.add(transaction);
+        }
+        return transactions;
+    }
+}
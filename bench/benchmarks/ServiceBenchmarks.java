@@ -0,0 +1,96 @@
+package benchmarks;
+
+import java.time.LocalDate;
+import java.util.List;
+import models.*;
+import services.LibraryService;
+
+/**
+ * LibraryService paths: search, circulation, overdue lookups and
+ * statistics, over scale books and scale / 10 members.
+ */
+public final class ServiceBenchmarks {
+    private static final int PAGE_SIZE = 20;
+    private static final int BORROWED_PERCENT = 1; // Of which half are overdue
+    private static final int CIRCULATION_BOOKS = 4096; // Per thread, cycled through
+    private static final int SEARCH_QUERIES = 64; // Cycled through
+
+    private ServiceBenchmarks() {
+    }
+
+    public static void register(BenchmarkSuite suite) {
+        int scale = suite.getScale();
+        int threads = suite.getThreads();
+        LibraryService service = newService(scale);
+        lendBooks(service, scale);
+
+        // Search
+        String[] queries = Datasets.searchQueries(SEARCH_QUERIES, scale);
+        int[] next = new int[1];
+        suite.add("searchBooks", 1, thread -> service.searchBooks(queries[next[0]++ % queries.length], 0, PAGE_SIZE));
+        suite.add("searchBooksByTitle", 1,
+                  thread -> service.searchBooksByTitle(Datasets.WORDS[next[0]++ % Datasets.WORDS.length], 0, PAGE_SIZE));
+        suite.add("searchBooksByAuthor", 1,
+                  thread -> service.searchBooksByAuthor(Datasets.AUTHORS[next[0]++ % Datasets.AUTHORS.length],
+                                                        0, PAGE_SIZE));
+        suite.add("searchBooksByCategory", 1,
+                  thread -> service.searchBooksByCategory(Datasets.CATEGORIES[next[0]++ % Datasets.CATEGORIES.length],
+                                                          0, PAGE_SIZE));
+
+        // Overdue and statistics
+        LocalDate today = LocalDate.now();
+        suite.add("getOverdueBooks", 1, thread -> service.getOverdueBooks(today));
+        suite.add("getOverdueBooksCount", 1, thread -> service.getOverdueBooksCount(today));
+        suite.add("getAccruedFines", 1, thread -> service.getAccruedFines(today));
+        suite.add("getStatistics", 1, thread -> service.getStatistics());
+        suite.add("getAvailableBooksCount", 1, thread -> service.getAvailableBooksCount());
+
+        // Circulation grows the transaction log, so each iteration starts from a fresh service
+        suite.addFresh("borrowReturn", 1, () -> circulation(scale, 1));
+        suite.addFresh("borrowReturn", threads, () -> circulation(scale, threads));
+    }
+
+    // Each thread borrows and returns books from its own slice, as its own member
+    private static BenchmarkSuite.Operation circulation(int scale, int threads) {
+        LibraryService service = newService(scale);
+        int slice = Math.min(CIRCULATION_BOOKS, scale / threads);
+        String[][] bookIds = new String[threads][slice];
+        String[] memberIds = new String[threads];
+        for (int t = 0; t < threads; t++) {
+            for (int i = 0; i < slice; i++) {
+                bookIds[t][i] = Datasets.bookId(t * (scale / threads) + i);
+            }
+            memberIds[t] = Datasets.memberId(t);
+        }
+        int[] positions = new int[threads * 16]; // Padded so threads do not share a cache line
+        return thread -> {
+            String bookId = bookIds[thread][positions[thread * 16]++ % slice];
+            service.borrowBook(memberIds[thread], bookId);
+            return service.returnBook(memberIds[thread], bookId);
+        };
+    }
+
+    private static LibraryService newService(int scale) {
+        LibraryService service = new LibraryService();
+        List<Book> books = Datasets.books(scale);
+        List<Member> members = Datasets.members(Math.max(100, scale / 10));
+        service.addBooks(books);
+        for (Member member : members) {
+            service.addMember(member);
+        }
+        return service;
+    }
+
+    // Put a share of the books on loan, half of them past due
+    private static void lendBooks(LibraryService service, int scale) {
+        LocalDate today = LocalDate.now();
+        int step = 100 / BORROWED_PERCENT;
+        for (int i = 0; i < scale; i += step) {
+            Book book = service.getBook(Datasets.bookId(i));
+            LocalDate borrowed = today.minusDays(30);
+            LocalDate due = (i / step) % 2 == 0 ? today.minusDays(5) : today.plusDays(5);
+            LoanState current = book.getLoanState();
+            book.compareAndSetLoanState(current, current.borrowed(Datasets.memberId(0), borrowed, due));
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package benchmarks;
+
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import models.*;
+import services.BatchResult;
+import services.LibraryService;
+import services.TransactionPage;
+
+/**
+ * Circulation desks hammering one LibraryService, checking that no copy is
+ * ever lent twice, no member goes over their limit and no transaction ID is
+ * handed out twice.
+ *
+ * Every desk borrows single books and batches of books for random members
+ * from a small set of hot books, and returns what it lent. A desk claims
+ * a book in a shadow table right after the service lends it and releases
+ * the claim right before returning it, so a claim that is already taken
+ * means the service lent a book that was out. Per-member counts work the
+ * same way against the borrowing limit. At the end, every book on loan
+ * must be in its borrower's list and the other way round.
+ *
+ * Usage: java benchmarks.StressTest [--desks n] [--books n] [--members n]
+ *        [--seconds n] [--seed n]
+ * Exits with status 1 if any check fails.
+ */
+public final class StressTest {
+    private static final int BATCH_SIZE = 3;
+
+    private final LibraryService service;
+    private final String[] bookIds;
+    private final String[] memberIds;
+    private final int[] memberLimits;
+    private final AtomicReferenceArray<String> lentTo; // Shadow loans, by book index
+    private final AtomicInteger[] loanCounts; // Shadow loan counts, by member index
+    private final AtomicLong borrows = new AtomicLong();
+    private final AtomicLong returns = new AtomicLong();
+    private final AtomicLong refusals = new AtomicLong();
+    private final List<String> violations = Collections.synchronizedList(new ArrayList<>());
+
+    private StressTest(int books, int members) {
+        this.service = new LibraryService();
+        this.bookIds = new String[books];
+        this.memberIds = new String[members];
+        this.memberLimits = new int[members];
+        this.lentTo = new AtomicReferenceArray<>(books);
+        this.loanCounts = new AtomicInteger[members];
+        for (int i = 0; i < books; i++) {
+            bookIds[i] = String.format("B%08d", i);
+            service.addBook(new Book(bookIds[i], "Hot " + i, "Author " + i, "978-" + i, "Fiction"));
+        }
+        Member.MemberType[] types = Member.MemberType.values();
+        for (int i = 0; i < members; i++) {
+            memberIds[i] = String.format("M%08d", i);
+            Member member = new Member(memberIds[i], "Member " + i, "member" + i + "@example.org",
+                                       "555-" + i, i + " Main St", types[i % types.length]);
+            service.addMember(member);
+            memberLimits[i] = member.getMemberType().getMaxBooksAllowed();
+            loanCounts[i] = new AtomicInteger();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseOptions(args);
+        int desks = Integer.parseInt(options.getOrDefault("desks",
+                String.valueOf(Math.max(4, Runtime.getRuntime().availableProcessors() * 2))));
+        int books = Integer.parseInt(options.getOrDefault("books", "64"));
+        int members = Integer.parseInt(options.getOrDefault("members", "16"));
+        long seconds = Long.parseLong(options.getOrDefault("seconds", "10"));
+        long seed = Long.parseLong(options.getOrDefault("seed", "20240601"));
+
+        StressTest test = new StressTest(books, members);
+        System.out.printf("%d desks on %d books and %d members for %d s%n", desks, books, members, seconds);
+        test.run(desks, seconds * 1000, seed);
+        test.checkFinalState();
+
+        System.out.printf("Borrows: %d  Returns: %d  Refused: %d  Transactions: %d%n",
+                          test.borrows.get(), test.returns.get(), test.refusals.get(),
+                          test.service.getTransactionCount());
+        if (!test.violations.isEmpty()) {
+            System.out.println("FAILED, " + test.violations.size() + " violations:");
+            test.violations.stream().limit(20).forEach(violation -> System.out.println("  " + violation));
+            System.exit(1);
+        }
+        System.out.println("PASSED");
+    }
+
+    private void run(int desks, long millis, long seed) throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] workers = new Thread[desks];
+        for (int d = 0; d < desks; d++) {
+            Random random = new Random(seed + d);
+            workers[d] = new Thread(() -> {
+                try {
+                    start.await();
+                    long deadline = System.nanoTime() + millis * 1_000_000;
+                    Desk desk = new Desk(random);
+                    while (System.nanoTime() < deadline) {
+                        desk.step();
+                    }
+                    desk.returnAll();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (RuntimeException e) {
+                    violations.add(Thread.currentThread().getName() + " failed: " + e);
+                }
+            }, "desk-" + d);
+            workers[d].start();
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+    }
+
+    // One circulation desk and the loans it made
+    private final class Desk {
+        private final Random random;
+        private final List<int[]> loans = new ArrayList<>(); // Book index, member index
+
+        Desk(Random random) {
+            this.random = random;
+        }
+
+        void step() {
+            int choice = random.nextInt(10);
+            if (choice < 4 || loans.isEmpty()) {
+                borrow(random.nextInt(memberIds.length), random.nextInt(bookIds.length));
+            } else if (choice < 6) {
+                borrowBatch(random.nextInt(memberIds.length));
+            } else {
+                giveBack(loans.remove(random.nextInt(loans.size())));
+            }
+        }
+
+        void returnAll() {
+            while (!loans.isEmpty()) {
+                giveBack(loans.remove(loans.size() - 1));
+            }
+        }
+
+        private void borrow(int member, int book) {
+            if (service.borrowBook(memberIds[member], bookIds[book]).startsWith("Book borrowed successfully!")) {
+                lent(member, book);
+            } else {
+                refusals.incrementAndGet();
+            }
+        }
+
+        private void borrowBatch(int member) {
+            List<String> batch = new ArrayList<>(BATCH_SIZE);
+            Map<String, Integer> indexes = new HashMap<>();
+            while (batch.size() < BATCH_SIZE) {
+                int book = random.nextInt(bookIds.length);
+                if (indexes.putIfAbsent(bookIds[book], book) == null) {
+                    batch.add(bookIds[book]);
+                }
+            }
+            BatchResult result = service.borrowBooks(memberIds[member], batch, random.nextBoolean());
+            for (BatchResult.ItemResult item : result.getItems()) {
+                if (item.isSuccess()) {
+                    lent(member, indexes.get(item.getBookId()));
+                } else {
+                    refusals.incrementAndGet();
+                }
+            }
+        }
+
+        private void lent(int member, int book) {
+            borrows.incrementAndGet();
+            String previous = lentTo.getAndSet(book, memberIds[member]);
+            if (previous != null) {
+                violations.add(bookIds[book] + " lent to " + memberIds[member] + " while out to " + previous);
+            }
+            int count = loanCounts[member].incrementAndGet();
+            if (count > memberLimits[member]) {
+                violations.add(memberIds[member] + " holds " + count + " books, limit " + memberLimits[member]);
+            }
+            loans.add(new int[] {book, member});
+        }
+
+        // Release the shadow claims first, so a desk lending the book next never sees them
+        private void giveBack(int[] loan) {
+            int book = loan[0];
+            int member = loan[1];
+            lentTo.compareAndSet(book, memberIds[member], null);
+            loanCounts[member].decrementAndGet();
+            String result = service.returnBook(memberIds[member], bookIds[book]);
+            if (!result.startsWith("Book returned successfully!")) {
+                violations.add(memberIds[member] + " could not return " + bookIds[book] + ": " + result);
+            }
+            returns.incrementAndGet();
+        }
+    }
+
+    // Desks returned everything they lent, so the service must show no loans and unique transaction IDs
+    private void checkFinalState() {
+        for (String bookId : bookIds) {
+            Book book = service.getBook(bookId);
+            if (!book.isAvailable()) {
+                violations.add(bookId + " still lent to " + book.getBorrowedBy());
+            }
+        }
+        for (String memberId : memberIds) {
+            Member member = service.getMember(memberId);
+            if (member.getBorrowedBooksCount() != 0) {
+                violations.add(memberId + " still holds " + member.getBorrowedBooks());
+            }
+        }
+
+        int total = service.getTransactionCount();
+        TransactionPage page = service.getTransactionHistory(0, total);
+        Set<String> ids = new HashSet<>();
+        for (Transaction transaction : page.getTransactions()) {
+            if (!ids.add(transaction.getTransactionId())) {
+                violations.add("Duplicate transaction ID " + transaction.getTransactionId());
+            }
+        }
+        long expected = borrows.get() + returns.get();
+        if (total != expected) {
+            violations.add(total + " transactions recorded for " + expected + " borrows and returns");
+        }
+    }
+
+    private static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--") || i + 1 >= args.length) {
+                throw new IllegalArgumentException("Expected --option value, got: " + args[i]);
+            }
+            options.put(args[i].substring(2), args[++i]);
+        }
+        return options;
+    }
+}
@@ -0,0 +1,50 @@
+#!/bin/sh
+# Build the application and the benchmarks with the JDK alone, then run one
+# of the harnesses in a scratch directory (the file benchmarks write data/).
+#
+# Usage: bench/run.sh [BenchmarkRunner|StressTest] [options...]
+#   bench/run.sh --scales 10000 --baseline bench/baseline-10k.csv
+#   bench/run.sh StressTest --desks 16 --seconds 30
+#
+# BENCH_WORK sets the scratch directory, JAVA_OPTS the JVM options.
+#
+# Moving to JMH, once jmh-core and jmh-generator-annprocess can be depended
+# on: build bench/ as a module of its own, with each suite as one
+# @State(Scope.Benchmark) class. The scale becomes a @Param. The register
+# method's setup becomes @Setup(Level.Trial), and addFresh setups become
+# @Setup(Level.Iteration). Each add(name, threads, op) becomes a @Benchmark
+# method annotated with @Threads(threads) that returns what op returns.
+# Keep FileBenchmarks in package utils, for the package-private FileUtils
+# methods it calls. Run with -prof gc for the allocation and GC columns and
+# -rf csv for the results file. StressTest is not a benchmark and stays a
+# plain main class. Re-record the baseline under JMH, because results from
+# the two harnesses are not comparable.
+set -e
+
+ROOT=$(cd "$(dirname "$0")/.." && pwd)
+BUILD=$(mktemp -d "${TMPDIR:-/tmp}/library-bench-build.XXXXXX")
+WORK=${BENCH_WORK:-$(mktemp -d "${TMPDIR:-/tmp}/library-bench.XXXXXX")}
+trap 'rm -rf "$BUILD"' EXIT
+
+MAIN=BenchmarkRunner
+case "$1" in
+    BenchmarkRunner|StressTest) MAIN=$1; shift ;;
+esac
+
+# Relative --out and --baseline paths are resolved from where the script was started
+prev=
+for arg do
+    shift
+    case "$prev" in
+        --out|--baseline) case "$arg" in /*) ;; *) arg="$PWD/$arg" ;; esac ;;
+    esac
+    set -- "$@" "$arg"
+    prev=$arg
+done
+
+mkdir -p "$BUILD/classes" "$BUILD/bench" "$WORK"
+javac --release 11 -Xlint:all -d "$BUILD/classes" $(find "$ROOT/src/models" "$ROOT/src/services" "$ROOT/src/utils" -name '*.java')
+javac --release 11 -Xlint:all -cp "$BUILD/classes" -d "$BUILD/bench" $(find "$ROOT/bench" -name '*.java')
+
+cd "$WORK"
+java ${JAVA_OPTS:-} -cp "$BUILD/classes:$BUILD/bench" "benchmarks.$MAIN" "$@"
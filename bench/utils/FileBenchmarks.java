@@ -0,0 +1,83 @@
+package utils;
+
+import benchmarks.BenchmarkSuite;
+import benchmarks.Datasets;
+import java.io.IOException;
+import java.util.List;
+import models.*;
+
+/**
+ * FileUtils saves and loads in both data formats, and CSV line parsing.
+ *
+ * The save benchmarks write to data/ under the working directory, so they
+ * are skipped when it holds a library's journal or snapshot.
+ */
+public final class FileBenchmarks {
+    private static final int CSV_LINES = 1024;
+
+    private FileBenchmarks() {
+    }
+
+    public static void register(BenchmarkSuite suite) throws IOException {
+        int scale = suite.getScale();
+        String[] lines = csvLines();
+        int[] next = new int[1];
+        suite.add("parseCsvLine", 1, thread -> FileUtils.parseCsvLine(lines[next[0]++ % CSV_LINES]));
+
+        if (FileUtils.getJournalFile().exists() || FileUtils.readSnapshotManifest() != null) {
+            System.out.println("Skipping FileUtils save/load: data/ holds library data. "
+                               + "Run benchmarks from an empty working directory.");
+            return;
+        }
+
+        List<Book> books = Datasets.books(scale);
+        List<Member> members = Datasets.members(scale);
+        List<Transaction> transactions = Datasets.transactions(scale, scale, scale);
+        for (DataFormat format : DataFormat.values()) {
+            String suffix = format == DataFormat.BINARY ? "Binary" : "Csv";
+            suite.add("saveBooks" + suffix, 1, thread -> {
+                FileUtils.saveBooks(books, format);
+                return null;
+            });
+            suite.add("saveMembers" + suffix, 1, thread -> {
+                FileUtils.saveMembers(members, format);
+                return null;
+            });
+            suite.add("saveTransactions" + suffix, 1, thread -> {
+                FileUtils.saveTransactions(transactions, format);
+                return null;
+            });
+
+            // Each load iteration first saves the file it reads, outside the timed loop
+            suite.addFresh("loadBooks" + suffix, 1, () -> {
+                FileUtils.saveBooks(books, format);
+                return thread -> FileUtils.loadBooks(format);
+            });
+            suite.addFresh("loadMembers" + suffix, 1, () -> {
+                FileUtils.saveMembers(members, format);
+                return thread -> FileUtils.loadMembers(format);
+            });
+            suite.addFresh("loadTransactions" + suffix, 1, () -> {
+                FileUtils.saveTransactions(transactions, format);
+                return thread -> FileUtils.loadTransactions(format);
+            });
+        }
+    }
+
+    // Rows shaped like the books file, with quoted commas and escaped quotes
+    private static String[] csvLines() {
+        List<Book> books = Datasets.books(CSV_LINES);
+        String[] lines = new String[CSV_LINES];
+        for (int i = 0; i < CSV_LINES; i++) {
+            Book book = books.get(i);
+            lines[i] = String.join(",", book.getBookId(), quote(book.getTitle() + (i % 3 == 0 ? ", \"Annotated\"" : "")),
+                                   quote(book.getAuthor()), book.getIsbn(), book.getCategory(),
+                                   "true", "2024-01-01", "", "", "");
+        }
+        return lines;
+    }
+
+    private static String quote(String value) {
+        return "\"" + value.replace("\"", "\"\"") + "\"";
+    }
+}
@@ -1,6 +1,10 @@
 package models;
 
 import java.time.LocalDate;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
 
 public class Book {
     private String bookId;
@@ -8,11 +12,30 @@ public class Book {
     private String author;
     private String isbn;
     private String category;
-    private boolean isAvailable;
     private LocalDate dateAdded;
-    private String borrowedBy; // Member ID who borrowed this book
-    private LocalDate borrowDate;
-    private LocalDate dueDate;
+    private final AtomicReference<LoanState> loanState; // availability, borrower, borrow and due dates
+    private ChangeListener changeListener;
+    private volatile DirtyListener dirtyListener;
+    private final AtomicBoolean dirty; // Changed since last saved
+
+    // Fields whose changes are reported to the registered ChangeListener
+    public enum Field {
+        TITLE,
+        AUTHOR,
+        CATEGORY,
+        AVAILABILITY,
+        DUE_DATE
+    }
+
+    // Callback used by services to keep derived indexes in sync with this book
+    public interface ChangeListener {
+        void onBookChanged(Book book, Field field, Object oldValue);
+    }
+
+    // Callback used by persistence to queue this book for saving when it turns dirty
+    public interface DirtyListener {
+        void onBookDirty(Book book);
+    }
 
     // Constructor
     public Book(String bookId, String title, String author, String isbn, String category) {
@@ -21,11 +44,9 @@ public class Book {
         this.author = author;
         this.isbn = isbn;
         this.category = category;
-        this.isAvailable = true;
         this.dateAdded = LocalDate.now();
-        this.borrowedBy = null;
-        this.borrowDate = null;
-        this.dueDate = null;
+        this.loanState = new AtomicReference<>(LoanState.initial());
+        this.dirty = new AtomicBoolean(true); // Not saved yet
     }
 
     // Getters
@@ -50,7 +71,7 @@ public class Book {
     }
 
     public boolean isAvailable() {
-        return isAvailable;
+        return loanState.get().isAvailable();
     }
 
     public LocalDate getDateAdded() {
@@ -58,73 +79,188 @@ public class Book {
     }
 
     public String getBorrowedBy() {
-        return borrowedBy;
+        return loanState.get().getBorrowedBy();
     }
 
     public LocalDate getBorrowDate() {
-        return borrowDate;
+        return loanState.get().getBorrowDate();
     }
 
     public LocalDate getDueDate() {
-        return dueDate;
+        return loanState.get().getDueDate();
+    }
+
+    // Consistent view of all loan fields at once
+    public LoanState getLoanState() {
+        return loanState.get();
     }
 
     // Setters
+    public void setDateAdded(LocalDate dateAdded) {
+        this.dateAdded = dateAdded;
+        markDirty();
+    }
+
     public void setTitle(String title) {
+        String oldTitle = this.title;
         this.title = title;
+        markDirty();
+        fireChange(Field.TITLE, oldTitle);
     }
 
     public void setAuthor(String author) {
+        String oldAuthor = this.author;
         this.author = author;
+        markDirty();
+        fireChange(Field.AUTHOR, oldAuthor);
     }
 
     public void setCategory(String category) {
+        String oldCategory = this.category;
         this.category = category;
+        markDirty();
+        fireChange(Field.CATEGORY, oldCategory);
     }
 
     public void setAvailable(boolean available) {
-        this.isAvailable = available;
+        updateLoanState(state -> state.withAvailable(available));
     }
 
     public void setBorrowedBy(String borrowedBy) {
-        this.borrowedBy = borrowedBy;
+        updateLoanState(state -> state.withBorrowedBy(borrowedBy));
     }
 
     public void setBorrowDate(LocalDate borrowDate) {
-        this.borrowDate = borrowDate;
+        updateLoanState(state -> state.withBorrowDate(borrowDate));
     }
 
     public void setDueDate(LocalDate dueDate) {
-        this.dueDate = dueDate;
+        updateLoanState(state -> state.withDueDate(dueDate));
+    }
+
+    /**
+     * Atomically replace the loan state if it is still the expected one.
+     * Listeners are notified only when the swap succeeds.
+     */
+    public boolean compareAndSetLoanState(LoanState expected, LoanState update) {
+        if (!loanState.compareAndSet(expected, update)) {
+            return false;
+        }
+        markDirty();
+        fireLoanChange(expected, update);
+        return true;
+    }
+
+    private void updateLoanState(UnaryOperator<LoanState> transition) {
+        while (true) {
+            LoanState current = loanState.get();
+            if (compareAndSetLoanState(current, transition.apply(current))) {
+                return;
+            }
+        }
+    }
+
+    public ChangeListener getChangeListener() {
+        return changeListener;
+    }
+
+    public void setChangeListener(ChangeListener changeListener) {
+        this.changeListener = changeListener;
+    }
+
+    private void fireChange(Field field, Object oldValue) {
+        if (changeListener != null) {
+            changeListener.onBookChanged(this, field, oldValue);
+        }
+    }
+
+    private void fireLoanChange(LoanState before, LoanState after) {
+        if (before.isAvailable() != after.isAvailable()) {
+            fireChange(Field.AVAILABILITY, before.isAvailable());
+        } else if (!Objects.equals(before.getDueDate(), after.getDueDate())) {
+            fireChange(Field.DUE_DATE, before.getDueDate());
+        }
+    }
+
+    // Persistence tracking
+    /**
+     * Whether the book changed since it was last saved. New books start out
+     * dirty; every setter and loan change marks the book dirty again.
+     */
+    public boolean isDirty() {
+        return dirty.get();
+    }
+
+    // Only the change from clean to dirty is reported, so the book is queued once per save
+    public void markDirty() {
+        if (!dirty.get() && dirty.compareAndSet(false, true)) {
+            DirtyListener listener = dirtyListener;
+            if (listener != null) {
+                listener.onBookDirty(this);
+            }
+        }
+    }
+
+    // Call before reading the state to save, so a concurrent change marks the book dirty again
+    public void markClean() {
+        dirty.set(false);
+    }
+
+    // A book that is already dirty is reported right away
+    public void setDirtyListener(DirtyListener dirtyListener) {
+        this.dirtyListener = dirtyListener;
+        if (dirtyListener != null && dirty.get()) {
+            dirtyListener.onBookDirty(this);
+        }
     }
 
     // Business methods
-    public void borrowBook(String memberId, int borrowDurationDays) {
-        if (this.isAvailable) {
-            this.isAvailable = false;
-            this.borrowedBy = memberId;
-            this.borrowDate = LocalDate.now();
-            this.dueDate = LocalDate.now().plusDays(borrowDurationDays);
+    // Returns false if another borrower got the book first
+    public boolean borrowBook(String memberId, int borrowDurationDays) {
+        LocalDate today = LocalDate.now();
+        while (true) {
+            LoanState current = loanState.get();
+            if (!current.isAvailable()) {
+                return false;
+            }
+            if (compareAndSetLoanState(current, current.borrowed(memberId, today, today.plusDays(borrowDurationDays)))) {
+                return true;
+            }
         }
     }
 
     public void returnBook() {
-        this.isAvailable = true;
-        this.borrowedBy = null;
-        this.borrowDate = null;
-        this.dueDate = null;
+        while (true) {
+            LoanState current = loanState.get();
+            if (current.isAvailable()) {
+                return;
+            }
+            if (compareAndSetLoanState(current, current.returned())) {
+                return;
+            }
+        }
     }
 
     public boolean isOverdue() {
-        if (dueDate != null && !isAvailable) {
-            return LocalDate.now().isAfter(dueDate);
+        return isOverdue(LocalDate.now());
+    }
+
+    public boolean isOverdue(LocalDate asOf) {
+        LoanState state = loanState.get();
+        if (state.getDueDate() != null && !state.isAvailable()) {
+            return asOf.isAfter(state.getDueDate());
         }
         return false;
     }
 
     public long getDaysOverdue() {
-        if (isOverdue()) {
-            return LocalDate.now().toEpochDay() - dueDate.toEpochDay();
+        return getDaysOverdue(LocalDate.now());
+    }
+
+    public long getDaysOverdue(LocalDate asOf) {
+        LoanState state = loanState.get();
+        if (state.getDueDate() != null && !state.isAvailable() && asOf.isAfter(state.getDueDate())) {
+            return asOf.toEpochDay() - state.getDueDate().toEpochDay();
         }
         return 0;
     }
@@ -132,7 +268,7 @@ public class Book {
     @Override
     public String toString() {
         return String.format("Book{ID='%s', Title='%s', Author='%s', Category='%s', Available=%s}",
-                bookId, title, author, category, isAvailable);
+                bookId, title, author, category, isAvailable());
     }
 
     @Override
@@ -0,0 +1,142 @@
+package models;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Dense int handles for string IDs, so per-entity collections of IDs can be
+ * stored as int arrays. Each distinct ID is kept once, here.
+ *
+ * Handles are reference counted: acquire() adds a reference and release()
+ * drops one, and once the last one is dropped the ID is forgotten and its
+ * handle can be given to another ID. Whoever holds a reference can rely on
+ * the handle resolving to its ID. A service keeps one table for the books
+ * in its catalog, holding a reference per catalog entry and one per loan.
+ */
+public final class IdHandles {
+    private final Map<String, Entry> entries;
+    private volatile Entry[] byHandle; // Grown under the lock
+    private int count; // Guarded by this
+    private int[] freeHandles; // Guarded by this
+    private int freeCount; // Guarded by this
+
+    // An ID's handle and its references; -1 once released for good, so it can't be acquired again
+    private static final class Entry {
+        final String id;
+        final int handle;
+        final AtomicInteger references;
+
+        Entry(String id, int handle) {
+            this.id = id;
+            this.handle = handle;
+            this.references = new AtomicInteger(1);
+        }
+
+        boolean tryAcquire() {
+            while (true) {
+                int current = references.get();
+                if (current < 0) {
+                    return false;
+                }
+                if (references.compareAndSet(current, current + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        // True if this dropped the last reference
+        boolean release() {
+            return references.decrementAndGet() == 0 && references.compareAndSet(0, -1);
+        }
+    }
+
+    public IdHandles() {
+        this(1024);
+    }
+
+    IdHandles(int initialCapacity) {
+        this.entries = new ConcurrentHashMap<>();
+        this.byHandle = new Entry[Math.max(1, initialCapacity)];
+        this.freeHandles = new int[0];
+    }
+
+    // The ID's handle with one more reference, assigning one if the ID has none
+    public int acquire(String id) {
+        while (true) {
+            Entry entry = entries.get(id);
+            if (entry == null) {
+                synchronized (this) {
+                    entry = entries.get(id);
+                    if (entry == null) {
+                        return assign(id).handle;
+                    }
+                }
+            }
+            if (entry.tryAcquire()) {
+                return entry.handle;
+            }
+            entries.remove(id, entry); // Its last reference is being released
+        }
+    }
+
+    // Drop a reference taken by acquire(id)
+    public void release(String id) {
+        Entry entry = entries.get(id);
+        if (entry != null) {
+            release(entry.handle);
+        }
+    }
+
+    void release(int handle) {
+        Entry entry = byHandle[handle];
+        if (entry.release()) {
+            synchronized (this) {
+                entries.remove(entry.id, entry);
+                byHandle[handle] = null;
+                if (freeCount == freeHandles.length) {
+                    freeHandles = Arrays.copyOf(freeHandles, Math.max(16, freeCount * 2));
+                }
+                freeHandles[freeCount++] = handle;
+            }
+        }
+    }
+
+    /**
+     * The ID's handle, or -1 if it has none. Unless the caller holds a
+     * reference, the handle may be released and reused meanwhile, so check
+     * a match with idOf.
+     */
+    int find(String id) {
+        Entry entry = entries.get(id);
+        return entry != null ? entry.handle : -1;
+    }
+
+    // Null if the handle is not in use
+    String idOf(int handle) {
+        Entry entry = byHandle[handle];
+        return entry != null ? entry.id : null;
+    }
+
+    // Number of IDs with a handle
+    public int size() {
+        return entries.size();
+    }
+
+    private Entry assign(String id) {
+        int handle;
+        if (freeCount > 0) {
+            handle = freeHandles[--freeCount];
+        } else {
+            if (count == byHandle.length) {
+                byHandle = Arrays.copyOf(byHandle, count * 2);
+            }
+            handle = count++;
+        }
+        Entry entry = new Entry(id, handle);
+        byHandle[handle] = entry; // Published to readers by the put below
+        entries.put(id, entry);
+        return entry;
+    }
+}
@@ -0,0 +1,91 @@
+package models;
+
+import java.time.LocalDate;
+
+/**
+ * Immutable snapshot of a book's loan state.
+ *
+ * A Book holds exactly one LoanState and replaces it with compare-and-set,
+ * so readers always see the four loan fields from the same moment and
+ * writers never block each other. Every replacement carries a higher
+ * version than the state it replaced.
+ */
+public final class LoanState {
+    private static final LoanState INITIAL = new LoanState(true, null, null, null, 0);
+
+    private final boolean available;
+    private final String borrowedBy;
+    private final LocalDate borrowDate;
+    private final LocalDate dueDate;
+    private final long version;
+
+    private LoanState(boolean available, String borrowedBy, LocalDate borrowDate,
+                      LocalDate dueDate, long version) {
+        this.available = available;
+        this.borrowedBy = borrowedBy;
+        this.borrowDate = borrowDate;
+        this.dueDate = dueDate;
+        this.version = version;
+    }
+
+    public static LoanState initial() {
+        return INITIAL;
+    }
+
+    // Getters
+    public boolean isAvailable() {
+        return available;
+    }
+
+    public String getBorrowedBy() {
+        return borrowedBy;
+    }
+
+    public LocalDate getBorrowDate() {
+        return borrowDate;
+    }
+
+    public LocalDate getDueDate() {
+        return dueDate;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    // Transitions
+    public LoanState borrowed(String memberId, LocalDate borrowDate, LocalDate dueDate) {
+        return new LoanState(false, memberId, borrowDate, dueDate, version + 1);
+    }
+
+    public LoanState returned() {
+        return new LoanState(true, null, null, null, version + 1);
+    }
+
+    // Unavailable without a borrower, used while a book is being removed
+    public LoanState withdrawn() {
+        return new LoanState(false, null, null, null, version + 1);
+    }
+
+    public LoanState withAvailable(boolean available) {
+        return new LoanState(available, borrowedBy, borrowDate, dueDate, version + 1);
+    }
+
+    public LoanState withBorrowedBy(String borrowedBy) {
+        return new LoanState(available, borrowedBy, borrowDate, dueDate, version + 1);
+    }
+
+    public LoanState withBorrowDate(LocalDate borrowDate) {
+        return new LoanState(available, borrowedBy, borrowDate, dueDate, version + 1);
+    }
+
+    public LoanState withDueDate(LocalDate dueDate) {
+        return new LoanState(available, borrowedBy, borrowDate, dueDate, version + 1);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("LoanState{Available=%s, BorrowedBy='%s', DueDate='%s', Version=%d}",
+                available, borrowedBy, dueDate, version);
+    }
+}
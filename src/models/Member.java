@@ -1,10 +1,17 @@
 package models;
 
 import java.time.LocalDate;
-import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class Member {
+    private static final int[] NO_LOANS = new int[0];
+    private static final int[] CLOSED = new int[0]; // Compared by identity
+
     private String memberId;
     private String name;
     private String email;
@@ -12,9 +19,29 @@ public class Member {
     private String address;
     private MemberType memberType;
     private LocalDate registrationDate;
-    private List<String> borrowedBooks; // List of book IDs
-    private double fineAmount;
-    private boolean isActive;
+    private final AtomicReference<int[]> loans; // Handles of borrowed books, replaced whole; CLOSED once closed
+    private volatile IdHandles bookHandles; // Resolves loans; null until the first loan or setBookHandles
+    private final AtomicLong fineAmountBits; // Double.doubleToLongBits of the outstanding fine
+    private volatile boolean isActive;
+    private ChangeListener changeListener;
+    private volatile DirtyListener dirtyListener;
+    private final AtomicBoolean dirty; // Changed since last saved
+
+    // Fields whose changes are reported to the registered ChangeListener
+    public enum Field {
+        MEMBER_TYPE,
+        ACTIVE
+    }
+
+    // Callback used by services to keep derived counters in sync with this member
+    public interface ChangeListener {
+        void onMemberChanged(Member member, Field field, Object oldValue);
+    }
+
+    // Callback used by persistence to queue this member for saving when it turns dirty
+    public interface DirtyListener {
+        void onMemberDirty(Member member);
+    }
 
     public enum MemberType {
         STUDENT(14, 3),      // 14 days borrow period, max 3 books
@@ -48,9 +75,10 @@ public class Member {
         this.address = address;
         this.memberType = memberType;
         this.registrationDate = LocalDate.now();
-        this.borrowedBooks = new ArrayList<>();
-        this.fineAmount = 0.0;
+        this.loans = new AtomicReference<>(NO_LOANS);
+        this.fineAmountBits = new AtomicLong(Double.doubleToLongBits(0.0));
         this.isActive = true;
+        this.dirty = new AtomicBoolean(true); // Not saved yet
     }
 
     // Getters
@@ -82,12 +110,18 @@ public class Member {
         return registrationDate;
     }
 
+    // Read-only list of book IDs, resolved from the current loans
     public List<String> getBorrowedBooks() {
-        return new ArrayList<>(borrowedBooks); // Return copy for safety
+        int[] current = loans.get();
+        String[] bookIds = new String[current.length];
+        for (int i = 0; i < current.length; i++) {
+            bookIds[i] = bookHandles.idOf(current[i]);
+        }
+        return Collections.unmodifiableList(Arrays.asList(bookIds));
     }
 
     public double getFineAmount() {
-        return fineAmount;
+        return Double.longBitsToDouble(fineAmountBits.get());
     }
 
     public boolean isActive() {
@@ -97,71 +131,285 @@ public class Member {
     // Setters
     public void setName(String name) {
         this.name = name;
+        markDirty();
     }
 
     public void setEmail(String email) {
         this.email = email;
+        markDirty();
     }
 
     public void setPhoneNumber(String phoneNumber) {
         this.phoneNumber = phoneNumber;
+        markDirty();
     }
 
     public void setAddress(String address) {
         this.address = address;
+        markDirty();
     }
 
     public void setMemberType(MemberType memberType) {
+        MemberType oldType = this.memberType;
         this.memberType = memberType;
+        markDirty();
+        if (oldType != memberType) {
+            fireChange(Field.MEMBER_TYPE, oldType);
+        }
+    }
+
+    public void setRegistrationDate(LocalDate registrationDate) {
+        this.registrationDate = registrationDate;
+        markDirty();
     }
 
     public void setFineAmount(double fineAmount) {
-        this.fineAmount = fineAmount;
+        fineAmountBits.set(Double.doubleToLongBits(fineAmount));
+        markDirty();
     }
 
     public void setActive(boolean active) {
+        boolean wasActive = this.isActive;
         this.isActive = active;
+        markDirty();
+        if (wasActive != active) {
+            fireChange(Field.ACTIVE, wasActive);
+        }
+    }
+
+    public ChangeListener getChangeListener() {
+        return changeListener;
+    }
+
+    public void setChangeListener(ChangeListener changeListener) {
+        this.changeListener = changeListener;
+    }
+
+    private void fireChange(Field field, Object oldValue) {
+        if (changeListener != null) {
+            changeListener.onMemberChanged(this, field, oldValue);
+        }
+    }
+
+    // Persistence tracking
+    /**
+     * Whether the member changed since they were last saved. New members
+     * start out dirty; setters, loans and fine changes mark them dirty again.
+     */
+    public boolean isDirty() {
+        return dirty.get();
+    }
+
+    // Only the change from clean to dirty is reported, so the member is queued once per save
+    public void markDirty() {
+        if (!dirty.get() && dirty.compareAndSet(false, true)) {
+            DirtyListener listener = dirtyListener;
+            if (listener != null) {
+                listener.onMemberDirty(this);
+            }
+        }
+    }
+
+    // Call before reading the state to save, so a concurrent change marks the member dirty again
+    public void markClean() {
+        dirty.set(false);
+    }
+
+    // A member that is already dirty is reported right away
+    public void setDirtyListener(DirtyListener dirtyListener) {
+        this.dirtyListener = dirtyListener;
+        if (dirtyListener != null && dirty.get()) {
+            dirtyListener.onMemberDirty(this);
+        }
     }
 
     // Business methods
     public boolean canBorrowMoreBooks() {
-        return borrowedBooks.size() < memberType.getMaxBooksAllowed();
+        int[] current = loans.get();
+        return current != CLOSED && current.length < memberType.getMaxBooksAllowed();
     }
 
-    public void addBorrowedBook(String bookId) {
-        if (canBorrowMoreBooks()) {
-            borrowedBooks.add(bookId);
+    /**
+     * Record the book without blocking. Fails when the member is at the
+     * limit for their type, already has the book, or has been closed.
+     *
+     * Loans are a small array of book handles (at most
+     * MemberType.getMaxBooksAllowed() long) that is replaced with
+     * compare-and-set, so the count and the books always agree.
+     */
+    public boolean tryAddBorrowedBook(String bookId) {
+        return addLoan(bookId, memberType.getMaxBooksAllowed());
+    }
+
+    /**
+     * Restore a loan that already exists, e.g. when loading saved data or
+     * replaying the journal. The limit for the member's type is not
+     * checked, since the loan was granted before.
+     *
+     * @return false if the member already has the book or has been closed
+     */
+    public boolean addBorrowedBook(String bookId) {
+        return addLoan(bookId, Integer.MAX_VALUE);
+    }
+
+    private boolean addLoan(String bookId, int maxBooks) {
+        IdHandles handles = bookHandles();
+        int handle = handles.acquire(bookId);
+        while (true) {
+            int[] current = loans.get();
+            if (current == CLOSED || current.length >= maxBooks || indexOf(current, handle) >= 0) {
+                handles.release(handle);
+                return false;
+            }
+            int[] updated = Arrays.copyOf(current, current.length + 1);
+            updated[current.length] = handle;
+            if (loans.compareAndSet(current, updated)) {
+                markDirty();
+                return true;
+            }
         }
     }
 
     public void removeBorrowedBook(String bookId) {
-        borrowedBooks.remove(bookId);
+        IdHandles handles = bookHandles;
+        int handle = handles != null ? handles.find(bookId) : -1;
+        if (handle < 0) {
+            return; // Nobody has borrowed it
+        }
+        while (true) {
+            int[] current = loans.get();
+            int index = indexOf(current, handle);
+            if (index < 0 || !bookId.equals(handles.idOf(handle))) {
+                return; // Not borrowed by this member; the handle may have gone to another book since
+            }
+            int[] updated = current.length == 1 ? NO_LOANS : new int[current.length - 1];
+            System.arraycopy(current, 0, updated, 0, index);
+            System.arraycopy(current, index + 1, updated, index, current.length - index - 1);
+            if (loans.compareAndSet(current, updated)) {
+                handles.release(handle);
+                markDirty();
+                return;
+            }
+        }
+    }
+
+    public boolean hasBorrowedBook(String bookId) {
+        IdHandles handles = bookHandles;
+        int handle = handles != null ? handles.find(bookId) : -1;
+        return handle >= 0 && indexOf(loans.get(), handle) >= 0 && bookId.equals(handles.idOf(handle));
+    }
+
+    /**
+     * Resolve book IDs through the given table from now on, e.g. the one of
+     * the service the member is added to; loans recorded so far move over.
+     * Call before the member is shared with other threads.
+     */
+    public void setBookHandles(IdHandles handles) {
+        IdHandles previous = bookHandles;
+        if (previous == handles) {
+            return;
+        }
+        int[] current = loans.get();
+        if (previous != null && current != CLOSED && current.length > 0) {
+            int[] moved = new int[current.length];
+            for (int i = 0; i < current.length; i++) {
+                moved[i] = handles.acquire(previous.idOf(current[i]));
+                previous.release(current[i]);
+            }
+            loans.set(moved);
+        }
+        bookHandles = handles;
+    }
+
+    // A member not added to a service yet keeps a small table of its own
+    private IdHandles bookHandles() {
+        IdHandles handles = bookHandles;
+        if (handles == null) {
+            synchronized (this) {
+                handles = bookHandles;
+                if (handles == null) {
+                    handles = new IdHandles(4);
+                    bookHandles = handles;
+                }
+            }
+        }
+        return handles;
+    }
+
+    /**
+     * Close the member to new loans if they hold none
+     */
+    public boolean tryClose() {
+        return loans.compareAndSet(NO_LOANS, CLOSED);
     }
 
     public int getBorrowedBooksCount() {
-        return borrowedBooks.size();
+        return loans.get().length;
+    }
+
+    private static int indexOf(int[] handles, int handle) {
+        for (int i = 0; i < handles.length; i++) {
+            if (handles[i] == handle) {
+                return i;
+            }
+        }
+        return -1;
     }
 
     public void addFine(double amount) {
-        this.fineAmount += amount;
+        while (true) {
+            long current = fineAmountBits.get();
+            double updated = Double.longBitsToDouble(current) + amount;
+            if (fineAmountBits.compareAndSet(current, Double.doubleToLongBits(updated))) {
+                markDirty();
+                return;
+            }
+        }
     }
 
     public void payFine(double amount) {
-        this.fineAmount = Math.max(0, this.fineAmount - amount);
+        while (true) {
+            long current = fineAmountBits.get();
+            double updated = Math.max(0, Double.longBitsToDouble(current) - amount);
+            if (fineAmountBits.compareAndSet(current, Double.doubleToLongBits(updated))) {
+                markDirty();
+                return;
+            }
+        }
+    }
+
+    // Pay only if the amount does not exceed the outstanding fine at the moment of payment
+    public boolean tryPayFine(double amount) {
+        while (true) {
+            long current = fineAmountBits.get();
+            double fine = Double.longBitsToDouble(current);
+            if (amount > fine) {
+                return false;
+            }
+            if (fineAmountBits.compareAndSet(current, Double.doubleToLongBits(fine - amount))) {
+                markDirty();
+                return true;
+            }
+        }
     }
 
     public boolean hasPendingFines() {
-        return fineAmount > 0;
+        return getFineAmount() > 0;
     }
 
     public boolean canBorrowBooks() {
-        return isActive && fineAmount <= 50.0; // Can't borrow if fine exceeds $50
+        return canBorrowBooks(0);
+    }
+
+    // As above, also counting fines accrued on overdue loans that are only charged on return
+    public boolean canBorrowBooks(double accruedFines) {
+        return isActive && getFineAmount() + accruedFines <= 50.0; // Can't borrow if fine exceeds $50
     }
 
     @Override
     public String toString() {
         return String.format("Member{ID='%s', Name='%s', Type='%s', Books Borrowed=%d, Fine=$%.2f, Active=%s}",
-                memberId, name, memberType, borrowedBooks.size(), fineAmount, isActive);
+                memberId, name, memberType, getBorrowedBooksCount(), getFineAmount(), isActive);
     }
 
     @Override
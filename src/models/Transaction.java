@@ -3,7 +3,12 @@ package models;
 import java.time.LocalDateTime;
 
 public class Transaction {
-    private String transactionId;
+    public static final String ID_PREFIX = "TXN";
+    public static final int ID_DIGITS = 6; // Minimum, zero-padded
+    private static final long NOT_NUMBERED = -1;
+
+    private final long transactionNumber; // NOT_NUMBERED if the ID is not of the TXN###### form
+    private final String transactionId;   // Null when numbered; formatted from the number on demand
     private String memberId;
     private String bookId;
     private TransactionType type;
@@ -12,6 +17,7 @@ public class Transaction {
     private LocalDateTime returnDate;
     private double fineAmount;
     private String notes;
+    private volatile boolean dirty = true; // Changed since last saved; new transactions are not saved yet
 
     public enum TransactionType {
         BORROW,
@@ -23,7 +29,8 @@ public class Transaction {
     // Constructor for borrowing
     public Transaction(String transactionId, String memberId, String bookId, 
                       TransactionType type, LocalDateTime dueDate) {
-        this.transactionId = transactionId;
+        this.transactionNumber = parseTransactionNumber(transactionId);
+        this.transactionId = transactionNumber != NOT_NUMBERED ? null : transactionId;
         this.memberId = memberId;
         this.bookId = bookId;
         this.type = type;
@@ -37,7 +44,8 @@ public class Transaction {
     // Constructor for returning
     public Transaction(String transactionId, String memberId, String bookId, 
                       TransactionType type, double fineAmount, String notes) {
-        this.transactionId = transactionId;
+        this.transactionNumber = parseTransactionNumber(transactionId);
+        this.transactionId = transactionNumber != NOT_NUMBERED ? null : transactionId;
         this.memberId = memberId;
         this.bookId = bookId;
         this.type = type;
@@ -49,7 +57,8 @@ public class Transaction {
 
     // Simple constructor
     public Transaction(String transactionId, String memberId, String bookId, TransactionType type) {
-        this.transactionId = transactionId;
+        this.transactionNumber = parseTransactionNumber(transactionId);
+        this.transactionId = transactionNumber != NOT_NUMBERED ? null : transactionId;
         this.memberId = memberId;
         this.bookId = bookId;
         this.type = type;
@@ -58,9 +67,37 @@ public class Transaction {
         this.notes = "";
     }
 
+    /**
+     * A transaction numbered by the library's ID allocator. Its ID string
+     * is only formatted when asked for.
+     */
+    public Transaction(long transactionNumber, String memberId, String bookId, TransactionType type,
+                       LocalDateTime transactionDate) {
+        if (transactionNumber < 0) {
+            throw new IllegalArgumentException("Transaction numbers cannot be negative: " + transactionNumber);
+        }
+        this.transactionNumber = transactionNumber;
+        this.transactionId = null;
+        this.memberId = memberId;
+        this.bookId = bookId;
+        this.type = type;
+        this.transactionDate = transactionDate;
+        this.fineAmount = 0.0;
+        this.notes = "";
+    }
+
     // Getters
     public String getTransactionId() {
-        return transactionId;
+        return transactionId != null ? transactionId : formatTransactionId(transactionNumber);
+    }
+
+    // Sort key of IDs allocated by the library, or -1 for IDs not of the TXN###### form
+    public long getTransactionNumber() {
+        return transactionNumber;
+    }
+
+    public boolean isNumbered() {
+        return transactionNumber != NOT_NUMBERED;
     }
 
     public String getMemberId() {
@@ -96,33 +133,112 @@ public class Transaction {
     }
 
     // Setters
+    public void setTransactionDate(LocalDateTime transactionDate) {
+        this.transactionDate = transactionDate;
+        markDirty();
+    }
+
     public void setDueDate(LocalDateTime dueDate) {
         this.dueDate = dueDate;
+        markDirty();
     }
 
     public void setReturnDate(LocalDateTime returnDate) {
         this.returnDate = returnDate;
+        markDirty();
     }
 
     public void setFineAmount(double fineAmount) {
         this.fineAmount = fineAmount;
+        markDirty();
     }
 
     public void setNotes(String notes) {
         this.notes = notes;
+        markDirty();
+    }
+
+    // Persistence tracking
+    public boolean isDirty() {
+        return dirty;
+    }
+
+    public void markDirty() {
+        dirty = true;
+    }
+
+    // Call before reading the state to save, so a concurrent change marks the transaction dirty again
+    public void markClean() {
+        dirty = false;
+    }
+
+    // ID encoding
+    /**
+     * TXN followed by the number zero-padded to six digits, e.g. TXN000042.
+     * Numbers past 999999 take more digits, so compare transactions by
+     * getTransactionNumber() rather than by ID text.
+     */
+    public static String formatTransactionId(long transactionNumber) {
+        int digits = Math.max(ID_DIGITS, digitCount(transactionNumber));
+        char[] id = new char[ID_PREFIX.length() + digits];
+        ID_PREFIX.getChars(0, ID_PREFIX.length(), id, 0);
+        long rest = transactionNumber;
+        for (int i = id.length - 1; i >= ID_PREFIX.length(); i--) {
+            id[i] = (char) ('0' + rest % 10);
+            rest /= 10;
+        }
+        return new String(id);
+    }
+
+    /**
+     * The number of an ID in the exact form formatTransactionId() gives, or
+     * -1 for any other ID (legacy or imported IDs are kept as text)
+     */
+    public static long parseTransactionNumber(String transactionId) {
+        int length = transactionId != null ? transactionId.length() : 0;
+        int digits = length - ID_PREFIX.length();
+        if (digits < ID_DIGITS || digits > 18 || !transactionId.startsWith(ID_PREFIX)
+                || (digits > ID_DIGITS && transactionId.charAt(ID_PREFIX.length()) == '0')) {
+            return NOT_NUMBERED;
+        }
+        long number = 0;
+        for (int i = ID_PREFIX.length(); i < length; i++) {
+            char c = transactionId.charAt(i);
+            if (c < '0' || c > '9') {
+                return NOT_NUMBERED;
+            }
+            number = number * 10 + (c - '0');
+        }
+        return number;
+    }
+
+    private static int digitCount(long value) {
+        int digits = 1;
+        for (long rest = value / 10; rest > 0; rest /= 10) {
+            digits++;
+        }
+        return digits;
     }
 
     // Business methods
     public boolean isOverdue() {
+        return isOverdue(LocalDateTime.now());
+    }
+
+    public boolean isOverdue(LocalDateTime asOf) {
         if (dueDate != null && returnDate == null) {
-            return LocalDateTime.now().isAfter(dueDate);
+            return asOf.isAfter(dueDate);
         }
         return false;
     }
 
     public long getDaysOverdue() {
-        if (isOverdue()) {
-            return java.time.Duration.between(dueDate, LocalDateTime.now()).toDays();
+        return getDaysOverdue(LocalDateTime.now());
+    }
+
+    public long getDaysOverdue(LocalDateTime asOf) {
+        if (isOverdue(asOf)) {
+            return java.time.Duration.between(dueDate, asOf).toDays();
         }
         if (returnDate != null && dueDate != null && returnDate.isAfter(dueDate)) {
             return java.time.Duration.between(dueDate, returnDate).toDays();
@@ -133,7 +249,7 @@ public class Transaction {
     @Override
     public String toString() {
         return String.format("Transaction{ID='%s', Member='%s', Book='%s', Type='%s', Date='%s', Fine=$%.2f}",
-                transactionId, memberId, bookId, type, 
+                getTransactionId(), memberId, bookId, type, 
                 transactionDate.toLocalDate(), fineAmount);
     }
 
@@ -142,11 +258,14 @@ public class Transaction {
         if (this == obj) return true;
         if (obj == null || getClass() != obj.getClass()) return false;
         Transaction that = (Transaction) obj;
+        if (isNumbered() || that.isNumbered()) {
+            return transactionNumber == that.transactionNumber;
+        }
         return transactionId.equals(that.transactionId);
     }
 
     @Override
     public int hashCode() {
-        return transactionId.hashCode();
+        return isNumbered() ? Long.hashCode(transactionNumber) : transactionId.hashCode();
     }
 }
\ No newline at end of file
@@ -0,0 +1,113 @@
+package services;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Outcome of a batch borrow or return, with one result per submitted item
+ * in submission order
+ */
+public class BatchResult {
+    private final List<ItemResult> items;
+    private final boolean applied;
+    private final int successCount;
+
+    private BatchResult(List<ItemResult> items, boolean applied) {
+        this.items = Collections.unmodifiableList(items);
+        this.applied = applied;
+        int successes = 0;
+        for (ItemResult item : items) {
+            if (item.isSuccess()) {
+                successes++;
+            }
+        }
+        this.successCount = successes;
+    }
+
+    // Getters
+    public List<ItemResult> getItems() {
+        return items;
+    }
+
+    // False when an all-or-nothing batch was rejected and nothing changed
+    public boolean isApplied() {
+        return applied;
+    }
+
+    public int getSuccessCount() {
+        return successCount;
+    }
+
+    public int getFailureCount() {
+        return items.size() - successCount;
+    }
+
+    public boolean isAllSucceeded() {
+        return successCount == items.size();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("BatchResult{Items=%d, Succeeded=%d, Failed=%d, Applied=%s}",
+                items.size(), successCount, getFailureCount(), applied);
+    }
+
+    public static class ItemResult {
+        private final String bookId;
+        private final String memberId;
+        private final boolean success;
+        private final String message;
+
+        public ItemResult(String bookId, String memberId, boolean success, String message) {
+            this.bookId = bookId;
+            this.memberId = memberId;
+            this.success = success;
+            this.message = message;
+        }
+
+        public String getBookId() {
+            return bookId;
+        }
+
+        public String getMemberId() {
+            return memberId;
+        }
+
+        public boolean isSuccess() {
+            return success;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("ItemResult{Book='%s', Member='%s', Success=%s, Message='%s'}",
+                    bookId, memberId, success, message);
+        }
+    }
+
+    static class Builder {
+        private final List<ItemResult> items;
+
+        Builder(int expectedSize) {
+            this.items = new ArrayList<>(expectedSize);
+        }
+
+        Builder succeed(String bookId, String memberId, String message) {
+            items.add(new ItemResult(bookId, memberId, true, message));
+            return this;
+        }
+
+        Builder fail(String bookId, String memberId, String message) {
+            items.add(new ItemResult(bookId, memberId, false, message));
+            return this;
+        }
+
+        BatchResult build(boolean applied) {
+            return new BatchResult(items, applied);
+        }
+    }
+}
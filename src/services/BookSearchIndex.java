@@ -0,0 +1,608 @@
+package services;
+
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import models.Book;
+
+/**
+ * Trigram index over the searchable book fields.
+ *
+ * Every indexed book gets a dense document number. For each field, every
+ * three-character window of the lowercased value maps to a sorted posting
+ * list of document numbers. A substring query is answered by intersecting the
+ * posting lists of its own trigrams and verifying only the surviving
+ * candidates with String.contains, so results match a full scan exactly.
+ * Queries shorter than three characters have no trigrams and fall back to a
+ * scan over the cached lowercase values.
+ *
+ * Queries share a read lock; catalog changes take the write lock.
+ */
+class BookSearchIndex {
+
+    enum Field {
+        TITLE,
+        AUTHOR,
+        CATEGORY,
+        ISBN
+    }
+
+    private static final Field[] FIELDS = Field.values();
+    private static final int GRAM_LENGTH = 3;
+
+    private final Map<String, Integer> docIds;
+    private final Deque<Integer> freeDocIds;
+    private String[] bookIds;          // docId -> bookId, null for free slots
+    private String[][] normalizedFields; // docId -> lowercased field values
+    private int docCount;
+    private final Map<Long, PostingList> postings;
+    private final ReentrantReadWriteLock lock;
+
+    BookSearchIndex() {
+        this.docIds = new HashMap<>();
+        this.freeDocIds = new ArrayDeque<>();
+        this.bookIds = new String[16];
+        this.normalizedFields = new String[16][];
+        this.docCount = 0;
+        this.postings = new HashMap<>();
+        this.lock = new ReentrantReadWriteLock();
+    }
+
+    // Maintenance
+    void add(Book book) {
+        lock.writeLock().lock();
+        try {
+            if (docIds.containsKey(book.getBookId())) {
+                return;
+            }
+            int docId = allocateDocId();
+            String[] values = new String[FIELDS.length];
+            for (Field field : FIELDS) {
+                String value = normalize(valueOf(book, field));
+                values[field.ordinal()] = value;
+                addGrams(field, docId, value);
+            }
+            docIds.put(book.getBookId(), docId);
+            bookIds[docId] = book.getBookId();
+            normalizedFields[docId] = values;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Index a batch of books under a single acquisition of the write lock
+    void addAll(Collection<Book> batch) {
+        lock.writeLock().lock();
+        try {
+            for (Book book : batch) {
+                if (docIds.containsKey(book.getBookId())) {
+                    continue;
+                }
+                int docId = allocateDocId();
+                String[] values = new String[FIELDS.length];
+                for (Field field : FIELDS) {
+                    String value = normalize(valueOf(book, field));
+                    values[field.ordinal()] = value;
+                    addGrams(field, docId, value);
+                }
+                docIds.put(book.getBookId(), docId);
+                bookIds[docId] = book.getBookId();
+                normalizedFields[docId] = values;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void remove(Book book) {
+        lock.writeLock().lock();
+        try {
+            Integer docId = docIds.remove(book.getBookId());
+            if (docId == null) {
+                return;
+            }
+            String[] values = normalizedFields[docId];
+            for (Field field : FIELDS) {
+                removeGrams(field, docId, values[field.ordinal()]);
+            }
+            bookIds[docId] = null;
+            normalizedFields[docId] = null;
+            freeDocIds.push(docId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void update(Book book, Field field) {
+        lock.writeLock().lock();
+        try {
+            Integer docId = docIds.get(book.getBookId());
+            if (docId == null) {
+                return;
+            }
+            String[] values = normalizedFields[docId];
+            String value = normalize(valueOf(book, field));
+            if (value.equals(values[field.ordinal()])) {
+                return;
+            }
+            removeGrams(field, docId, values[field.ordinal()]);
+            values[field.ordinal()] = value;
+            addGrams(field, docId, value);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Queries
+    /**
+     * Find the IDs of books whose field contains the query (case-insensitive)
+     */
+    List<String> search(Field field, String query) {
+        lock.readLock().lock();
+        try {
+            BitSet matches = new BitSet(docCount);
+            collectMatches(field, normalize(query), matches);
+            return toBookIds(matches);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Find the IDs of books where any indexed field contains the query
+     */
+    List<String> searchAll(String query) {
+        lock.readLock().lock();
+        try {
+            String lowerQuery = normalize(query);
+            BitSet matches = new BitSet(docCount);
+            for (Field field : FIELDS) {
+                collectMatches(field, lowerQuery, matches);
+            }
+            return toBookIds(matches);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Rank the books matching the query in any of the given fields and return
+     * one page of IDs, best first. Only offset + limit results, and never
+     * more than the number of matches, are kept in a bounded heap while
+     * matches are scored.
+     *
+     * @return the total number of matching books
+     */
+    int rank(Field[] fields, String query, int offset, int limit, List<String> page) {
+        lock.readLock().lock();
+        try {
+            String lowerQuery = normalize(query);
+            BitSet matches = new BitSet(docCount);
+            for (Field field : fields) {
+                collectMatches(field, lowerQuery, matches);
+            }
+
+            // No more than every match is kept, so deep offsets cost a full sort but never fail
+            int totalMatches = matches.cardinality();
+            int capacity = (int) Math.min((long) offset + limit, totalMatches);
+            TopKHeap heap = new TopKHeap(capacity, bookIds);
+            for (int docId = matches.nextSetBit(0); docId >= 0; docId = matches.nextSetBit(docId + 1)) {
+                heap.offer(score(docId, fields, lowerQuery), docId);
+            }
+
+            int[] ranked = heap.drainBestFirst();
+            for (int i = offset; i < ranked.length; i++) {
+                page.add(bookIds[ranked[i]]);
+            }
+            return totalMatches;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Score a matching document by its best field: the match kind dominates
+     * (exact > word prefix > infix), then the field weight
+     * (title > author > ISBN > category)
+     */
+    private int score(int docId, Field[] fields, String lowerQuery) {
+        int best = 0;
+        for (Field field : fields) {
+            int kind = matchKind(normalizedFields[docId][field.ordinal()], lowerQuery);
+            if (kind > 0) {
+                best = Math.max(best, kind * 8 + fieldWeight(field));
+            }
+        }
+        return best;
+    }
+
+    private static int matchKind(String value, String lowerQuery) {
+        if (value.equals(lowerQuery)) {
+            return 3;
+        }
+        int pos = value.indexOf(lowerQuery);
+        if (pos < 0) {
+            return 0;
+        }
+        while (pos >= 0) {
+            if (pos == 0 || !Character.isLetterOrDigit(value.charAt(pos - 1))) {
+                return 2;
+            }
+            pos = value.indexOf(lowerQuery, pos + 1);
+        }
+        return 1;
+    }
+
+    private static int fieldWeight(Field field) {
+        switch (field) {
+            case TITLE:
+                return 4;
+            case AUTHOR:
+                return 3;
+            case ISBN:
+                return 2;
+            default:
+                return 1;
+        }
+    }
+
+    private void collectMatches(Field field, String lowerQuery, BitSet matches) {
+        int column = field.ordinal();
+        if (lowerQuery.length() < GRAM_LENGTH) {
+            for (int docId = 0; docId < docCount; docId++) {
+                String[] values = normalizedFields[docId];
+                if (values != null && values[column].contains(lowerQuery)) {
+                    matches.set(docId);
+                }
+            }
+            return;
+        }
+
+        int[] candidates = candidates(field, lowerQuery);
+        for (int docId : candidates) {
+            if (!matches.get(docId) && normalizedFields[docId][column].contains(lowerQuery)) {
+                matches.set(docId);
+            }
+        }
+    }
+
+    /**
+     * Intersect the posting lists of every trigram in the query, smallest first
+     */
+    private int[] candidates(Field field, String lowerQuery) {
+        int gramCount = lowerQuery.length() - GRAM_LENGTH + 1;
+        PostingList[] lists = new PostingList[gramCount];
+        for (int i = 0; i < gramCount; i++) {
+            PostingList list = postings.get(gramKey(field, lowerQuery, i));
+            if (list == null) {
+                return new int[0]; // A missing trigram means no book can match
+            }
+            lists[i] = list;
+        }
+        Arrays.sort(lists, Comparator.comparingInt(PostingList::size));
+
+        int[] result = Arrays.copyOf(lists[0].docs, lists[0].size);
+        int size = result.length;
+        for (int i = 1; i < lists.length && size > 0; i++) {
+            if (lists[i] == lists[i - 1]) {
+                continue; // Repeated trigram in the query
+            }
+            int kept = 0;
+            for (int j = 0; j < size; j++) {
+                if (lists[i].contains(result[j])) {
+                    result[kept++] = result[j];
+                }
+            }
+            size = kept;
+        }
+        return size == result.length ? result : Arrays.copyOf(result, size);
+    }
+
+    private List<String> toBookIds(BitSet matches) {
+        List<String> result = new ArrayList<>(matches.cardinality());
+        for (int docId = matches.nextSetBit(0); docId >= 0; docId = matches.nextSetBit(docId + 1)) {
+            result.add(bookIds[docId]);
+        }
+        return result;
+    }
+
+    // Memory budget
+    /**
+     * Estimate the heap used by the index, assuming compressed oops and
+     * compact (Latin-1) strings
+     */
+    MemoryReport getMemoryReport() {
+        lock.readLock().lock();
+        try {
+            long postingEntries = 0;
+            long postingCapacity = 0;
+            for (PostingList list : postings.values()) {
+                postingEntries += list.size;
+                postingCapacity += list.docs.length;
+            }
+
+            long cachedChars = 0;
+            for (int docId = 0; docId < docCount; docId++) {
+                if (normalizedFields[docId] != null) {
+                    for (String value : normalizedFields[docId]) {
+                        cachedChars += value.length();
+                    }
+                }
+            }
+
+            // HashMap node + boxed Long key + PostingList object + int[] header per trigram
+            long postingBytes = postings.size() * (32L + 16L + 24L + 16L) + postingCapacity * 4L
+                    + tableBytes(postings.size());
+            // String object + byte[] header per cached value, plus the per-document arrays
+            long fieldCacheBytes = docIds.size() * (FIELDS.length * (24L + 16L) + 16L + FIELDS.length * 4L)
+                    + cachedChars;
+            // HashMap node + boxed Integer per book, plus the docId lookup arrays
+            long docTableBytes = docIds.size() * (32L + 16L) + tableBytes(docIds.size())
+                    + 2L * (16L + 4L * bookIds.length);
+
+            return new MemoryReport(docIds.size(), postings.size(), postingEntries, postingCapacity,
+                                    postingBytes, fieldCacheBytes, docTableBytes);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static long tableBytes(int entries) {
+        return 16L + 4L * Integer.highestOneBit(Math.max(1, entries * 4 / 3)) * 2;
+    }
+
+    static final class MemoryReport {
+        private final int indexedBooks;
+        private final int distinctTrigrams;
+        private final long postingEntries;
+        private final long postingCapacity;
+        private final long postingBytes;
+        private final long fieldCacheBytes;
+        private final long docTableBytes;
+
+        MemoryReport(int indexedBooks, int distinctTrigrams, long postingEntries, long postingCapacity,
+                     long postingBytes, long fieldCacheBytes, long docTableBytes) {
+            this.indexedBooks = indexedBooks;
+            this.distinctTrigrams = distinctTrigrams;
+            this.postingEntries = postingEntries;
+            this.postingCapacity = postingCapacity;
+            this.postingBytes = postingBytes;
+            this.fieldCacheBytes = fieldCacheBytes;
+            this.docTableBytes = docTableBytes;
+        }
+
+        int getIndexedBooks() {
+            return indexedBooks;
+        }
+
+        int getDistinctTrigrams() {
+            return distinctTrigrams;
+        }
+
+        long getPostingEntries() {
+            return postingEntries;
+        }
+
+        long getPostingCapacity() {
+            return postingCapacity;
+        }
+
+        long getTotalBytes() {
+            return postingBytes + fieldCacheBytes + docTableBytes;
+        }
+
+        long getBytesPerBook() {
+            return indexedBooks == 0 ? 0 : getTotalBytes() / indexedBooks;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Indexed books: %d%n" +
+                                 "Distinct trigrams: %d%n" +
+                                 "Posting entries: %d (capacity %d)%n" +
+                                 "Posting lists: %d bytes%n" +
+                                 "Lowercase field cache: %d bytes%n" +
+                                 "Document table: %d bytes%n" +
+                                 "Estimated total: %d bytes (%d bytes per book)",
+                    indexedBooks, distinctTrigrams, postingEntries, postingCapacity,
+                    postingBytes, fieldCacheBytes, docTableBytes, getTotalBytes(), getBytesPerBook());
+        }
+    }
+
+    // Utility Methods
+    private int allocateDocId() {
+        if (!freeDocIds.isEmpty()) {
+            return freeDocIds.pop();
+        }
+        if (docCount == bookIds.length) {
+            bookIds = Arrays.copyOf(bookIds, docCount * 2);
+            normalizedFields = Arrays.copyOf(normalizedFields, docCount * 2);
+        }
+        return docCount++;
+    }
+
+    private void addGrams(Field field, int docId, String value) {
+        for (int i = 0; i + GRAM_LENGTH <= value.length(); i++) {
+            postings.computeIfAbsent(gramKey(field, value, i), key -> new PostingList()).add(docId);
+        }
+    }
+
+    private void removeGrams(Field field, int docId, String value) {
+        for (int i = 0; i + GRAM_LENGTH <= value.length(); i++) {
+            Long key = gramKey(field, value, i);
+            PostingList list = postings.get(key);
+            if (list != null) {
+                list.remove(docId);
+                if (list.size == 0) {
+                    postings.remove(key);
+                }
+            }
+        }
+    }
+
+    private static long gramKey(Field field, String value, int offset) {
+        return ((long) field.ordinal() << 48)
+                | ((long) value.charAt(offset) << 32)
+                | ((long) value.charAt(offset + 1) << 16)
+                | value.charAt(offset + 2);
+    }
+
+    private static String valueOf(Book book, Field field) {
+        switch (field) {
+            case TITLE:
+                return book.getTitle();
+            case AUTHOR:
+                return book.getAuthor();
+            case CATEGORY:
+                return book.getCategory();
+            default:
+                return book.getIsbn();
+        }
+    }
+
+    private static String normalize(String value) {
+        return value == null ? "" : value.toLowerCase();
+    }
+
+    /**
+     * Bounded heap of the best-scoring documents, worst on top. Higher scores
+     * rank first; equal scores rank by book ID, so ties come back in the same
+     * order however document numbers were reused.
+     */
+    private static final class TopKHeap {
+        private final int[] docIds;
+        private final int[] scores;
+        private final String[] keys;    // Book IDs of the entries, for ties
+        private final String[] bookIds; // The index's docId -> bookId table
+        private int size;
+
+        TopKHeap(int capacity, String[] bookIds) {
+            this.docIds = new int[Math.max(0, capacity)];
+            this.scores = new int[docIds.length];
+            this.keys = new String[docIds.length];
+            this.bookIds = bookIds;
+            this.size = 0;
+        }
+
+        void offer(int score, int docId) {
+            if (docIds.length == 0) {
+                return;
+            }
+            if (size < docIds.length) {
+                set(size, score, docId, bookIds[docId]);
+                siftUp(size++);
+            } else if (score > scores[0] || (score == scores[0] && bookIds[docId].compareTo(keys[0]) < 0)) {
+                set(0, score, docId, bookIds[docId]);
+                siftDown(0);
+            }
+        }
+
+        int[] drainBestFirst() {
+            int[] ranked = new int[size];
+            for (int i = size - 1; i >= 0; i--) {
+                ranked[i] = docIds[0];
+                size--;
+                set(0, scores[size], docIds[size], keys[size]);
+                keys[size] = null;
+                siftDown(0);
+            }
+            return ranked;
+        }
+
+        // Whether entry a ranks above entry b
+        private boolean ranksAbove(int a, int b) {
+            if (scores[a] != scores[b]) {
+                return scores[a] > scores[b];
+            }
+            return keys[a].compareTo(keys[b]) < 0;
+        }
+
+        private void set(int index, int score, int docId, String key) {
+            scores[index] = score;
+            docIds[index] = docId;
+            keys[index] = key;
+        }
+
+        private void swap(int i, int j) {
+            int score = scores[i];
+            int docId = docIds[i];
+            String key = keys[i];
+            set(i, scores[j], docIds[j], keys[j]);
+            set(j, score, docId, key);
+        }
+
+        private void siftUp(int index) {
+            while (index > 0) {
+                int parent = (index - 1) >>> 1;
+                if (!ranksAbove(parent, index)) {
+                    break;
+                }
+                swap(index, parent);
+                index = parent;
+            }
+        }
+
+        private void siftDown(int index) {
+            int half = size >>> 1;
+            while (index < half) {
+                int child = 2 * index + 1;
+                if (child + 1 < size && ranksAbove(child, child + 1)) {
+                    child++;
+                }
+                if (!ranksAbove(index, child)) {
+                    break;
+                }
+                swap(index, child);
+                index = child;
+            }
+        }
+    }
+
+    /**
+     * Sorted, duplicate-free list of document numbers
+     */
+    private static final class PostingList {
+        private int[] docs = new int[2];
+        private int size;
+
+        int size() {
+            return size;
+        }
+
+        boolean contains(int docId) {
+            return Arrays.binarySearch(docs, 0, size, docId) >= 0;
+        }
+
+        void add(int docId) {
+            if (size > 0 && docs[size - 1] < docId) {
+                append(docId);
+                return;
+            }
+            int pos = Arrays.binarySearch(docs, 0, size, docId);
+            if (pos >= 0) {
+                return;
+            }
+            pos = -pos - 1;
+            if (size == docs.length) {
+                docs = Arrays.copyOf(docs, size * 2);
+            }
+            System.arraycopy(docs, pos, docs, pos + 1, size - pos);
+            docs[pos] = docId;
+            size++;
+        }
+
+        void remove(int docId) {
+            int pos = Arrays.binarySearch(docs, 0, size, docId);
+            if (pos >= 0) {
+                System.arraycopy(docs, pos + 1, docs, pos, size - pos - 1);
+                size--;
+            }
+        }
+
+        private void append(int docId) {
+            if (size == docs.length) {
+                docs = Arrays.copyOf(docs, size * 2);
+            }
+            docs[size++] = docId;
+        }
+    }
+}
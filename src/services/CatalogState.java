@@ -0,0 +1,115 @@
+package services;
+
+import java.util.AbstractList;
+import java.time.YearMonth;
+import java.util.List;
+import java.util.Map;
+import models.Book;
+import models.IdHandles;
+import models.LoanState;
+import models.Member;
+
+/**
+ * Books and members as of one position in the transaction log, taken by
+ * {@link LibraryService#captureCatalog} or {@link LibraryService#captureChanges}.
+ *
+ * Loans and fines are the values at that position. Only those are kept per
+ * book and member; the books and members handed out are detached copies,
+ * built on access from the live details and the captured loans and fines,
+ * so saving them never writes a change made after the position. The IDs
+ * removed since the previous capture come with them.
+ */
+public class CatalogState {
+    private final long sequence;
+    private final Book[] books;
+    private final LoanState[] loans;
+    private final List<String> removedBookIds;
+    private final Member[] members;
+    private final List<List<String>> borrowedBooks;
+    private final double[] fines;
+    private final List<String> removedMemberIds;
+    private final Map<YearMonth, Integer> historySizes; // Transactions per month at the position
+    private final IdHandles copyHandles; // Loans of the member copies
+
+    CatalogState(long sequence, Book[] books, LoanState[] loans, List<String> removedBookIds,
+                 Member[] members, List<List<String>> borrowedBooks, double[] fines,
+                 List<String> removedMemberIds, Map<YearMonth, Integer> historySizes) {
+        this.sequence = sequence;
+        this.books = books;
+        this.loans = loans;
+        this.removedBookIds = removedBookIds;
+        this.members = members;
+        this.borrowedBooks = borrowedBooks;
+        this.fines = fines;
+        this.removedMemberIds = removedMemberIds;
+        this.historySizes = historySizes;
+        this.copyHandles = new IdHandles();
+    }
+
+    // The log position, e.g. the journal sequence, that every loan and fine here includes
+    public long getSequence() {
+        return sequence;
+    }
+
+    Map<YearMonth, Integer> getHistorySizes() {
+        return historySizes;
+    }
+
+    public List<Book> getBooks() {
+        return new AbstractList<Book>() {
+            @Override
+            public Book get(int index) {
+                return copyBook(index);
+            }
+
+            @Override
+            public int size() {
+                return books.length;
+            }
+        };
+    }
+
+    public List<Member> getMembers() {
+        return new AbstractList<Member>() {
+            @Override
+            public Member get(int index) {
+                return copyMember(index);
+            }
+
+            @Override
+            public int size() {
+                return members.length;
+            }
+        };
+    }
+
+    public List<String> getRemovedBookIds() {
+        return removedBookIds;
+    }
+
+    public List<String> getRemovedMemberIds() {
+        return removedMemberIds;
+    }
+
+    private Book copyBook(int index) {
+        Book book = books[index];
+        Book copy = new Book(book.getBookId(), book.getTitle(), book.getAuthor(), book.getIsbn(), book.getCategory());
+        copy.setDateAdded(book.getDateAdded());
+        copy.compareAndSetLoanState(copy.getLoanState(), loans[index]);
+        return copy;
+    }
+
+    private Member copyMember(int index) {
+        Member member = members[index];
+        Member copy = new Member(member.getMemberId(), member.getName(), member.getEmail(),
+                                 member.getPhoneNumber(), member.getAddress(), member.getMemberType());
+        copy.setRegistrationDate(member.getRegistrationDate());
+        copy.setBookHandles(copyHandles);
+        for (String bookId : borrowedBooks.get(index)) {
+            copy.addBorrowedBook(bookId);
+        }
+        copy.setFineAmount(fines[index]);
+        copy.setActive(member.isActive());
+        return copy;
+    }
+}
@@ -0,0 +1,88 @@
+package services;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Supplier;
+
+/**
+ * Lets a checkpoint see books and members exactly as of one position in the
+ * transaction log, without making borrowing and returning take locks.
+ *
+ * Operations enter() before changing loans or fines and exit() once their
+ * transactions are in the log. capture() closes the gate to new operations,
+ * waits for the ones inside to leave, and runs with nothing in flight, so
+ * every change it sees has been logged and every change it misses is
+ * logged after it. While the gate is open, entering costs one increment of
+ * a per-thread counter slot and a volatile read.
+ */
+final class CommitGate {
+    private static final int PADDING = 16; // Longs per slot, so slots don't share a cache line
+
+    private final AtomicLongArray inFlight;
+    private final int mask;
+    private final Object lock = new Object();
+    private volatile boolean closed;
+
+    CommitGate(int minimumSlots) {
+        int slots = Integer.highestOneBit(Math.max(1, minimumSlots - 1)) << 1;
+        this.inFlight = new AtomicLongArray(slots * PADDING);
+        this.mask = slots - 1;
+    }
+
+    /**
+     * Wait while a capture runs, then count the calling thread as in flight
+     *
+     * @return the slot to pass to {@link #exit(int)}
+     */
+    int enter() {
+        int slot = ((int) Thread.currentThread().getId() & mask) * PADDING;
+        while (true) {
+            inFlight.incrementAndGet(slot);
+            if (!closed) {
+                return slot;
+            }
+            inFlight.decrementAndGet(slot);
+            awaitOpen();
+        }
+    }
+
+    void exit(int slot) {
+        inFlight.decrementAndGet(slot);
+    }
+
+    /**
+     * Run the capture with no operation in flight. Must not be called from
+     * inside an operation, which would wait for itself.
+     */
+    synchronized <T> T capture(Supplier<T> capture) {
+        closed = true;
+        try {
+            for (int slot = 0; slot < inFlight.length(); slot += PADDING) {
+                while (inFlight.get(slot) != 0) {
+                    Thread.yield(); // Operations hold the gate for microseconds
+                }
+            }
+            return capture.get();
+        } finally {
+            synchronized (lock) {
+                closed = false;
+                lock.notifyAll();
+            }
+        }
+    }
+
+    private void awaitOpen() {
+        boolean interrupted = false;
+        synchronized (lock) {
+            while (closed) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    interrupted = true; // Finish the operation; the capture is short
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
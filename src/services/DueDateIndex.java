@@ -0,0 +1,170 @@
+package services;
+
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import models.Book;
+import models.LoanState;
+
+/**
+ * Loaned books ordered by due date.
+ *
+ * Only books that are currently borrowed and have a due date are indexed, so
+ * finding the loans overdue as of a date is a head-map read over exactly the
+ * loans whose due date has passed.
+ *
+ * Refiling a book runs inside ConcurrentHashMap.compute on its ID and reads
+ * the book's current loan state there, so concurrent updates for the same
+ * book are applied one at a time and the last one always reflects the latest
+ * state. Different books are filed concurrently.
+ *
+ * A date bucket is dropped as soon as its last loan leaves, so queries only
+ * visit due dates that still have loans. Each bucket counts the books being
+ * filed into it; the remover that takes the count to zero retires the
+ * bucket with compare-and-set, and a filer that finds it retired files into
+ * a fresh one instead, so a book can never land in a discarded bucket.
+ */
+class DueDateIndex {
+    private final NavigableMap<LocalDate, Bucket> booksByDueDate;
+    private final Map<String, LocalDate> indexedDueDates; // bookId -> due date it is filed under
+
+    DueDateIndex() {
+        this.booksByDueDate = new ConcurrentSkipListMap<>();
+        this.indexedDueDates = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Re-file a book after its loan state may have changed
+     */
+    void update(Book book) {
+        indexedDueDates.compute(book.getBookId(), (bookId, indexed) -> {
+            LoanState state = book.getLoanState();
+            LocalDate dueDate = !state.isAvailable() ? state.getDueDate() : null;
+            if (Objects.equals(dueDate, indexed)) {
+                return indexed;
+            }
+            if (indexed != null) {
+                unfile(bookId, indexed);
+            }
+            if (dueDate != null) {
+                file(bookId, dueDate);
+            }
+            return dueDate;
+        });
+    }
+
+    void remove(Book book) {
+        indexedDueDates.computeIfPresent(book.getBookId(), (bookId, indexed) -> {
+            unfile(bookId, indexed);
+            return null;
+        });
+    }
+
+    /**
+     * IDs of books whose due date is strictly before the given date, most overdue first
+     */
+    List<String> overdueAsOf(LocalDate asOf) {
+        List<String> result = new ArrayList<>();
+        for (Bucket bucket : booksByDueDate.headMap(asOf, false).values()) {
+            result.addAll(bucket.bookIds);
+        }
+        return result;
+    }
+
+    int countOverdueAsOf(LocalDate asOf) {
+        int count = 0;
+        for (Bucket bucket : booksByDueDate.headMap(asOf, false).values()) {
+            count += bucket.bookIds.size();
+        }
+        return count;
+    }
+
+    /**
+     * Total of fine(days overdue) over every loan due before asOf. All loans
+     * in a due-date bucket owe the same, so this costs one multiplication per
+     * bucket however many loans there are.
+     */
+    double accruedFines(LocalDate asOf, FineSchedule fines) {
+        long asOfDay = asOf.toEpochDay();
+        double total = 0;
+        for (Map.Entry<LocalDate, Bucket> bucket : booksByDueDate.headMap(asOf, false).entrySet()) {
+            int loans = bucket.getValue().bookIds.size();
+            if (loans > 0) {
+                total += loans * fines.fineFor(asOfDay - bucket.getKey().toEpochDay());
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Accrued fines of the loans due before asOf, by borrower. Visits each
+     * overdue loan once.
+     */
+    Map<String, Double> accruedFinesByBorrower(LocalDate asOf, FineSchedule fines, Map<String, Book> books) {
+        long asOfDay = asOf.toEpochDay();
+        Map<String, Double> byBorrower = new HashMap<>();
+        for (Map.Entry<LocalDate, Bucket> bucket : booksByDueDate.headMap(asOf, false).entrySet()) {
+            double fine = fines.fineFor(asOfDay - bucket.getKey().toEpochDay());
+            for (String bookId : bucket.getValue().bookIds) {
+                Book book = books.get(bookId);
+                String borrower = book != null ? book.getLoanState().getBorrowedBy() : null;
+                if (borrower != null) {
+                    byBorrower.merge(borrower, fine, Double::sum);
+                }
+            }
+        }
+        return byBorrower;
+    }
+
+    int size() {
+        return indexedDueDates.size();
+    }
+
+    // Fine owed for a loan the given number of days overdue
+    interface FineSchedule {
+        double fineFor(long daysOverdue);
+    }
+
+    private void file(String bookId, LocalDate dueDate) {
+        while (true) {
+            Bucket bucket = booksByDueDate.computeIfAbsent(dueDate, key -> new Bucket());
+            if (bucket.reserve()) {
+                bucket.bookIds.add(bookId);
+                return;
+            }
+            booksByDueDate.remove(dueDate, bucket); // Retired by its last remover; help, then retry
+        }
+    }
+
+    private void unfile(String bookId, LocalDate dueDate) {
+        Bucket bucket = booksByDueDate.get(dueDate);
+        if (bucket != null && bucket.bookIds.remove(bookId) && bucket.release()) {
+            booksByDueDate.remove(dueDate, bucket);
+        }
+    }
+
+    // Books due on one date
+    private static final class Bucket {
+        final Set<String> bookIds = ConcurrentHashMap.newKeySet();
+        private final AtomicInteger filed = new AtomicInteger(); // Books filed or being filed; -1 once retired
+
+        boolean reserve() {
+            while (true) {
+                int count = filed.get();
+                if (count < 0) {
+                    return false;
+                }
+                if (filed.compareAndSet(count, count + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        // True if this call retired the now empty bucket
+        boolean release() {
+            return filed.decrementAndGet() == 0 && filed.compareAndSet(0, -1);
+        }
+    }
+}
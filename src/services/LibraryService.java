@@ -1,50 +1,304 @@
 package services;
 
+import java.io.IOException;
+import java.time.Clock;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.YearMonth;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import models.*;
 
+/**
+ * Core library operations.
+ *
+ * The service is safe for concurrent use by several circulation desks.
+ * Borrowing and returning never block: a member's loan slot is claimed with
+ * compare-and-set, then the book's immutable LoanState is swapped with
+ * compare-and-set, retrying or backing out if another desk got there first.
+ * Adding and removing books and members lock the stripes of their IDs (see
+ * StripedLocks) and withdraw the entity with the same compare-and-set
+ * primitives, so removal can never race with a checkout.
+ */
 public class LibraryService {
     private Map<String, Book> books;
     private Map<String, Member> members;
-    private List<Transaction> transactions;
-    private int transactionCounter;
+    private final TransactionStore transactions;
+    private final Clock clock; // Source of today's date and transaction times
+    private final TransactionIdAllocator transactionIds;
+    private final StripedLocks locks;
+    private final CommitGate commits; // Held from changing loans or fines until the transaction is logged
+    private final BookSearchIndex searchIndex;
+    private final StatisticsTracker statistics;
+    private final DueDateIndex dueDateIndex;
+    private final IdHandles bookHandles; // For member loans; one reference per catalog entry and per loan
+    private final Book.ChangeListener bookListener;
+    private final Member.ChangeListener memberListener;
+    private final Queue<Book> dirtyBooks; // Queued as they turn dirty, drained by getDirtyBooks
+    private final Queue<Member> dirtyMembers;
+    private final Queue<String> removedBookIds; // Removed since the last capture, drained by it
+    private final Queue<String> removedMemberIds;
+    private final List<TransactionListener> transactionListeners;
+    private volatile TransactionListener transactionLog;
+    private final List<EntityListener> entityListeners;
+    private volatile boolean accruedFinesLimitBorrowing; // Count unbilled fines of overdue loans against the limit
+    private final MetricsRegistry metrics;
+    private final OperationMetrics borrowMetrics;
+    private final OperationMetrics returnMetrics;
+    private final OperationMetrics batchBorrowMetrics;
+    private final OperationMetrics batchReturnMetrics;
+    private final OperationMetrics payFineMetrics;
+    private final OperationMetrics searchMetrics;
+    private final OperationMetrics titleSearchMetrics;
+    private final OperationMetrics authorSearchMetrics;
+    private final OperationMetrics categorySearchMetrics;
 
     // Fine calculation constants
     private static final double FINE_PER_DAY = 1.0; // $1 per day overdue
     private static final double MAX_FINE_PER_BOOK = 50.0; // Maximum fine per book
+    private static final DueDateIndex.FineSchedule FINE_SCHEDULE = LibraryService::fineFor;
+
+    private static final BookSearchIndex.Field[] ALL_SEARCH_FIELDS = BookSearchIndex.Field.values();
+    private static final String NOT_PROCESSED = "Not processed: batch rejected";
+    private static final String BORROWED = "Book borrowed successfully!";
+    private static final String RETURNED = "Book returned successfully!";
+    private static final String FINE_PAID = "Fine payment";
+    private static final String NO_TRANSACTION_ID = "Could not reserve a transaction ID, please try again: ";
 
     public LibraryService() {
-        this.books = new HashMap<>();
-        this.members = new HashMap<>();
-        this.transactions = new ArrayList<>();
-        this.transactionCounter = 1;
+        this(Clock.systemDefaultZone());
+    }
+
+    /**
+     * A service that reads dates and times from the given clock, e.g. a
+     * simulated one that replays months of circulation in seconds
+     */
+    public LibraryService(Clock clock) {
+        this.clock = clock;
+        this.books = new ConcurrentHashMap<>();
+        this.members = new ConcurrentHashMap<>();
+        this.transactions = new TransactionStore();
+        this.locks = new StripedLocks(Runtime.getRuntime().availableProcessors() * 16);
+        this.commits = new CommitGate(Runtime.getRuntime().availableProcessors() * 4);
+        this.searchIndex = new BookSearchIndex();
+        this.statistics = new StatisticsTracker();
+        this.dueDateIndex = new DueDateIndex();
+        this.bookHandles = new IdHandles();
+        this.bookListener = this::onBookChanged;
+        this.memberListener = this::onMemberChanged;
+        this.dirtyBooks = new ConcurrentLinkedQueue<>();
+        this.dirtyMembers = new ConcurrentLinkedQueue<>();
+        this.removedBookIds = new ConcurrentLinkedQueue<>();
+        this.removedMemberIds = new ConcurrentLinkedQueue<>();
+        this.transactionListeners = new CopyOnWriteArrayList<>();
+        this.entityListeners = new CopyOnWriteArrayList<>();
+        this.metrics = new MetricsRegistry("LibraryService");
+        this.borrowMetrics = metrics.operation("borrowBook");
+        this.returnMetrics = metrics.operation("returnBook");
+        this.batchBorrowMetrics = metrics.operation("borrowBooks");
+        this.batchReturnMetrics = metrics.operation("returnBooks");
+        this.payFineMetrics = metrics.operation("payFine");
+        this.searchMetrics = metrics.operation("searchBooks");
+        this.titleSearchMetrics = metrics.operation("searchBooksByTitle");
+        this.authorSearchMetrics = metrics.operation("searchBooksByAuthor");
+        this.categorySearchMetrics = metrics.operation("searchBooksByCategory");
+        this.transactionIds = new TransactionIdAllocator(metrics.operation("reserveTransactionIds"));
+    }
+
+    public Clock getClock() {
+        return clock;
+    }
+
+    /**
+     * Latency, refusal and item counts of borrowing, returning, fine
+     * payments and searches. Refused calls (unknown member, book not
+     * available, ...) count as failures.
+     */
+    public MetricsRegistry getMetrics() {
+        return metrics;
+    }
+
+    // Durably records the end of each block of transaction numbers before any of it is used
+    public interface TransactionIdStore {
+        void reserve(long limit) throws IOException;
+    }
+
+    /**
+     * Save transaction number reservations to the store from now on,
+     * resuming numbering at reservedLimit, the last limit the store saved,
+     * unless loaded history has gone past it. Call after loading history.
+     */
+    public void setTransactionIdStore(TransactionIdStore store, long reservedLimit) {
+        transactionIds.setStore(store, reservedLimit);
+    }
+
+    // Whether fewer than a block of reserved transaction numbers is left
+    public boolean needsTransactionIdReservation() {
+        return transactionIds.isRunningLow();
+    }
+
+    /**
+     * Reserve the next transaction numbers ahead of time if few are left,
+     * so borrowing and returning don't wait for the store. Meant for a
+     * background thread; without one, the operation that runs out reserves.
+     */
+    public void reserveTransactionIds() throws IOException {
+        transactionIds.reserveAhead();
+    }
+
+    // Notified after new transactions are added to the log, e.g. to count them
+    public interface TransactionListener {
+        void onTransactionsRecorded(List<Transaction> transactions);
+    }
+
+    /**
+     * Write new transactions ahead to the given log, e.g. a journal, or to
+     * none. Unlike listeners, the log is called before the operation
+     * finishes, so captureCatalog sees each transaction both applied and
+     * logged or neither; it must not block.
+     */
+    public void setTransactionLog(TransactionListener log) {
+        this.transactionLog = log;
+    }
+
+    public void addTransactionListener(TransactionListener listener) {
+        transactionListeners.add(listener);
+    }
+
+    public void removeTransactionListener(TransactionListener listener) {
+        transactionListeners.remove(listener);
+    }
+
+    // Notified after books or members are added or removed, e.g. to persist the change
+    public interface EntityListener {
+        default void onBookAdded(Book book) {
+        }
+
+        default void onBookRemoved(Book book) {
+        }
+
+        default void onMemberAdded(Member member) {
+        }
+
+        default void onMemberRemoved(Member member) {
+        }
+    }
+
+    public void addEntityListener(EntityListener listener) {
+        entityListeners.add(listener);
+    }
+
+    public void removeEntityListener(EntityListener listener) {
+        entityListeners.remove(listener);
+    }
+
+    /**
+     * Moves a run of one month's transactions out of the heap, e.g. into a
+     * mapped file. The run starts at position first within the month and
+     * replaces any archived run starting there or later.
+     */
+    public interface PartitionArchiver {
+        TransactionArchive archive(YearMonth month, int first, List<Transaction> transactions) throws IOException;
     }
 
     // Book Management Methods
     public boolean addBook(Book book) {
-        if (books.containsKey(book.getBookId())) {
-            return false; // Book already exists
+        int[] stripes = locks.lock(book.getBookId());
+        try {
+            if (books.putIfAbsent(book.getBookId(), book) != null) {
+                return false; // Book already exists
+            }
+            bookHandles.acquire(book.getBookId());
+            searchIndex.add(book);
+            statistics.bookAdded(book);
+            dueDateIndex.update(book);
+            book.setChangeListener(bookListener);
+            book.setDirtyListener(dirtyBooks::add);
+            for (EntityListener listener : entityListeners) {
+                listener.onBookAdded(book);
+            }
+            return true;
+        } finally {
+            locks.unlock(stripes);
         }
-        books.put(book.getBookId(), book);
-        return true;
     }
 
-    public boolean removeBook(String bookId) {
-        Book book = books.get(bookId);
-        if (book == null) {
-            return false; // Book not found
+    /**
+     * Add many books at once, e.g. from a bulk import. Each book is
+     * registered like addBook, but the search index takes its lock once for
+     * the whole batch.
+     *
+     * @return the books that were not added because their ID already exists
+     */
+    public List<Book> addBooks(Collection<Book> batch) {
+        List<Book> added = new ArrayList<>(batch.size());
+        List<Book> rejected = new ArrayList<>();
+        for (Book book : batch) {
+            int[] stripes = locks.lock(book.getBookId());
+            try {
+                if (books.putIfAbsent(book.getBookId(), book) != null) {
+                    rejected.add(book);
+                    continue;
+                }
+                bookHandles.acquire(book.getBookId());
+                statistics.bookAdded(book);
+                dueDateIndex.update(book);
+                book.setChangeListener(bookListener);
+                book.setDirtyListener(dirtyBooks::add);
+                for (EntityListener listener : entityListeners) {
+                    listener.onBookAdded(book);
+                }
+                added.add(book);
+            } finally {
+                locks.unlock(stripes);
+            }
         }
-        if (!book.isAvailable()) {
-            return false; // Cannot remove borrowed book
+
+        searchIndex.addAll(added);
+        for (Book book : added) {
+            if (books.get(book.getBookId()) != book) {
+                searchIndex.remove(book); // Removed by another desk before it was indexed
+            }
+        }
+        return rejected;
+    }
+
+    public boolean removeBook(String bookId) {
+        int[] stripes = locks.lock(bookId);
+        try {
+            Book book = getBook(bookId);
+            if (book == null) {
+                return false; // Book not found
+            }
+            LoanState current = book.getLoanState();
+            if (!current.isAvailable() || !book.compareAndSetLoanState(current, current.withdrawn())) {
+                return false; // Cannot remove borrowed book
+            }
+            books.remove(bookId);
+            removedBookIds.add(bookId);
+            bookHandles.release(bookId);
+            book.setChangeListener(null);
+            book.setDirtyListener(null);
+            searchIndex.remove(book);
+            statistics.bookRemoved(book);
+            dueDateIndex.remove(book);
+            for (EntityListener listener : entityListeners) {
+                listener.onBookRemoved(book);
+            }
+            return true;
+        } finally {
+            locks.unlock(stripes);
         }
-        books.remove(bookId);
-        return true;
     }
 
     public Book getBook(String bookId) {
-        return books.get(bookId);
+        return bookId != null ? books.get(bookId) : null;
     }
 
     public List<Book> getAllBooks() {
@@ -59,27 +313,66 @@ public class LibraryService {
 
     // Member Management Methods
     public boolean addMember(Member member) {
-        if (members.containsKey(member.getMemberId())) {
-            return false; // Member already exists
+        int[] stripes = locks.lock(member.getMemberId());
+        try {
+            if (members.containsKey(member.getMemberId())) {
+                return false; // Member already exists
+            }
+            member.setBookHandles(bookHandles); // Adds and removals of this ID hold its stripe
+            members.put(member.getMemberId(), member);
+            statistics.memberAdded(member);
+            member.setChangeListener(memberListener);
+            member.setDirtyListener(dirtyMembers::add);
+            for (EntityListener listener : entityListeners) {
+                listener.onMemberAdded(member);
+            }
+            return true;
+        } finally {
+            locks.unlock(stripes);
         }
-        members.put(member.getMemberId(), member);
-        return true;
     }
 
-    public boolean removeMember(String memberId) {
-        Member member = members.get(memberId);
-        if (member == null) {
-            return false; // Member not found
+    /**
+     * Add many members at once, e.g. from a bulk import
+     *
+     * @return the members that were not added because their ID already exists
+     */
+    public List<Member> addMembers(Collection<Member> batch) {
+        List<Member> rejected = new ArrayList<>();
+        for (Member member : batch) {
+            if (!addMember(member)) {
+                rejected.add(member);
+            }
         }
-        if (member.getBorrowedBooksCount() > 0) {
-            return false; // Cannot remove member with borrowed books
+        return rejected;
+    }
+
+    public boolean removeMember(String memberId) {
+        int[] stripes = locks.lock(memberId);
+        try {
+            Member member = getMember(memberId);
+            if (member == null) {
+                return false; // Member not found
+            }
+            if (!member.tryClose()) {
+                return false; // Cannot remove member with borrowed books
+            }
+            members.remove(memberId);
+            removedMemberIds.add(memberId);
+            member.setChangeListener(null);
+            member.setDirtyListener(null);
+            statistics.memberRemoved(member);
+            for (EntityListener listener : entityListeners) {
+                listener.onMemberRemoved(member);
+            }
+            return true;
+        } finally {
+            locks.unlock(stripes);
         }
-        members.remove(memberId);
-        return true;
     }
 
     public Member getMember(String memberId) {
-        return members.get(memberId);
+        return memberId != null ? members.get(memberId) : null;
     }
 
     public List<Member> getAllMembers() {
@@ -88,38 +381,129 @@ public class LibraryService {
 
     // Book Search Methods
     public List<Book> searchBooksByTitle(String title) {
-        return books.values().stream()
-                .filter(book -> book.getTitle().toLowerCase().contains(title.toLowerCase()))
-                .collect(Collectors.toList());
+        long started = titleSearchMetrics.start();
+        List<Book> results = resolveBooks(searchIndex.search(BookSearchIndex.Field.TITLE, title));
+        titleSearchMetrics.stop(started, results.size(), 0);
+        return results;
     }
 
     public List<Book> searchBooksByAuthor(String author) {
-        return books.values().stream()
-                .filter(book -> book.getAuthor().toLowerCase().contains(author.toLowerCase()))
-                .collect(Collectors.toList());
+        long started = authorSearchMetrics.start();
+        List<Book> results = resolveBooks(searchIndex.search(BookSearchIndex.Field.AUTHOR, author));
+        authorSearchMetrics.stop(started, results.size(), 0);
+        return results;
     }
 
     public List<Book> searchBooksByCategory(String category) {
-        return books.values().stream()
-                .filter(book -> book.getCategory().toLowerCase().contains(category.toLowerCase()))
-                .collect(Collectors.toList());
+        long started = categorySearchMetrics.start();
+        List<Book> results = resolveBooks(searchIndex.search(BookSearchIndex.Field.CATEGORY, category));
+        categorySearchMetrics.stop(started, results.size(), 0);
+        return results;
     }
 
     public List<Book> searchBooks(String query) {
-        String lowerQuery = query.toLowerCase();
-        return books.values().stream()
-                .filter(book -> 
-                    book.getTitle().toLowerCase().contains(lowerQuery) ||
-                    book.getAuthor().toLowerCase().contains(lowerQuery) ||
-                    book.getCategory().toLowerCase().contains(lowerQuery) ||
-                    book.getIsbn().toLowerCase().contains(lowerQuery))
-                .collect(Collectors.toList());
+        long started = searchMetrics.start();
+        List<Book> results = resolveBooks(searchIndex.searchAll(query));
+        searchMetrics.stop(started, results.size(), 0);
+        return results;
+    }
+
+    // Ranked, paginated search: best matches first, at most limit books per page
+    public SearchPage searchBooks(String query, int offset, int limit) {
+        return rankedSearch(ALL_SEARCH_FIELDS, query, offset, limit, searchMetrics);
+    }
+
+    public SearchPage searchBooksByTitle(String title, int offset, int limit) {
+        return rankedSearch(new BookSearchIndex.Field[] {BookSearchIndex.Field.TITLE}, title, offset, limit,
+                            titleSearchMetrics);
+    }
+
+    public SearchPage searchBooksByAuthor(String author, int offset, int limit) {
+        return rankedSearch(new BookSearchIndex.Field[] {BookSearchIndex.Field.AUTHOR}, author, offset, limit,
+                            authorSearchMetrics);
+    }
+
+    public SearchPage searchBooksByCategory(String category, int offset, int limit) {
+        return rankedSearch(new BookSearchIndex.Field[] {BookSearchIndex.Field.CATEGORY}, category, offset, limit,
+                            categorySearchMetrics);
+    }
+
+    private SearchPage rankedSearch(BookSearchIndex.Field[] fields, String query, int offset, int limit,
+                                    OperationMetrics operation) {
+        long started = operation.start();
+        SearchPage page = rankedSearch(fields, query, offset, limit);
+        operation.stop(started, page.getBooks().size(), 0);
+        return page;
+    }
+
+    private SearchPage rankedSearch(BookSearchIndex.Field[] fields, String query, int offset, int limit) {
+        if (offset < 0 || limit <= 0) {
+            return new SearchPage(Collections.emptyList(), 0, Math.max(offset, 0), Math.max(limit, 0));
+        }
+        List<String> bookIds = new ArrayList<>(Math.min(limit, 256));
+        int totalMatches = searchIndex.rank(fields, query, offset, limit, bookIds);
+        return new SearchPage(resolveBooks(bookIds), totalMatches, offset, limit);
+    }
+
+    public String getSearchIndexMemoryReport() {
+        return searchIndex.getMemoryReport().toString();
+    }
+
+    private List<Book> resolveBooks(Collection<String> bookIds) {
+        List<Book> result = new ArrayList<>(bookIds.size());
+        for (String bookId : bookIds) {
+            Book book = books.get(bookId);
+            if (book != null) {
+                result.add(book);
+            }
+        }
+        return result;
+    }
+
+    private void onBookChanged(Book book, Book.Field field, Object oldValue) {
+        switch (field) {
+            case TITLE:
+                searchIndex.update(book, BookSearchIndex.Field.TITLE);
+                break;
+            case AUTHOR:
+                searchIndex.update(book, BookSearchIndex.Field.AUTHOR);
+                break;
+            case CATEGORY:
+                searchIndex.update(book, BookSearchIndex.Field.CATEGORY);
+                statistics.categoryChanged(book, (String) oldValue);
+                break;
+            case AVAILABILITY:
+                statistics.availabilityChanged(book, (Boolean) oldValue);
+                dueDateIndex.update(book);
+                break;
+            case DUE_DATE:
+                dueDateIndex.update(book);
+                break;
+        }
+    }
+
+    private void onMemberChanged(Member member, Member.Field field, Object oldValue) {
+        switch (field) {
+            case MEMBER_TYPE:
+                statistics.memberTypeChanged(member, (Member.MemberType) oldValue);
+                break;
+            case ACTIVE:
+                statistics.activeChanged(member, (Boolean) oldValue);
+                break;
+        }
     }
 
     // Borrowing and Returning Methods
     public String borrowBook(String memberId, String bookId) {
-        Member member = members.get(memberId);
-        Book book = books.get(bookId);
+        long started = borrowMetrics.start();
+        String result = lendBook(memberId, bookId);
+        borrowMetrics.stop(started, result.startsWith(BORROWED));
+        return result;
+    }
+
+    private String lendBook(String memberId, String bookId) {
+        Member member = getMember(memberId);
+        Book book = getBook(bookId);
 
         // Validation checks
         if (member == null) {
@@ -134,31 +518,48 @@ public class LibraryService {
         if (!book.isAvailable()) {
             return "Book is not available!";
         }
-        if (!member.canBorrowBooks()) {
+        LocalDate today = LocalDate.now(clock);
+        if (!canBorrow(member, today)) {
             return "Member cannot borrow books (fine exceeds limit or account issues)!";
         }
-        if (!member.canBorrowMoreBooks()) {
-            return "Member has reached maximum book limit!";
-        }
 
-        // Process borrowing
+        // Process borrowing; the transaction number is taken first, so a failed reservation changes nothing
+        long number;
+        try {
+            number = transactionIds.next();
+        } catch (IOException e) {
+            return NO_TRANSACTION_ID + e.getMessage();
+        }
         int borrowDuration = member.getMemberType().getBorrowDurationDays();
-        book.borrowBook(memberId, borrowDuration);
-        member.addBorrowedBook(bookId);
+        List<Transaction> recorded;
+        int gate = commits.enter();
+        try {
+            String failure = claimLoan(member, book, today, borrowDuration);
+            if (failure != null) {
+                return failure;
+            }
 
-        // Create transaction record
-        String transactionId = generateTransactionId();
-        LocalDateTime dueDate = LocalDateTime.now().plusDays(borrowDuration);
-        Transaction transaction = new Transaction(transactionId, memberId, bookId, 
-                                                Transaction.TransactionType.BORROW, dueDate);
-        transactions.add(transaction);
+            // Create transaction record
+            recorded = logTransactions(Collections.singletonList(
+                    createBorrowTransaction(number, memberId, bookId, borrowDuration)));
+        } finally {
+            commits.exit(gate);
+        }
+        publishTransactions(recorded);
 
-        return "Book borrowed successfully! Due date: " + book.getDueDate();
+        return BORROWED + " Due date: " + today.plusDays(borrowDuration);
     }
 
     public String returnBook(String memberId, String bookId) {
-        Member member = members.get(memberId);
-        Book book = books.get(bookId);
+        long started = returnMetrics.start();
+        String result = checkInBook(memberId, bookId);
+        returnMetrics.stop(started, result.startsWith(RETURNED));
+        return result;
+    }
+
+    private String checkInBook(String memberId, String bookId) {
+        Member member = getMember(memberId);
+        Book book = getBook(bookId);
 
         // Validation checks
         if (member == null) {
@@ -167,72 +568,428 @@ public class LibraryService {
         if (book == null) {
             return "Book not found!";
         }
-        if (book.isAvailable()) {
-            return "Book is not currently borrowed!";
+
+        long number;
+        try {
+            number = transactionIds.next();
+        } catch (IOException e) {
+            return NO_TRANSACTION_ID + e.getMessage();
         }
-        if (!book.getBorrowedBy().equals(memberId)) {
-            return "This book was not borrowed by this member!";
+
+        String message = RETURNED;
+        List<Transaction> recorded;
+        int gate = commits.enter();
+        try {
+            // Release the loan; the state that was swapped out decides the fine
+            LoanState loan = endLoan(book, memberId);
+            if (loan == null) {
+                LoanState current = book.getLoanState();
+                return current.getBorrowedBy() == null ? "Book is not currently borrowed!"
+                                                       : "This book was not borrowed by this member!";
+            }
+            member.removeBorrowedBook(bookId);
+
+            // Calculate fine if overdue
+            LocalDate today = LocalDate.now(clock);
+            double fineAmount = calculateFine(loan, today);
+            if (fineAmount > 0) {
+                member.addFine(fineAmount);
+                message += String.format(" Fine of $%.2f applied for %d days overdue.", 
+                                       fineAmount, daysOverdue(loan, today));
+            }
+
+            // Create transaction record
+            recorded = logTransactions(Collections.singletonList(
+                    createReturnTransaction(number, memberId, bookId, fineAmount)));
+        } finally {
+            commits.exit(gate);
         }
+        publishTransactions(recorded);
+
+        return message;
+    }
+
+    // Batch Borrowing and Returning
+    public BatchResult borrowBooks(String memberId, List<String> bookIds) {
+        return borrowBooks(memberId, bookIds, false);
+    }
 
-        // Calculate fine if overdue
-        double fineAmount = 0.0;
-        String message = "Book returned successfully!";
-        
-        if (book.isOverdue()) {
-            long daysOverdue = book.getDaysOverdue();
-            fineAmount = Math.min(daysOverdue * FINE_PER_DAY, MAX_FINE_PER_BOOK);
-            member.addFine(fineAmount);
-            message += String.format(" Fine of $%.2f applied for %d days overdue.", 
-                                   fineAmount, daysOverdue);
+    /**
+     * Borrow several books for one member, as submitted by a self-service kiosk.
+     *
+     * The member is looked up and checked once, and the whole batch is
+     * validated (unknown, duplicate or unavailable books, loan limit) before
+     * anything changes. With allOrNothing, any failure leaves every book
+     * untouched; otherwise each valid item is lent independently. Transactions
+     * for the successful items are appended together at the end.
+     */
+    public BatchResult borrowBooks(String memberId, List<String> bookIds, boolean allOrNothing) {
+        long started = batchBorrowMetrics.start();
+        BatchResult result = lendBooks(memberId, bookIds, allOrNothing);
+        batchBorrowMetrics.stop(started, result.getSuccessCount(), 0);
+        return result;
+    }
+
+    private BatchResult lendBooks(String memberId, List<String> bookIds, boolean allOrNothing) {
+        BatchResult.Builder result = new BatchResult.Builder(bookIds.size());
+        Member member = getMember(memberId);
+
+        // Member-level checks apply to every item
+        String memberFailure = null;
+        if (member == null) {
+            memberFailure = "Member not found!";
+        } else if (!member.isActive()) {
+            memberFailure = "Member account is inactive!";
+        } else if (!canBorrow(member, LocalDate.now(clock))) {
+            memberFailure = "Member cannot borrow books (fine exceeds limit or account issues)!";
+        }
+        if (memberFailure != null) {
+            for (String bookId : bookIds) {
+                result.fail(bookId, memberId, memberFailure);
+            }
+            return result.build(false);
         }
 
-        // Process return
-        book.returnBook();
-        member.removeBorrowedBook(bookId);
+        // Validation pass
+        Book[] resolved = new Book[bookIds.size()];
+        String[] failures = new String[bookIds.size()];
+        Set<String> seen = new HashSet<>();
+        int slotsLeft = member.getMemberType().getMaxBooksAllowed() - member.getBorrowedBooksCount();
+        boolean anyFailure = false;
+        for (int i = 0; i < bookIds.size(); i++) {
+            String bookId = bookIds.get(i);
+            Book book = getBook(bookId);
+            if (book == null) {
+                failures[i] = "Book not found!";
+            } else if (!seen.add(bookId)) {
+                failures[i] = "Duplicate book in batch!";
+            } else if (!book.isAvailable()) {
+                failures[i] = "Book is not available!";
+            } else if (slotsLeft <= 0) {
+                failures[i] = "Member has reached maximum book limit!";
+            } else {
+                resolved[i] = book;
+                slotsLeft--;
+            }
+            anyFailure |= failures[i] != null;
+        }
+        if (allOrNothing && anyFailure) {
+            for (int i = 0; i < bookIds.size(); i++) {
+                result.fail(bookIds.get(i), memberId, failures[i] != null ? failures[i] : NOT_PROCESSED);
+            }
+            return result.build(false);
+        }
 
-        // Create transaction record
-        String transactionId = generateTransactionId();
-        String notes = fineAmount > 0 ? "Returned late" : "Returned on time";
-        Transaction transaction = new Transaction(transactionId, memberId, bookId, 
-                                                Transaction.TransactionType.RETURN, 
-                                                fineAmount, notes);
-        transactions.add(transaction);
+        // Apply pass
+        int claims = 0;
+        for (Book book : resolved) {
+            claims += book != null ? 1 : 0;
+        }
+        long number;
+        try {
+            number = transactionIds.next(claims);
+        } catch (IOException e) {
+            String reservationFailure = NO_TRANSACTION_ID + e.getMessage();
+            for (int i = 0; i < bookIds.size(); i++) {
+                result.fail(bookIds.get(i), memberId, failures[i] != null ? failures[i] : reservationFailure);
+            }
+            return result.build(false);
+        }
+        int borrowDuration = member.getMemberType().getBorrowDurationDays();
+        LocalDate today = LocalDate.now(clock);
+        String dueMessage = "Book borrowed successfully! Due date: " + today.plusDays(borrowDuration);
+        List<Transaction> batch = new ArrayList<>();
+        int gate = commits.enter();
+        try {
+            for (int i = 0; i < bookIds.size(); i++) {
+                if (resolved[i] != null) {
+                    failures[i] = claimLoan(member, resolved[i], today, borrowDuration);
+                    anyFailure |= failures[i] != null;
+                }
+            }
+            if (allOrNothing && anyFailure) {
+                // Another desk won a race after validation: hand back what this batch took
+                for (int i = 0; i < bookIds.size(); i++) {
+                    if (resolved[i] != null && failures[i] == null) {
+                        endLoan(resolved[i], memberId);
+                        member.removeBorrowedBook(bookIds.get(i));
+                    }
+                    result.fail(bookIds.get(i), memberId, failures[i] != null ? failures[i] : NOT_PROCESSED);
+                }
+                return result.build(false);
+            }
 
-        return message;
+            for (int i = 0; i < bookIds.size(); i++) {
+                if (failures[i] == null) {
+                    batch.add(createBorrowTransaction(number++, memberId, bookIds.get(i), borrowDuration));
+                    result.succeed(bookIds.get(i), memberId, dueMessage);
+                } else {
+                    result.fail(bookIds.get(i), memberId, failures[i]);
+                }
+            }
+            logTransactions(batch);
+        } finally {
+            commits.exit(gate);
+        }
+        publishTransactions(batch);
+        return result.build(true);
+    }
+
+    /**
+     * Check in a pile of books from a return bin. The borrower of each book
+     * is taken from its loan, fines are totalled per member and charged once
+     * per member, and all return transactions are appended together.
+     */
+    public BatchResult returnBooks(List<String> bookIds) {
+        long started = batchReturnMetrics.start();
+        BatchResult result = checkInBooks(bookIds);
+        batchReturnMetrics.stop(started, result.getSuccessCount(), 0);
+        return result;
+    }
+
+    private BatchResult checkInBooks(List<String> bookIds) {
+        BatchResult.Builder result = new BatchResult.Builder(bookIds.size());
+        LocalDate today = LocalDate.now(clock);
+        Map<String, Member> borrowers = new HashMap<>();
+        Map<Member, Double> fines = new HashMap<>();
+        List<Transaction> batch = new ArrayList<>();
+        long number;
+        try {
+            number = transactionIds.next(bookIds.size());
+        } catch (IOException e) {
+            for (String bookId : bookIds) {
+                result.fail(bookId, null, NO_TRANSACTION_ID + e.getMessage());
+            }
+            return result.build(false);
+        }
+
+        int gate = commits.enter();
+        try {
+            for (String bookId : bookIds) {
+                Book book = getBook(bookId);
+                if (book == null) {
+                    result.fail(bookId, null, "Book not found!");
+                    continue;
+                }
+                LoanState loan = endLoan(book, null);
+                if (loan == null) {
+                    result.fail(bookId, null, "Book is not currently borrowed!");
+                    continue;
+                }
+
+                String memberId = loan.getBorrowedBy();
+                Member member = borrowers.computeIfAbsent(memberId, this::getMember);
+                double fineAmount = calculateFine(loan, today);
+                if (member != null) {
+                    member.removeBorrowedBook(bookId);
+                    if (fineAmount > 0) {
+                        fines.merge(member, fineAmount, Double::sum);
+                    }
+                }
+                batch.add(createReturnTransaction(number++, memberId, bookId, fineAmount));
+                result.succeed(bookId, memberId, fineAmount > 0
+                        ? String.format("Book returned successfully! Fine of $%.2f applied for %d days overdue.",
+                                        fineAmount, daysOverdue(loan, today))
+                        : "Book returned successfully!");
+            }
+
+            for (Map.Entry<Member, Double> fine : fines.entrySet()) {
+                fine.getKey().addFine(fine.getValue());
+            }
+            logTransactions(batch);
+        } finally {
+            commits.exit(gate);
+        }
+        publishTransactions(batch);
+        return result.build(true);
+    }
+
+    /**
+     * Lend a book without blocking. The loan is recorded on the member first,
+     * so a return that sees the book as borrowed always finds it there, and is
+     * undone if another desk gets the book.
+     *
+     * @return null on success, otherwise the reason the loan failed
+     */
+    private String claimLoan(Member member, Book book, LocalDate today, int borrowDuration) {
+        if (!member.tryAddBorrowedBook(book.getBookId())) {
+            return getMember(member.getMemberId()) != member ? "Member not found!"
+                                                             : "Member has reached maximum book limit!";
+        }
+        while (true) {
+            LoanState current = book.getLoanState();
+            if (!current.isAvailable()) {
+                member.removeBorrowedBook(book.getBookId());
+                return "Book is not available!";
+            }
+            LoanState loan = current.borrowed(member.getMemberId(), today, today.plusDays(borrowDuration));
+            if (book.compareAndSetLoanState(current, loan)) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Mark a book as returned without blocking.
+     *
+     * @param memberId the expected borrower, or null to accept any borrower
+     * @return the loan that ended, or null if the book was not lent (to memberId)
+     */
+    private LoanState endLoan(Book book, String memberId) {
+        while (true) {
+            LoanState loan = book.getLoanState();
+            if (loan.isAvailable() || loan.getBorrowedBy() == null) {
+                return null;
+            }
+            if (memberId != null && !loan.getBorrowedBy().equals(memberId)) {
+                return null;
+            }
+            if (book.compareAndSetLoanState(loan, loan.returned())) {
+                return loan;
+            }
+        }
+    }
+
+    private static long daysOverdue(LoanState loan, LocalDate today) {
+        if (loan.getDueDate() != null && today.isAfter(loan.getDueDate())) {
+            return today.toEpochDay() - loan.getDueDate().toEpochDay();
+        }
+        return 0;
+    }
+
+    private static double calculateFine(LoanState loan, LocalDate today) {
+        return fineFor(daysOverdue(loan, today));
+    }
+
+    private static double fineFor(long daysOverdue) {
+        return daysOverdue > 0 ? Math.min(daysOverdue * FINE_PER_DAY, MAX_FINE_PER_BOOK) : 0;
+    }
+
+    private boolean canBorrow(Member member, LocalDate today) {
+        return accruedFinesLimitBorrowing ? member.canBorrowBooks(getAccruedFine(member, today))
+                                          : member.canBorrowBooks();
+    }
+
+    private Transaction createBorrowTransaction(long number, String memberId, String bookId, int borrowDuration) {
+        LocalDateTime now = LocalDateTime.now(clock);
+        Transaction transaction = new Transaction(number, memberId, bookId, Transaction.TransactionType.BORROW, now);
+        transaction.setDueDate(now.plusDays(borrowDuration));
+        return transaction;
+    }
+
+    private Transaction createReturnTransaction(long number, String memberId, String bookId, double fineAmount) {
+        String notes = fineAmount > 0 ? "Returned late" : "Returned on time";
+        LocalDateTime now = LocalDateTime.now(clock);
+        Transaction transaction = new Transaction(number, memberId, bookId, Transaction.TransactionType.RETURN, now);
+        transaction.setReturnDate(now);
+        transaction.setFineAmount(fineAmount);
+        transaction.setNotes(notes);
+        return transaction;
     }
 
     // Fine Management
     public String payFine(String memberId, double amount) {
-        Member member = members.get(memberId);
+        long started = payFineMetrics.start();
+        String result = settleFine(memberId, amount);
+        payFineMetrics.stop(started, result.startsWith(FINE_PAID));
+        return result;
+    }
+
+    private String settleFine(String memberId, double amount) {
+        Member member = getMember(memberId);
         if (member == null) {
             return "Member not found!";
         }
         if (amount <= 0) {
             return "Invalid payment amount!";
         }
-        if (amount > member.getFineAmount()) {
-            return "Payment amount exceeds fine amount!";
+        long number;
+        try {
+            number = transactionIds.next();
+        } catch (IOException e) {
+            return NO_TRANSACTION_ID + e.getMessage();
         }
+        List<Transaction> recorded;
+        int gate = commits.enter();
+        try {
+            if (!member.tryPayFine(amount)) {
+                return "Payment amount exceeds fine amount!";
+            }
 
-        member.payFine(amount);
-        
-        // Create transaction record
-        String transactionId = generateTransactionId();
-        Transaction transaction = new Transaction(transactionId, memberId, null, 
-                                                Transaction.TransactionType.FINE_PAID);
-        transaction.setFineAmount(amount);
-        transaction.setNotes("Fine payment");
-        transactions.add(transaction);
+            // Create transaction record
+            Transaction transaction = new Transaction(number, memberId, null, Transaction.TransactionType.FINE_PAID,
+                                                      LocalDateTime.now(clock));
+            transaction.setFineAmount(amount);
+            transaction.setNotes("Fine payment");
+            recorded = logTransactions(Collections.singletonList(transaction));
+        } finally {
+            commits.exit(gate);
+        }
+        publishTransactions(recorded);
 
-        return String.format("Fine payment of $%.2f successful! Remaining fine: $%.2f", 
+        return String.format(FINE_PAID + " of $%.2f successful! Remaining fine: $%.2f", 
                            amount, member.getFineAmount());
     }
 
     // Reporting Methods
     public List<Book> getOverdueBooks() {
-        return books.values().stream()
-                .filter(Book::isOverdue)
-                .collect(Collectors.toList());
+        return getOverdueBooks(LocalDate.now(clock));
+    }
+
+    // Books whose due date had passed on the given date, most overdue first
+    public List<Book> getOverdueBooks(LocalDate asOf) {
+        return resolveBooks(dueDateIndex.overdueAsOf(asOf));
+    }
+
+    public int getOverdueBooksCount(LocalDate asOf) {
+        return dueDateIndex.countOverdueAsOf(asOf);
+    }
+
+    /**
+     * Fines accrued on loans overdue as of the given date and not yet
+     * charged (they are charged on return, capped per book), i.e. the
+     * library's outstanding liability on top of the fines already charged.
+     * Loans are summed per due date, so the cost grows with the number of
+     * distinct past due dates, not the number of loans.
+     */
+    public double getAccruedFines(LocalDate asOf) {
+        return dueDateIndex.accruedFines(asOf, FINE_SCHEDULE);
+    }
+
+    // Accrued fines of every member with an overdue loan as of the date
+    public Map<String, Double> getAccruedFinesByMember(LocalDate asOf) {
+        return dueDateIndex.accruedFinesByBorrower(asOf, FINE_SCHEDULE, books);
+    }
+
+    public double getAccruedFine(String memberId, LocalDate asOf) {
+        Member member = getMember(memberId);
+        return member != null ? getAccruedFine(member, asOf) : 0;
+    }
+
+    // Only the member's own loans are read
+    private double getAccruedFine(Member member, LocalDate asOf) {
+        double total = 0;
+        for (String bookId : member.getBorrowedBooks()) {
+            Book book = getBook(bookId);
+            LoanState loan = book != null ? book.getLoanState() : null;
+            if (loan != null && member.getMemberId().equals(loan.getBorrowedBy())) {
+                total += calculateFine(loan, asOf);
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Whether fines accruing on a member's overdue loans count towards the
+     * fine limit for borrowing, as well as the fines already charged. Off by
+     * default: fines are charged on return.
+     */
+    public void setAccruedFinesLimitBorrowing(boolean accruedFinesLimitBorrowing) {
+        this.accruedFinesLimitBorrowing = accruedFinesLimitBorrowing;
+    }
+
+    public boolean isAccruedFinesLimitBorrowing() {
+        return accruedFinesLimitBorrowing;
     }
 
     public List<Member> getMembersWithFines() {
@@ -241,19 +998,311 @@ public class LibraryService {
                 .collect(Collectors.toList());
     }
 
-    public List<Transaction> getTransactionHistory() {
-        return new ArrayList<>(transactions);
+    /**
+     * One page of the transaction history, oldest first. Only the requested
+     * page is read, so paging through a long history never copies all of it.
+     */
+    public TransactionPage getTransactionHistory(int offset, int limit) {
+        if (offset < 0 || limit < 1) {
+            throw new IllegalArgumentException("Invalid page: offset=" + offset + ", limit=" + limit);
+        }
+        return new TransactionPage(transactions.page(offset, limit), transactions.size(), offset, limit);
+    }
+
+    public int getTransactionCount() {
+        return transactions.size();
+    }
+
+    /**
+     * Stream the transactions recorded from (inclusive) to (exclusive) one at
+     * a time; null bounds are open. Only the monthly partitions overlapping
+     * the range are read.
+     */
+    public Iterator<Transaction> iterateTransactions(LocalDateTime from, LocalDateTime to) {
+        return transactions.iterator(from, to);
+    }
+
+    public List<Transaction> findTransactions(LocalDateTime from, LocalDateTime to, Predicate<Transaction> filter) {
+        return transactions.find(from, to, filter);
+    }
+
+    // Returns that charged a fine, e.g. for a fines-collected report
+    public List<Transaction> getFinedReturns(LocalDateTime from, LocalDateTime to) {
+        return findTransactions(from, to, transaction -> transaction.getType() == Transaction.TransactionType.RETURN
+                                                         && transaction.getFineAmount() > 0);
     }
 
     public List<Transaction> getMemberTransactions(String memberId) {
-        return transactions.stream()
-                .filter(t -> t.getMemberId().equals(memberId))
-                .collect(Collectors.toList());
+        return getMemberTransactions(memberId, null, null);
+    }
+
+    /**
+     * A member's transactions recorded from (inclusive) to (exclusive),
+     * oldest first; null bounds are open. Read from per-member indexes of
+     * the partitions in range, so the cost depends on the member's own
+     * activity, not on total history.
+     */
+    public List<Transaction> getMemberTransactions(String memberId, LocalDateTime from, LocalDateTime to) {
+        return transactions.memberTransactions(memberId, from, to);
+    }
+
+    // Every borrow, return and renewal of a book, e.g. to see who borrowed it
+    public List<Transaction> getBookTransactions(String bookId) {
+        return getBookTransactions(bookId, null, null);
+    }
+
+    public List<Transaction> getBookTransactions(String bookId, LocalDateTime from, LocalDateTime to) {
+        return transactions.bookTransactions(bookId, from, to);
+    }
+
+    /**
+     * Move every transaction recorded by the time of a captureCatalog out
+     * of the heap, month by month, into archives built by the archiver.
+     * They stay readable through the archives; transactions recorded since
+     * stay in memory until the next call. Not for concurrent use.
+     *
+     * @return the number of monthly partitions archived
+     */
+    public int archiveTransactions(CatalogState state, PartitionArchiver archiver) throws IOException {
+        return transactions.archive(state.getHistorySizes(), archiver);
+    }
+
+    /**
+     * Serve the next run of one month's loaded history from an archive built
+     * earlier by a PartitionArchiver. Call for the month's runs in order,
+     * before loadData adds anything for the month.
+     */
+    public void addTransactionArchive(YearMonth month, TransactionArchive archive) {
+        transactions.addArchive(month, archive);
+        if (archive.size() > 0) {
+            transactionIds.advancePast(archive.get(archive.size() - 1).getTransactionNumber());
+        }
+    }
+
+    /**
+     * Every book and member as of one position in the transaction log.
+     * Borrowing, returning and fine payments wait while the loans and fines
+     * are copied, which takes a few milliseconds per hundred thousand
+     * entries; nothing else is copied until the result is read. Every book
+     * and member is marked clean, as it is all being saved, and the
+     * removals since the last capture are taken, as they are absent. The
+     * state also counts the transactions recorded so far, for
+     * archiveTransactions.
+     *
+     * @param logPosition read at that position, e.g. the journal's last sequence
+     */
+    public CatalogState captureCatalog(LongSupplier logPosition) {
+        return commits.capture(() -> {
+            getDirtyBooks().forEach(Book::markClean);
+            getDirtyMembers().forEach(Member::markClean);
+            List<String> removedBooks = drain(removedBookIds); // Before copying, so every one is absent
+            List<String> removedMembers = drain(removedMemberIds);
+            return capture(logPosition.getAsLong(), new ArrayList<>(books.values()), removedBooks,
+                           new ArrayList<>(members.values()), removedMembers, transactions.sizes());
+        });
+    }
+
+    /**
+     * As captureCatalog, but only the books and members changed since last
+     * saved, which are marked clean, as getDirtyBooks() and getDirtyMembers(),
+     * and the IDs removed since the last capture.
+     *
+     * Saving the removals before the changed books and members gives the
+     * catalog as captured. Removals are taken after the changes, and a
+     * change is kept only if its book or member is still in the catalog
+     * then, so a removal is never saved after the changes that follow it.
+     */
+    public CatalogState captureChanges(LongSupplier logPosition) {
+        return commits.capture(() -> {
+            List<Book> dirtyBooks = getDirtyBooks();
+            List<Member> dirtyMembers = getDirtyMembers();
+            List<String> removedBooks = drain(removedBookIds);
+            List<String> removedMembers = drain(removedMemberIds);
+            dirtyBooks.removeIf(book -> books.get(book.getBookId()) != book); // Removed while draining
+            dirtyMembers.removeIf(member -> members.get(member.getMemberId()) != member);
+            dirtyBooks.forEach(Book::markClean);
+            dirtyMembers.forEach(Member::markClean);
+            return capture(logPosition.getAsLong(), dirtyBooks, removedBooks, dirtyMembers, removedMembers,
+                           Collections.emptyMap());
+        });
+    }
+
+    /**
+     * Queue the books, members and removals of a capture to be saved again,
+     * after saving it failed. Books and members removed since are skipped.
+     */
+    public void requeueChanges(CatalogState state) {
+        for (Book book : state.getBooks()) {
+            Book current = getBook(book.getBookId());
+            if (current != null) {
+                current.markDirty();
+            }
+        }
+        for (Member member : state.getMembers()) {
+            Member current = getMember(member.getMemberId());
+            if (current != null) {
+                current.markDirty();
+            }
+        }
+        removedBookIds.addAll(state.getRemovedBookIds());
+        removedMemberIds.addAll(state.getRemovedMemberIds());
+    }
+
+    private static CatalogState capture(long position, List<Book> books, List<String> removedBooks,
+                                        List<Member> members, List<String> removedMembers,
+                                        Map<YearMonth, Integer> historySizes) {
+        LoanState[] loans = new LoanState[books.size()];
+        for (int i = 0; i < loans.length; i++) {
+            loans[i] = books.get(i).getLoanState();
+        }
+        List<List<String>> borrowedBooks = new ArrayList<>(members.size());
+        double[] fines = new double[members.size()];
+        for (int i = 0; i < fines.length; i++) {
+            Member member = members.get(i);
+            borrowedBooks.add(member.getBorrowedBooksCount() > 0 ? member.getBorrowedBooks()
+                                                                : Collections.emptyList());
+            fines[i] = member.getFineAmount();
+        }
+        return new CatalogState(position, books.toArray(new Book[0]), loans, removedBooks,
+                                members.toArray(new Member[0]), borrowedBooks, fines, removedMembers,
+                                historySizes);
+    }
+
+    private static List<String> drain(Queue<String> queue) {
+        List<String> drained = new ArrayList<>();
+        String id;
+        while ((id = queue.poll()) != null) {
+            drained.add(id);
+        }
+        return drained;
+    }
+
+    /**
+     * Books changed since last saved, for incremental persistence. Takes
+     * them off the dirty queue: a book is queued again only once it has
+     * been marked clean and changes again, so callers mark the returned
+     * books clean before saving them.
+     */
+    public List<Book> getDirtyBooks() {
+        return drainDirty(dirtyBooks, books, Book::getBookId, Book::isDirty);
+    }
+
+    // As above, for members
+    public List<Member> getDirtyMembers() {
+        return drainDirty(dirtyMembers, members, Member::getMemberId, Member::isDirty);
+    }
+
+    // Skips entries saved or removed since they were queued, and duplicates
+    private static <T> List<T> drainDirty(Queue<T> queue, Map<String, T> current,
+                                          Function<T, String> idOf, Predicate<T> isDirty) {
+        Set<T> drained = Collections.newSetFromMap(new IdentityHashMap<>());
+        List<T> result = new ArrayList<>();
+        T entity;
+        while ((entity = queue.poll()) != null) {
+            if (isDirty.test(entity) && current.get(idOf.apply(entity)) == entity && drained.add(entity)) {
+                result.add(entity);
+            }
+        }
+        return result;
+    }
+
+    // Loading and Recovery
+    /**
+     * Load persisted books, members and transaction history. Loan state is
+     * taken from the books and members as saved; history is not replayed.
+     */
+    public void loadData(Collection<Book> books, Collection<Member> members, List<Transaction> history) {
+        for (Book book : books) {
+            addBook(book);
+        }
+        for (Member member : members) {
+            addMember(member);
+        }
+        transactions.addAll(history);
+
+        long highest = 0;
+        for (Transaction transaction : history) {
+            highest = Math.max(highest, transaction.getTransactionNumber());
+        }
+        transactionIds.advancePast(highest);
+    }
+
+    /**
+     * Serve older history from an archive that comes before every monthly
+     * partition. New transaction IDs continue after the last archived one.
+     */
+    public void setTransactionArchive(TransactionArchive archive) {
+        transactions.setBase(archive);
+        if (archive != null && archive.size() > 0) {
+            transactionIds.advancePast(archive.get(archive.size() - 1).getTransactionNumber());
+        }
+    }
+
+    /**
+     * Re-apply journaled transactions recorded after the loaded snapshot,
+     * which captureCatalog took exactly as of its sequence, so each applies
+     * once. Loan changes that no longer fit, e.g. to a book removed since,
+     * are skipped. Nothing is recorded or sent to transaction listeners.
+     */
+    public void replayTransactions(List<Transaction> tail) {
+        for (Transaction transaction : tail) {
+            Member member = getMember(transaction.getMemberId());
+            Book book = getBook(transaction.getBookId());
+            switch (transaction.getType()) {
+                case BORROW:
+                    if (member != null && book != null && transaction.getDueDate() != null) {
+                        LoanState current = book.getLoanState();
+                        LoanState loan = current.borrowed(member.getMemberId(),
+                                transaction.getTransactionDate().toLocalDate(),
+                                transaction.getDueDate().toLocalDate());
+                        if (current.isAvailable() && book.compareAndSetLoanState(current, loan)
+                                && !member.addBorrowedBook(book.getBookId())
+                                && !member.hasBorrowedBook(book.getBookId())) {
+                            book.compareAndSetLoanState(loan, current); // The member is closed; keep the book free
+                        }
+                    }
+                    break;
+                case RETURN:
+                    if (member != null && book != null && endLoan(book, member.getMemberId()) != null) {
+                        member.removeBorrowedBook(book.getBookId());
+                        member.addFine(transaction.getFineAmount());
+                    }
+                    break;
+                case RENEW:
+                    if (book != null && !book.isAvailable() && transaction.getDueDate() != null) {
+                        book.setDueDate(transaction.getDueDate().toLocalDate());
+                    }
+                    break;
+                case FINE_PAID:
+                    if (member != null) {
+                        member.payFine(transaction.getFineAmount());
+                    }
+                    break;
+            }
+        }
     }
 
     // Utility Methods
-    private String generateTransactionId() {
-        return "TXN" + String.format("%06d", transactionCounter++);
+    // Add to the history and the transaction log; called inside the commit gate
+    private List<Transaction> logTransactions(List<Transaction> recorded) {
+        if (!recorded.isEmpty()) {
+            transactions.addAll(recorded);
+            TransactionListener log = transactionLog;
+            if (log != null) {
+                log.onTransactionsRecorded(recorded);
+            }
+        }
+        return recorded;
+    }
+
+    // Tell listeners, after leaving the commit gate, since they may block
+    private void publishTransactions(List<Transaction> recorded) {
+        if (recorded.isEmpty()) {
+            return;
+        }
+        for (TransactionListener listener : transactionListeners) {
+            listener.onTransactionsRecorded(recorded);
+        }
     }
 
     public void generateSampleData() {
@@ -271,23 +1320,27 @@ public class LibraryService {
     }
 
     // Statistics Methods
+    public LibraryStatistics getStatistics() {
+        return statistics.snapshot();
+    }
+
     public int getTotalBooks() {
-        return books.size();
+        return statistics.getTotalBooks();
     }
 
     public int getAvailableBooksCount() {
-        return (int) books.values().stream().filter(Book::isAvailable).count();
+        return statistics.getAvailableBooks();
     }
 
     public int getBorrowedBooksCount() {
-        return (int) books.values().stream().filter(book -> !book.isAvailable()).count();
+        return statistics.getBorrowedBooks();
     }
 
     public int getTotalMembers() {
-        return members.size();
+        return statistics.getTotalMembers();
     }
 
     public int getActiveMembers() {
-        return (int) members.values().stream().filter(Member::isActive).count();
+        return statistics.getActiveMembers();
     }
 }
\ No newline at end of file
@@ -0,0 +1,90 @@
+package services;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+import models.Member;
+
+/**
+ * Point-in-time snapshot of the library counters
+ */
+public class LibraryStatistics {
+    private final int totalBooks;
+    private final int availableBooks;
+    private final int borrowedBooks;
+    private final int totalMembers;
+    private final int activeMembers;
+    private final Map<String, Integer> booksByCategory;
+    private final Map<String, Integer> borrowedBooksByCategory;
+    private final Map<Member.MemberType, Integer> membersByType;
+    private final Map<Member.MemberType, Integer> activeMembersByType;
+
+    public LibraryStatistics(int totalBooks, int availableBooks, int borrowedBooks,
+                             int totalMembers, int activeMembers,
+                             Map<String, Integer> booksByCategory,
+                             Map<String, Integer> borrowedBooksByCategory,
+                             Map<Member.MemberType, Integer> membersByType,
+                             Map<Member.MemberType, Integer> activeMembersByType) {
+        this.totalBooks = totalBooks;
+        this.availableBooks = availableBooks;
+        this.borrowedBooks = borrowedBooks;
+        this.totalMembers = totalMembers;
+        this.activeMembers = activeMembers;
+        this.booksByCategory = Collections.unmodifiableMap(new TreeMap<>(booksByCategory));
+        this.borrowedBooksByCategory = Collections.unmodifiableMap(new TreeMap<>(borrowedBooksByCategory));
+        this.membersByType = Collections.unmodifiableMap(copyByType(membersByType));
+        this.activeMembersByType = Collections.unmodifiableMap(copyByType(activeMembersByType));
+    }
+
+    // Getters
+    public int getTotalBooks() {
+        return totalBooks;
+    }
+
+    public int getAvailableBooks() {
+        return availableBooks;
+    }
+
+    public int getBorrowedBooks() {
+        return borrowedBooks;
+    }
+
+    public int getTotalMembers() {
+        return totalMembers;
+    }
+
+    public int getActiveMembers() {
+        return activeMembers;
+    }
+
+    public Map<String, Integer> getBooksByCategory() {
+        return booksByCategory;
+    }
+
+    public Map<String, Integer> getBorrowedBooksByCategory() {
+        return borrowedBooksByCategory;
+    }
+
+    public Map<Member.MemberType, Integer> getMembersByType() {
+        return membersByType;
+    }
+
+    public Map<Member.MemberType, Integer> getActiveMembersByType() {
+        return activeMembersByType;
+    }
+
+    private static Map<Member.MemberType, Integer> copyByType(Map<Member.MemberType, Integer> counts) {
+        Map<Member.MemberType, Integer> copy = new EnumMap<>(Member.MemberType.class);
+        for (Member.MemberType type : Member.MemberType.values()) {
+            copy.put(type, counts.getOrDefault(type, 0));
+        }
+        return copy;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("LibraryStatistics{Books=%d, Available=%d, Borrowed=%d, Members=%d, Active=%d}",
+                totalBooks, availableBooks, borrowedBooks, totalMembers, activeMembers);
+    }
+}
@@ -0,0 +1,82 @@
+package services;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Named OperationMetrics of one component, e.g. the LibraryService or the
+ * file I/O in FileUtils, which can be published over JMX as
+ * library:type=&lt;component&gt;,name=&lt;operation&gt;
+ */
+public class MetricsRegistry {
+    public static final String JMX_DOMAIN = "library";
+
+    private final String component;
+    private final Map<String, OperationMetrics> operations;
+
+    public MetricsRegistry(String component) {
+        this.component = component;
+        this.operations = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * The metrics of the named operation, created on first use. Components
+     * look operations up once and keep them in fields.
+     */
+    public OperationMetrics operation(String name) {
+        return operations.computeIfAbsent(name, OperationMetrics::new);
+    }
+
+    public String getComponent() {
+        return component;
+    }
+
+    // By name
+    public List<OperationMetrics> getOperations() {
+        List<OperationMetrics> sorted = new ArrayList<>(operations.values());
+        sorted.sort((a, b) -> a.getName().compareTo(b.getName()));
+        return sorted;
+    }
+
+    public void reset() {
+        for (OperationMetrics metrics : operations.values()) {
+            metrics.reset();
+        }
+    }
+
+    /**
+     * Register every operation known so far with the platform MBean server,
+     * replacing any registered under the same names before
+     */
+    public void registerMBeans() throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (OperationMetrics metrics : operations.values()) {
+            ObjectName name = objectName(metrics);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(metrics, name);
+        }
+    }
+
+    public void unregisterMBeans() throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (OperationMetrics metrics : operations.values()) {
+            ObjectName name = objectName(metrics);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        }
+    }
+
+    private ObjectName objectName(OperationMetrics metrics) throws JMException {
+        return new ObjectName(JMX_DOMAIN + ":type=" + component
+                              + ",name=" + metrics.getName());
+    }
+}
@@ -0,0 +1,142 @@
+package services;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Call count, failures, items and bytes processed, and a latency histogram
+ * for one operation.
+ *
+ * Callers bracket the operation with start() and stop(), or fail() when it
+ * throws or is refused. Everything is lock-free; a call costs two System.nanoTime() reads
+ * and a handful of uncontended increments.
+ */
+public class OperationMetrics implements OperationMetricsMXBean {
+    private final String name;
+    private final LatencyHistogram latencies;
+    private final LongAdder failures;
+    private final LongAdder items;
+    private final LongAdder bytes;
+
+    OperationMetrics(String name) {
+        this.name = name;
+        this.latencies = new LatencyHistogram();
+        this.failures = new LongAdder();
+        this.items = new LongAdder();
+        this.bytes = new LongAdder();
+    }
+
+    // Recording
+    public long start() {
+        return System.nanoTime();
+    }
+
+    public void stop(long started) {
+        latencies.record(System.nanoTime() - started);
+    }
+
+    // itemCount is rows, books or results processed; byteCount is data read or written
+    public void stop(long started, long itemCount, long byteCount) {
+        latencies.record(System.nanoTime() - started);
+        if (itemCount > 0) {
+            items.add(itemCount);
+        }
+        if (byteCount > 0) {
+            bytes.add(byteCount);
+        }
+    }
+
+    // Refused calls count as failures
+    public void stop(long started, boolean succeeded) {
+        latencies.record(System.nanoTime() - started);
+        if (!succeeded) {
+            failures.increment();
+        }
+    }
+
+    public void fail(long started) {
+        latencies.record(System.nanoTime() - started);
+        failures.increment();
+    }
+
+    // Getters
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    public LatencyHistogram.Snapshot getLatencies() {
+        return latencies.snapshot();
+    }
+
+    @Override
+    public long getCount() {
+        return latencies.getCount();
+    }
+
+    @Override
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    @Override
+    public long getItems() {
+        return items.sum();
+    }
+
+    @Override
+    public long getBytes() {
+        return bytes.sum();
+    }
+
+    @Override
+    public double getMeanMicros() {
+        return latencies.snapshot().getMeanNanos() / 1000.0;
+    }
+
+    @Override
+    public double getP50Micros() {
+        return percentileMicros(50);
+    }
+
+    @Override
+    public double getP90Micros() {
+        return percentileMicros(90);
+    }
+
+    @Override
+    public double getP99Micros() {
+        return percentileMicros(99);
+    }
+
+    @Override
+    public double getP999Micros() {
+        return percentileMicros(99.9);
+    }
+
+    @Override
+    public double getMaxMicros() {
+        return latencies.snapshot().getMaxNanos() / 1000.0;
+    }
+
+    @Override
+    public void reset() {
+        latencies.reset();
+        failures.reset();
+        items.reset();
+        bytes.reset();
+    }
+
+    private double percentileMicros(double percentile) {
+        return latencies.snapshot().getPercentileNanos(percentile) / 1000.0;
+    }
+
+    @Override
+    public String toString() {
+        LatencyHistogram.Snapshot snapshot = latencies.snapshot();
+        return String.format("OperationMetrics{Name='%s', Count=%d, Failures=%d, Mean=%.1fus, " +
+                             "P99=%.1fus, Max=%.1fus, Items=%d, Bytes=%d}",
+                name, snapshot.getCount(), failures.sum(), snapshot.getMeanNanos() / 1000.0,
+                snapshot.getPercentileNanos(99) / 1000.0, snapshot.getMaxNanos() / 1000.0,
+                items.sum(), bytes.sum());
+    }
+}
@@ -0,0 +1,30 @@
+package services;
+
+/**
+ * JMX view of one operation's metrics. Latencies are in microseconds.
+ */
+public interface OperationMetricsMXBean {
+    String getName();
+
+    long getCount();
+
+    long getFailures();
+
+    long getItems();
+
+    long getBytes();
+
+    double getMeanMicros();
+
+    double getP50Micros();
+
+    double getP90Micros();
+
+    double getP99Micros();
+
+    double getP999Micros();
+
+    double getMaxMicros();
+
+    void reset();
+}
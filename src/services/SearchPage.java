@@ -0,0 +1,59 @@
+package services;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import models.Book;
+
+/**
+ * One page of ranked search results together with the total match count
+ */
+public class SearchPage {
+    private final List<Book> books;
+    private final int totalMatches;
+    private final int offset;
+    private final int limit;
+
+    public SearchPage(List<Book> books, int totalMatches, int offset, int limit) {
+        this.books = Collections.unmodifiableList(new ArrayList<>(books));
+        this.totalMatches = totalMatches;
+        this.offset = offset;
+        this.limit = limit;
+    }
+
+    // Getters
+    public List<Book> getBooks() {
+        return books;
+    }
+
+    public int getTotalMatches() {
+        return totalMatches;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    // Business methods
+    public boolean isEmpty() {
+        return books.isEmpty();
+    }
+
+    public boolean hasMore() {
+        return offset + books.size() < totalMatches;
+    }
+
+    public int getNextOffset() {
+        return offset + books.size();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("SearchPage{Offset=%d, Limit=%d, Results=%d, TotalMatches=%d}",
+                offset, limit, books.size(), totalMatches);
+    }
+}
@@ -0,0 +1,155 @@
+package services;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import models.Book;
+import models.Member;
+
+/**
+ * Library counters maintained incrementally as books and members change,
+ * so reading them never scans the catalog or member registry.
+ *
+ * Each counter is updated atomically on its own; a snapshot taken while
+ * other threads are borrowing may mix counts from adjacent instants.
+ */
+class StatisticsTracker {
+    private final AtomicInteger totalBooks;
+    private final AtomicInteger availableBooks;
+    private final AtomicInteger totalMembers;
+    private final AtomicInteger activeMembers;
+    private final Map<String, Integer> booksByCategory;
+    private final Map<String, Integer> borrowedBooksByCategory;
+    private final Map<Member.MemberType, Integer> membersByType;
+    private final Map<Member.MemberType, Integer> activeMembersByType;
+
+    StatisticsTracker() {
+        this.totalBooks = new AtomicInteger();
+        this.availableBooks = new AtomicInteger();
+        this.totalMembers = new AtomicInteger();
+        this.activeMembers = new AtomicInteger();
+        this.booksByCategory = new ConcurrentHashMap<>();
+        this.borrowedBooksByCategory = new ConcurrentHashMap<>();
+        this.membersByType = new ConcurrentHashMap<>();
+        this.activeMembersByType = new ConcurrentHashMap<>();
+    }
+
+    // Book events
+    void bookAdded(Book book) {
+        totalBooks.incrementAndGet();
+        adjust(booksByCategory, categoryOf(book.getCategory()), 1);
+        if (book.isAvailable()) {
+            availableBooks.incrementAndGet();
+        } else {
+            adjust(borrowedBooksByCategory, categoryOf(book.getCategory()), 1);
+        }
+    }
+
+    void bookRemoved(Book book) {
+        totalBooks.decrementAndGet();
+        adjust(booksByCategory, categoryOf(book.getCategory()), -1);
+        if (book.isAvailable()) {
+            availableBooks.decrementAndGet();
+        } else {
+            adjust(borrowedBooksByCategory, categoryOf(book.getCategory()), -1);
+        }
+    }
+
+    // Only called for real transitions, so the direction follows from the old value alone
+    void availabilityChanged(Book book, boolean wasAvailable) {
+        int delta = wasAvailable ? -1 : 1;
+        availableBooks.addAndGet(delta);
+        adjust(borrowedBooksByCategory, categoryOf(book.getCategory()), -delta);
+    }
+
+    void categoryChanged(Book book, String oldCategory) {
+        String oldKey = categoryOf(oldCategory);
+        String newKey = categoryOf(book.getCategory());
+        if (oldKey.equals(newKey)) {
+            return;
+        }
+        adjust(booksByCategory, oldKey, -1);
+        adjust(booksByCategory, newKey, 1);
+        if (!book.isAvailable()) {
+            adjust(borrowedBooksByCategory, oldKey, -1);
+            adjust(borrowedBooksByCategory, newKey, 1);
+        }
+    }
+
+    // Member events
+    void memberAdded(Member member) {
+        totalMembers.incrementAndGet();
+        adjust(membersByType, member.getMemberType(), 1);
+        if (member.isActive()) {
+            activeMembers.incrementAndGet();
+            adjust(activeMembersByType, member.getMemberType(), 1);
+        }
+    }
+
+    void memberRemoved(Member member) {
+        totalMembers.decrementAndGet();
+        adjust(membersByType, member.getMemberType(), -1);
+        if (member.isActive()) {
+            activeMembers.decrementAndGet();
+            adjust(activeMembersByType, member.getMemberType(), -1);
+        }
+    }
+
+    void activeChanged(Member member, boolean wasActive) {
+        if (wasActive == member.isActive()) {
+            return;
+        }
+        int delta = member.isActive() ? 1 : -1;
+        activeMembers.addAndGet(delta);
+        adjust(activeMembersByType, member.getMemberType(), delta);
+    }
+
+    void memberTypeChanged(Member member, Member.MemberType oldType) {
+        adjust(membersByType, oldType, -1);
+        adjust(membersByType, member.getMemberType(), 1);
+        if (member.isActive()) {
+            adjust(activeMembersByType, oldType, -1);
+            adjust(activeMembersByType, member.getMemberType(), 1);
+        }
+    }
+
+    // Reads
+    int getTotalBooks() {
+        return totalBooks.get();
+    }
+
+    int getAvailableBooks() {
+        return availableBooks.get();
+    }
+
+    int getBorrowedBooks() {
+        return Math.max(0, totalBooks.get() - availableBooks.get());
+    }
+
+    int getTotalMembers() {
+        return totalMembers.get();
+    }
+
+    int getActiveMembers() {
+        return activeMembers.get();
+    }
+
+    LibraryStatistics snapshot() {
+        int total = totalBooks.get();
+        int available = availableBooks.get();
+        return new LibraryStatistics(total, available, Math.max(0, total - available),
+                                     totalMembers.get(), activeMembers.get(),
+                                     booksByCategory, borrowedBooksByCategory,
+                                     membersByType, activeMembersByType);
+    }
+
+    // Utility Methods
+    private static <K> void adjust(Map<K, Integer> counts, K key, int delta) {
+        // Atomic per key; a count that drops to zero removes its entry
+        counts.merge(key, delta, (current, change) -> current + change == 0 ? null : current + change);
+    }
+
+    private static String categoryOf(String category) {
+        return category == null ? "" : category;
+    }
+}
@@ -0,0 +1,63 @@
+package services;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Fixed pool of locks selected by key hash.
+ *
+ * Operations that touch several entities (a member and a book) lock every
+ * stripe they need in ascending stripe order, so two operations can never
+ * wait on each other in a cycle. Keys that hash to the same stripe share a
+ * single acquisition.
+ */
+class StripedLocks {
+    private final ReentrantLock[] locks;
+    private final int mask;
+
+    StripedLocks(int minimumStripes) {
+        int stripes = Integer.highestOneBit(Math.max(1, minimumStripes - 1)) << 1;
+        this.locks = new ReentrantLock[stripes];
+        for (int i = 0; i < stripes; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        this.mask = stripes - 1;
+    }
+
+    /**
+     * Lock the stripes for all keys in deadlock-free order
+     *
+     * @return the acquired stripes, to be passed to {@link #unlock(int[])}
+     */
+    int[] lock(String... keys) {
+        int[] stripes = new int[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            stripes[i] = stripeFor(keys[i]);
+        }
+        Arrays.sort(stripes);
+
+        int unique = 0;
+        for (int i = 0; i < stripes.length; i++) {
+            if (i == 0 || stripes[i] != stripes[i - 1]) {
+                stripes[unique++] = stripes[i];
+            }
+        }
+        stripes = unique == stripes.length ? stripes : Arrays.copyOf(stripes, unique);
+
+        for (int stripe : stripes) {
+            locks[stripe].lock();
+        }
+        return stripes;
+    }
+
+    void unlock(int[] stripes) {
+        for (int i = stripes.length - 1; i >= 0; i--) {
+            locks[stripes[i]].unlock();
+        }
+    }
+
+    private int stripeFor(String key) {
+        int hash = key == null ? 0 : key.hashCode();
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+}
@@ -0,0 +1,22 @@
+package services;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import models.Transaction;
+
+/**
+ * Read-only transaction history kept outside the service's in-memory log,
+ * typically on disk. Entries are in the order they were recorded and are
+ * materialized only when asked for.
+ */
+public interface TransactionArchive {
+
+    int size();
+
+    Transaction get(int index);
+
+    // Transactions of one member or book recorded from (inclusive) to (exclusive); null bounds are open
+    List<Transaction> getMemberTransactions(String memberId, LocalDateTime from, LocalDateTime to);
+
+    List<Transaction> getBookTransactions(String bookId, LocalDateTime from, LocalDateTime to);
+}
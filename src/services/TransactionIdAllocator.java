@@ -0,0 +1,112 @@
+package services;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hands out transaction numbers from blocks reserved in advance.
+ *
+ * Before any number of a new block is handed out, the end of the block is
+ * saved through the TransactionIdStore, so after a restart numbering
+ * resumes past every number that may have been used, with one disk write
+ * per block instead of per ID. A restart skips the numbers reserved but
+ * not handed out: the rest of the current block and, once a block is
+ * reserved ahead, that one too, so fewer than two blocks.
+ *
+ * A background thread is expected to call reserveAhead() once
+ * isRunningLow() says fewer than a block of numbers are left, so the
+ * common path is one getAndAdd and a volatile read. Only a thread that
+ * runs past the reserved numbers anyway, because the background thread
+ * fell behind or there is none, reserves the next block itself under the
+ * lock; if the store fails, it gets the IOException and the reserved limit
+ * stays where it was.
+ */
+final class TransactionIdAllocator {
+    static final long BLOCK_SIZE = 1000;
+
+    private final AtomicLong next;
+    private final OperationMetrics reservations;
+    private volatile long reservedLimit; // Numbers below this may be handed out
+
+    // Guarded by this
+    private LibraryService.TransactionIdStore store; // Null: nothing to save, every number is reserved
+
+    TransactionIdAllocator(OperationMetrics reservations) {
+        this.next = new AtomicLong(1);
+        this.reservations = reservations;
+        this.reservedLimit = Long.MAX_VALUE;
+    }
+
+    long next() throws IOException {
+        return next(1);
+    }
+
+    /**
+     * Take count consecutive numbers
+     *
+     * @return the first of them
+     * @throws IOException if they were not reserved yet and reserving them failed
+     */
+    long next(int count) throws IOException {
+        long first = next.getAndAdd(count);
+        long last = first + count - 1;
+        if (last >= reservedLimit) {
+            reserveThrough(last);
+        }
+        return first;
+    }
+
+    /**
+     * Make sure numbering continues after the given number, e.g. the
+     * highest loaded from history
+     */
+    void advancePast(long number) {
+        next.accumulateAndGet(number + 1, Math::max);
+    }
+
+    /**
+     * Save reservations to the store from now on. Numbering resumes at
+     * reservedLimit, the end of the last block reserved before, if that is
+     * past every number seen so far.
+     */
+    synchronized void setStore(LibraryService.TransactionIdStore store, long reservedLimit) {
+        next.accumulateAndGet(reservedLimit, Math::max);
+        this.store = store;
+        this.reservedLimit = store != null ? next.get() : Long.MAX_VALUE; // The next number reserves a block
+    }
+
+    // Fewer than a block of reserved numbers left
+    boolean isRunningLow() {
+        return reservedLimit - next.get() < BLOCK_SIZE;
+    }
+
+    /**
+     * Reserve one more block if fewer than one is left, so callers of
+     * next() don't wait for the store
+     */
+    synchronized void reserveAhead() throws IOException {
+        if (store != null && isRunningLow()) {
+            reserve(Math.max(reservedLimit, next.get()) + BLOCK_SIZE);
+        }
+    }
+
+    private synchronized void reserveThrough(long number) throws IOException {
+        while (number >= reservedLimit) {
+            // Cover every number taken while waiting for the lock, plus a block
+            reserve(Math.max(reservedLimit, next.get()) + BLOCK_SIZE);
+        }
+    }
+
+    // Guarded by this
+    private void reserve(long limit) throws IOException {
+        long started = reservations.start();
+        try {
+            store.reserve(limit);
+        } catch (IOException | RuntimeException e) {
+            reservations.fail(started);
+            throw e;
+        }
+        reservations.stop(started, limit - reservedLimit, 0);
+        reservedLimit = limit;
+    }
+}
@@ -0,0 +1,86 @@
+package services;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import models.Transaction;
+
+/**
+ * Transactions of the in-memory log grouped by member and by book.
+ *
+ * Each member and book has its own posting list in recording order, so
+ * looking up one member's history or who borrowed a book reads only their
+ * own transactions instead of the whole log. Posting lists only grow; appends
+ * to different keys run concurrently and each list is locked only for the
+ * append or the copy that reads it.
+ */
+class TransactionIndex {
+    private final Map<String, Postings> byMember;
+    private final Map<String, Postings> byBook;
+
+    TransactionIndex() {
+        this.byMember = new ConcurrentHashMap<>();
+        this.byBook = new ConcurrentHashMap<>();
+    }
+
+    void add(Transaction transaction) {
+        if (transaction.getMemberId() != null) {
+            byMember.computeIfAbsent(transaction.getMemberId(), id -> new Postings()).add(transaction);
+        }
+        if (transaction.getBookId() != null) {
+            byBook.computeIfAbsent(transaction.getBookId(), id -> new Postings()).add(transaction);
+        }
+    }
+
+    void addAll(Collection<Transaction> transactions) {
+        for (Transaction transaction : transactions) {
+            add(transaction);
+        }
+    }
+
+    /**
+     * A member's transactions recorded from (inclusive) to (exclusive),
+     * oldest first; null bounds are open
+     */
+    List<Transaction> memberTransactions(String memberId, LocalDateTime from, LocalDateTime to) {
+        return select(byMember.get(memberId), from, to);
+    }
+
+    List<Transaction> bookTransactions(String bookId, LocalDateTime from, LocalDateTime to) {
+        return select(byBook.get(bookId), from, to);
+    }
+
+    static boolean inRange(LocalDateTime date, LocalDateTime from, LocalDateTime to) {
+        if (from == null && to == null) {
+            return true;
+        }
+        return date != null && (from == null || !date.isBefore(from)) && (to == null || date.isBefore(to));
+    }
+
+    private static List<Transaction> select(Postings postings, LocalDateTime from, LocalDateTime to) {
+        return postings != null ? postings.select(from, to) : new ArrayList<>();
+    }
+
+    // Append-only list of one key's transactions
+    private static final class Postings {
+        private Transaction[] items = new Transaction[4];
+        private int size;
+
+        synchronized void add(Transaction transaction) {
+            if (size == items.length) {
+                items = Arrays.copyOf(items, size * 2);
+            }
+            items[size++] = transaction;
+        }
+
+        synchronized List<Transaction> select(LocalDateTime from, LocalDateTime to) {
+            List<Transaction> result = new ArrayList<>();
+            for (int i = 0; i < size; i++) {
+                if (inRange(items[i].getTransactionDate(), from, to)) {
+                    result.add(items[i]);
+                }
+            }
+            return result;
+        }
+    }
+}
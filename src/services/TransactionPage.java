@@ -0,0 +1,59 @@
+package services;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import models.Transaction;
+
+/**
+ * One page of the transaction history together with its total size
+ */
+public class TransactionPage {
+    private final List<Transaction> transactions;
+    private final int totalTransactions;
+    private final int offset;
+    private final int limit;
+
+    public TransactionPage(List<Transaction> transactions, int totalTransactions, int offset, int limit) {
+        this.transactions = Collections.unmodifiableList(new ArrayList<>(transactions));
+        this.totalTransactions = totalTransactions;
+        this.offset = offset;
+        this.limit = limit;
+    }
+
+    // Getters
+    public List<Transaction> getTransactions() {
+        return transactions;
+    }
+
+    public int getTotalTransactions() {
+        return totalTransactions;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    // Business methods
+    public boolean isEmpty() {
+        return transactions.isEmpty();
+    }
+
+    public boolean hasMore() {
+        return offset + transactions.size() < totalTransactions;
+    }
+
+    public int getNextOffset() {
+        return offset + transactions.size();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("TransactionPage{Offset=%d, Limit=%d, Results=%d, Total=%d}",
+                offset, limit, transactions.size(), totalTransactions);
+    }
+}
@@ -0,0 +1,364 @@
+package services;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.*;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Predicate;
+import models.Transaction;
+
+/**
+ * The transaction log, split into monthly partitions by transaction date.
+ *
+ * Range queries only visit the partitions whose month overlaps the range,
+ * and paging skips whole partitions by their size, so nothing copies the
+ * whole history. Each partition indexes its in-memory transactions by
+ * member and book. The transactions a partition held at some point, as
+ * counted by sizes(), can be handed to a
+ * {@link LibraryService.PartitionArchiver}, which moves them out of the
+ * heap (e.g. into a memory-mapped file) and returns an archive that serves
+ * them from then on; anything recorded for that month later is kept in
+ * memory after the archive.
+ *
+ * A month's archive is a chain of runs. Archiving again writes only the
+ * transactions added since, as a new run, merged with the trailing runs
+ * that are no longer than it. A month thus has a logarithmic number of
+ * runs, and each transaction is rewritten a logarithmic number of times.
+ *
+ * History loaded from a single pre-partitioning archive is kept as a base
+ * that comes before all partitions.
+ */
+class TransactionStore {
+    private static final YearMonth UNDATED = YearMonth.of(1970, 1); // Partition for transactions without a date
+
+    private final NavigableMap<YearMonth, Partition> partitions;
+    private volatile TransactionArchive base; // Older, unpartitioned history, or null
+
+    TransactionStore() {
+        this.partitions = new ConcurrentSkipListMap<>();
+    }
+
+    void add(Transaction transaction) {
+        partitions.computeIfAbsent(monthOf(transaction), Partition::new).add(transaction);
+    }
+
+    void addAll(Collection<Transaction> transactions) {
+        for (Transaction transaction : transactions) {
+            add(transaction);
+        }
+    }
+
+    void setBase(TransactionArchive base) {
+        this.base = base;
+    }
+
+    // Serve the next run of a month from an archive saved before; only before anything is added for the month
+    void addArchive(YearMonth month, TransactionArchive archive) {
+        partitions.computeIfAbsent(month, Partition::new).addArchive(archive);
+    }
+
+    int size() {
+        TransactionArchive currentBase = base;
+        int size = currentBase != null ? currentBase.size() : 0;
+        for (Partition partition : partitions.values()) {
+            size += partition.size();
+        }
+        return size;
+    }
+
+    // Reading
+    /**
+     * Up to limit transactions starting at offset, in the order of the base
+     * archive and then month by month
+     */
+    List<Transaction> page(int offset, int limit) {
+        List<Transaction> page = new ArrayList<>(Math.min(limit, 1024));
+        int skip = offset;
+        for (Segment segment : segments(null, null)) {
+            int size = segment.size();
+            if (skip >= size) {
+                skip -= size;
+                continue;
+            }
+            for (int i = skip; i < size && page.size() < limit; i++) {
+                page.add(segment.get(i));
+            }
+            skip = 0;
+            if (page.size() == limit) {
+                break;
+            }
+        }
+        return page;
+    }
+
+    /**
+     * Stream the transactions recorded from (inclusive) to (exclusive), one
+     * at a time; null bounds are open. Each partition is read as far as it
+     * extended when the iterator reached it.
+     */
+    Iterator<Transaction> iterator(LocalDateTime from, LocalDateTime to) {
+        Iterator<Segment> segments = segments(from, to).iterator();
+        return new Iterator<Transaction>() {
+            private Segment segment;
+            private int index;
+            private int size;
+            private Transaction next;
+
+            @Override
+            public boolean hasNext() {
+                while (next == null) {
+                    if (segment != null && index < size) {
+                        Transaction candidate = segment.get(index++);
+                        if (TransactionIndex.inRange(candidate.getTransactionDate(), from, to)) {
+                            next = candidate;
+                        }
+                    } else if (segments.hasNext()) {
+                        segment = segments.next();
+                        index = 0;
+                        size = segment.size();
+                    } else {
+                        return false;
+                    }
+                }
+                return true;
+            }
+
+            @Override
+            public Transaction next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Transaction result = next;
+                next = null;
+                return result;
+            }
+        };
+    }
+
+    List<Transaction> find(LocalDateTime from, LocalDateTime to, Predicate<Transaction> filter) {
+        List<Transaction> result = new ArrayList<>();
+        for (Iterator<Transaction> it = iterator(from, to); it.hasNext(); ) {
+            Transaction transaction = it.next();
+            if (filter.test(transaction)) {
+                result.add(transaction);
+            }
+        }
+        return result;
+    }
+
+    List<Transaction> memberTransactions(String memberId, LocalDateTime from, LocalDateTime to) {
+        List<Transaction> result = new ArrayList<>();
+        TransactionArchive currentBase = base;
+        if (currentBase != null) {
+            result.addAll(currentBase.getMemberTransactions(memberId, from, to));
+        }
+        for (Partition partition : partitionsIn(from, to)) {
+            partition.memberTransactions(memberId, from, to, result);
+        }
+        return result;
+    }
+
+    List<Transaction> bookTransactions(String bookId, LocalDateTime from, LocalDateTime to) {
+        List<Transaction> result = new ArrayList<>();
+        TransactionArchive currentBase = base;
+        if (currentBase != null) {
+            result.addAll(currentBase.getBookTransactions(bookId, from, to));
+        }
+        for (Partition partition : partitionsIn(from, to)) {
+            partition.bookTransactions(bookId, from, to, result);
+        }
+        return result;
+    }
+
+    // Eviction
+    // Number of transactions in each month's partition, archived or not
+    Map<YearMonth, Integer> sizes() {
+        Map<YearMonth, Integer> sizes = new HashMap<>();
+        for (Partition partition : partitions.values()) {
+            sizes.put(partition.month, partition.size());
+        }
+        return sizes;
+    }
+
+    /**
+     * Move the first transactions of each month, as many as counted, out of
+     * the heap. Only those not archived yet are written, possibly with the
+     * month's last runs; months whose archive already holds them all are
+     * skipped. Must not run concurrently with itself.
+     *
+     * @return the number of partitions archived
+     */
+    int archive(Map<YearMonth, Integer> counts, LibraryService.PartitionArchiver archiver) throws IOException {
+        int archived = 0;
+        for (Map.Entry<YearMonth, Integer> count : counts.entrySet()) {
+            Partition partition = partitions.get(count.getKey());
+            if (partition != null && partition.archive(archiver, count.getValue())) {
+                archived++;
+            }
+        }
+        return archived;
+    }
+
+    // Partition selection
+    private Collection<Partition> partitionsIn(LocalDateTime from, LocalDateTime to) {
+        if (from == null && to == null) {
+            return partitions.values();
+        }
+        // Undated transactions never match a bounded range
+        YearMonth first = from != null ? YearMonth.from(from) : UNDATED.plusMonths(1);
+        if (to == null) {
+            return partitions.tailMap(first, true).values();
+        }
+        YearMonth last = YearMonth.from(to);
+        return last.isBefore(first) ? Collections.emptyList() : partitions.subMap(first, true, last, true).values();
+    }
+
+    private List<Segment> segments(LocalDateTime from, LocalDateTime to) {
+        List<Segment> segments = new ArrayList<>();
+        TransactionArchive currentBase = base;
+        if (currentBase != null) {
+            segments.add(new Segment() {
+                @Override
+                public int size() {
+                    return currentBase.size();
+                }
+
+                @Override
+                public Transaction get(int index) {
+                    return currentBase.get(index);
+                }
+            });
+        }
+        segments.addAll(partitionsIn(from, to));
+        return segments;
+    }
+
+    private static YearMonth monthOf(Transaction transaction) {
+        LocalDateTime date = transaction.getTransactionDate();
+        return date != null ? YearMonth.from(date) : UNDATED;
+    }
+
+    // A run of transactions that can be read by position
+    private interface Segment {
+        int size();
+
+        Transaction get(int index);
+    }
+
+    /**
+     * One month of transactions: runs of evicted ones followed by those
+     * held in memory, indexed by member and book
+     */
+    private static final class Partition implements Segment {
+        private final YearMonth month;
+        private final List<TransactionArchive> archives = new ArrayList<>(); // Guarded by this
+        private int[] archiveStarts = new int[0]; // Month position of each run's first transaction
+        private int archivedSize;
+        private Transaction[] recent = new Transaction[16];
+        private int recentSize;
+        private TransactionIndex index = new TransactionIndex();
+
+        Partition(YearMonth month) {
+            this.month = month;
+        }
+
+        synchronized void addArchive(TransactionArchive archive) {
+            archiveStarts = Arrays.copyOf(archiveStarts, archives.size() + 1);
+            archiveStarts[archives.size()] = archivedSize;
+            archives.add(archive);
+            archivedSize += archive.size();
+        }
+
+        synchronized void add(Transaction transaction) {
+            if (recentSize == recent.length) {
+                recent = Arrays.copyOf(recent, recentSize * 2);
+            }
+            recent[recentSize++] = transaction;
+            index.add(transaction);
+        }
+
+        @Override
+        public synchronized int size() {
+            return archivedSize + recentSize;
+        }
+
+        @Override
+        public synchronized Transaction get(int position) {
+            if (position < archivedSize) {
+                int run = Arrays.binarySearch(archiveStarts, position);
+                if (run < 0) {
+                    run = -run - 2; // The run starting before the position
+                }
+                return archives.get(run).get(position - archiveStarts[run]);
+            }
+            if (position - archivedSize >= recentSize) {
+                throw new IndexOutOfBoundsException("Index: " + position + ", Size: " + (archivedSize + recentSize));
+            }
+            return recent[position - archivedSize];
+        }
+
+        synchronized void memberTransactions(String memberId, LocalDateTime from, LocalDateTime to,
+                                             List<Transaction> result) {
+            for (TransactionArchive archive : archives) {
+                result.addAll(archive.getMemberTransactions(memberId, from, to));
+            }
+            result.addAll(index.memberTransactions(memberId, from, to));
+        }
+
+        synchronized void bookTransactions(String bookId, LocalDateTime from, LocalDateTime to,
+                                           List<Transaction> result) {
+            for (TransactionArchive archive : archives) {
+                result.addAll(archive.getBookTransactions(bookId, from, to));
+            }
+            result.addAll(index.bookTransactions(bookId, from, to));
+        }
+
+        /**
+         * Archive the in-memory transactions among the first count as a new
+         * run, together with the trailing runs no longer than it, which the
+         * new run replaces. Transactions are only appended, so the run is
+         * written without holding up new ones.
+         */
+        boolean archive(LibraryService.PartitionArchiver archiver, int count) throws IOException {
+            int archivedBefore;
+            int first;
+            int replaced = 0;
+            List<Transaction> archiving;
+            synchronized (this) {
+                archivedBefore = archivedSize;
+                if (count <= archivedBefore) {
+                    return false;
+                }
+                first = archivedBefore;
+                while (replaced < archives.size()
+                        && archives.get(archives.size() - 1 - replaced).size() <= count - first) {
+                    first -= archives.get(archives.size() - 1 - replaced).size();
+                    replaced++;
+                }
+                archiving = new ArrayList<>(count - first);
+                for (int i = first; i < count; i++) {
+                    archiving.add(get(i));
+                }
+            }
+            TransactionArchive written = archiver.archive(month, first, archiving);
+            synchronized (this) {
+                int moved = count - archivedBefore;
+                Transaction[] remaining = new Transaction[Math.max(16, recentSize - moved)];
+                System.arraycopy(recent, moved, remaining, 0, recentSize - moved);
+                TransactionIndex remainingIndex = new TransactionIndex();
+                for (int i = 0; i < recentSize - moved; i++) {
+                    remainingIndex.add(remaining[i]);
+                }
+                archives.subList(archives.size() - replaced, archives.size()).clear();
+                archiveStarts = Arrays.copyOf(archiveStarts, archives.size());
+                archivedSize = first;
+                addArchive(written);
+                recent = remaining;
+                recentSize -= moved;
+                index = remainingIndex;
+            }
+            return true;
+        }
+    }
+}
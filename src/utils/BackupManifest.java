@@ -0,0 +1,56 @@
+package utils;
+
+import java.io.*;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * The manifest (backup.properties) stored in each backup directory,
+ * recording the size and modification time every data file had when it was
+ * backed up. The next backup compares against it to find unchanged files.
+ */
+final class BackupManifest {
+
+    static final String FILE_NAME = "backup.properties";
+
+    private final Map<String, String> entries = new TreeMap<>(); // file name -> "size,lastModified"
+
+    /**
+     * Read the manifest of a backup; backups made before manifests existed
+     * have an empty one, so every file counts as changed
+     */
+    static BackupManifest read(File backupDirectory) throws IOException {
+        BackupManifest manifest = new BackupManifest();
+        File file = new File(backupDirectory, FILE_NAME);
+        if (!file.exists()) {
+            return manifest;
+        }
+
+        Properties properties = new Properties();
+        try (InputStream in = new FileInputStream(file)) {
+            properties.load(in);
+        }
+        for (String name : properties.stringPropertyNames()) {
+            manifest.entries.put(name, properties.getProperty(name));
+        }
+        return manifest;
+    }
+
+    void write(File backupDirectory) throws IOException {
+        Properties properties = new Properties();
+        properties.putAll(entries);
+        try (OutputStream out = new FileOutputStream(new File(backupDirectory, FILE_NAME))) {
+            properties.store(out, "Library backup manifest");
+        }
+    }
+
+    void add(String fileName, long size, long lastModified) {
+        entries.put(fileName, size + "," + lastModified);
+    }
+
+    // Whether the file had the same size and modification time in this backup
+    boolean matches(String fileName, long size, long lastModified) {
+        return (size + "," + lastModified).equals(entries.get(fileName));
+    }
+}
@@ -0,0 +1,426 @@
+package utils;
+
+import models.*;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+
+/**
+ * Versioned binary encoding of books, members and transactions.
+ *
+ * A file starts with a magic number, a format version and the record kind,
+ * followed by the record count and the records. Strings are length-prefixed
+ * UTF-8 (length -1 for null), dates are epoch days, date-times are epoch
+ * seconds, and enums are stored by ordinal. Columns with few distinct values
+ * (categories, member and book IDs in transactions, transaction notes) are
+ * dictionary-encoded: each value is written in full the first time it
+ * appears and as an index afterwards, so loading shares one String per
+ * distinct value instead of allocating one per row.
+ */
+final class BinaryFormat {
+
+    static final int MAGIC = 0x4C494246; // "LIBF"
+    static final short VERSION = 1;
+
+    static final byte BOOKS = 1;
+    static final byte MEMBERS = 2;
+    static final byte TRANSACTIONS = 3;
+
+    static final int HEADER_SIZE = 11; // magic, version, kind, record count
+
+    static final int NULL_LENGTH = -1;
+    static final int NO_DATE = Integer.MIN_VALUE;
+    static final long NO_DATETIME = Long.MIN_VALUE;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private BinaryFormat() {
+    }
+
+    // Books
+    static void writeBooks(WritableByteChannel out, Collection<Book> books) throws IOException {
+        Writer writer = new Writer(out);
+        Map<String, Integer> categories = new HashMap<>();
+        writer.writeHeader(BOOKS, books.size());
+        for (Book book : books) {
+            LoanState loan = book.getLoanState();
+            writer.writeString(book.getBookId());
+            writer.writeString(book.getTitle());
+            writer.writeString(book.getAuthor());
+            writer.writeString(book.getIsbn());
+            writer.writeDictionaryString(categories, book.getCategory());
+            writer.writeDate(book.getDateAdded());
+            writer.writeBoolean(loan.isAvailable());
+            writer.writeString(loan.getBorrowedBy());
+            writer.writeDate(loan.getBorrowDate());
+            writer.writeDate(loan.getDueDate());
+        }
+        writer.flush();
+    }
+
+    static List<Book> readBooks(ReadableByteChannel in) throws IOException {
+        Reader reader = new Reader(in);
+        List<String> categories = new ArrayList<>();
+        int count = reader.readHeader(BOOKS);
+        List<Book> books = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Book book = new Book(
+                reader.readString(), // bookId
+                reader.readString(), // title
+                reader.readString(), // author
+                reader.readString(), // isbn
+                reader.readDictionaryString(categories) // category
+            );
+            book.setDateAdded(reader.readDate());
+            boolean available = reader.readBoolean();
+            String borrowedBy = reader.readString();
+            LocalDate borrowDate = reader.readDate();
+            LocalDate dueDate = reader.readDate();
+            if (!available) {
+                LoanState initial = book.getLoanState();
+                book.compareAndSetLoanState(initial, initial.borrowed(borrowedBy, borrowDate, dueDate));
+            }
+            books.add(book);
+        }
+        return books;
+    }
+
+    // Members
+    static void writeMembers(WritableByteChannel out, Collection<Member> members) throws IOException {
+        Writer writer = new Writer(out);
+        writer.writeHeader(MEMBERS, members.size());
+        for (Member member : members) {
+            writer.writeString(member.getMemberId());
+            writer.writeString(member.getName());
+            writer.writeString(member.getEmail());
+            writer.writeString(member.getPhoneNumber());
+            writer.writeString(member.getAddress());
+            writer.writeByte(member.getMemberType().ordinal());
+            writer.writeDate(member.getRegistrationDate());
+            List<String> borrowedBooks = member.getBorrowedBooks();
+            writer.writeShort(borrowedBooks.size());
+            for (String bookId : borrowedBooks) {
+                writer.writeString(bookId);
+            }
+            writer.writeDouble(member.getFineAmount());
+            writer.writeBoolean(member.isActive());
+        }
+        writer.flush();
+    }
+
+    static List<Member> readMembers(ReadableByteChannel in) throws IOException {
+        Reader reader = new Reader(in);
+        Member.MemberType[] memberTypes = Member.MemberType.values();
+        int count = reader.readHeader(MEMBERS);
+        List<Member> members = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Member member = new Member(
+                reader.readString(), // memberId
+                reader.readString(), // name
+                reader.readString(), // email
+                reader.readString(), // phone
+                reader.readString(), // address
+                reader.readEnum(memberTypes) // memberType
+            );
+            member.setRegistrationDate(reader.readDate());
+            int borrowedCount = reader.readUnsignedShort();
+            for (int j = 0; j < borrowedCount; j++) {
+                String bookId = reader.readString();
+                if (!member.addBorrowedBook(bookId)) {
+                    System.err.println("Skipping duplicate loan of " + bookId + " by member " + member.getMemberId());
+                }
+            }
+            member.setFineAmount(reader.readDouble());
+            member.setActive(reader.readBoolean());
+            members.add(member);
+        }
+        return members;
+    }
+
+    // Transactions
+    static void writeTransactions(WritableByteChannel out, Collection<Transaction> transactions) throws IOException {
+        Writer writer = new Writer(out);
+        Map<String, Integer> memberIds = new HashMap<>();
+        Map<String, Integer> bookIds = new HashMap<>();
+        Map<String, Integer> notes = new HashMap<>();
+        writer.writeHeader(TRANSACTIONS, transactions.size());
+        for (Transaction transaction : transactions) {
+            writer.writeString(transaction.getTransactionId());
+            writer.writeDictionaryString(memberIds, transaction.getMemberId());
+            writer.writeDictionaryString(bookIds, transaction.getBookId());
+            writer.writeByte(transaction.getType().ordinal());
+            writer.writeDateTime(transaction.getTransactionDate());
+            writer.writeDateTime(transaction.getDueDate());
+            writer.writeDateTime(transaction.getReturnDate());
+            writer.writeDouble(transaction.getFineAmount());
+            writer.writeDictionaryString(notes, transaction.getNotes());
+        }
+        writer.flush();
+    }
+
+    static List<Transaction> readTransactions(ReadableByteChannel in) throws IOException {
+        Reader reader = new Reader(in);
+        List<String> memberIds = new ArrayList<>();
+        List<String> bookIds = new ArrayList<>();
+        List<String> notes = new ArrayList<>();
+        Transaction.TransactionType[] types = Transaction.TransactionType.values();
+        int count = reader.readHeader(TRANSACTIONS);
+        List<Transaction> transactions = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Transaction transaction = new Transaction(
+                reader.readString(), // transactionId
+                reader.readDictionaryString(memberIds), // memberId
+                reader.readDictionaryString(bookIds), // bookId
+                reader.readEnum(types) // type
+            );
+            transaction.setTransactionDate(reader.readDateTime());
+            transaction.setDueDate(reader.readDateTime());
+            transaction.setReturnDate(reader.readDateTime());
+            transaction.setFineAmount(reader.readDouble());
+            transaction.setNotes(reader.readDictionaryString(notes));
+            transactions.add(transaction);
+        }
+        return transactions;
+    }
+
+    private static final class Writer {
+        private final WritableByteChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+        Writer(WritableByteChannel channel) {
+            this.channel = channel;
+        }
+
+        void writeHeader(byte kind, int count) throws IOException {
+            writeInt(MAGIC);
+            require(Short.BYTES);
+            buffer.putShort(VERSION);
+            writeByte(kind);
+            writeInt(count);
+        }
+
+        void writeByte(int value) throws IOException {
+            require(Byte.BYTES);
+            buffer.put((byte) value);
+        }
+
+        void writeBoolean(boolean value) throws IOException {
+            writeByte(value ? 1 : 0);
+        }
+
+        void writeShort(int value) throws IOException {
+            require(Short.BYTES);
+            buffer.putShort((short) value);
+        }
+
+        void writeInt(int value) throws IOException {
+            require(Integer.BYTES);
+            buffer.putInt(value);
+        }
+
+        void writeLong(long value) throws IOException {
+            require(Long.BYTES);
+            buffer.putLong(value);
+        }
+
+        void writeDouble(double value) throws IOException {
+            require(Double.BYTES);
+            buffer.putDouble(value);
+        }
+
+        void writeString(String value) throws IOException {
+            if (value == null) {
+                writeInt(NULL_LENGTH);
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeInt(bytes.length);
+            int offset = 0;
+            while (offset < bytes.length) {
+                if (!buffer.hasRemaining()) {
+                    flush();
+                }
+                int chunk = Math.min(buffer.remaining(), bytes.length - offset);
+                buffer.put(bytes, offset, chunk);
+                offset += chunk;
+            }
+        }
+
+        // Index -1 is null; an index equal to the dictionary size introduces a new value
+        void writeDictionaryString(Map<String, Integer> dictionary, String value) throws IOException {
+            if (value == null) {
+                writeInt(NULL_LENGTH);
+                return;
+            }
+            Integer index = dictionary.get(value);
+            if (index != null) {
+                writeInt(index);
+                return;
+            }
+            int newIndex = dictionary.size();
+            dictionary.put(value, newIndex);
+            writeInt(newIndex);
+            writeString(value);
+        }
+
+        void writeDate(LocalDate date) throws IOException {
+            writeInt(date != null ? (int) date.toEpochDay() : NO_DATE);
+        }
+
+        void writeDateTime(LocalDateTime dateTime) throws IOException {
+            writeLong(dateTime != null ? dateTime.toEpochSecond(ZoneOffset.UTC) : NO_DATETIME);
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        private void require(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+        }
+    }
+
+    private static final class Reader {
+        private final ReadableByteChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        private byte[] stringBytes = new byte[256];
+
+        Reader(ReadableByteChannel channel) {
+            this.channel = channel;
+            buffer.flip(); // Start empty
+        }
+
+        int readHeader(byte expectedKind) throws IOException {
+            if (readInt() != MAGIC) {
+                throw new IOException("Not a library data file");
+            }
+            require(Short.BYTES);
+            short version = buffer.getShort();
+            if (version != VERSION) {
+                throw new IOException("Unsupported library data file version: " + version);
+            }
+            byte kind = readByte();
+            if (kind != expectedKind) {
+                throw new IOException("Unexpected record kind " + kind + ", expected " + expectedKind);
+            }
+            return readInt();
+        }
+
+        byte readByte() throws IOException {
+            require(Byte.BYTES);
+            return buffer.get();
+        }
+
+        boolean readBoolean() throws IOException {
+            return readByte() != 0;
+        }
+
+        int readUnsignedShort() throws IOException {
+            require(Short.BYTES);
+            return buffer.getShort() & 0xFFFF;
+        }
+
+        int readInt() throws IOException {
+            require(Integer.BYTES);
+            return buffer.getInt();
+        }
+
+        long readLong() throws IOException {
+            require(Long.BYTES);
+            return buffer.getLong();
+        }
+
+        double readDouble() throws IOException {
+            require(Double.BYTES);
+            return buffer.getDouble();
+        }
+
+        String readString() throws IOException {
+            int length = readInt();
+            if (length == NULL_LENGTH) {
+                return null;
+            }
+            if (length < 0) {
+                throw new IOException("Corrupt string length " + length);
+            }
+            if (length <= buffer.capacity()) {
+                // Common case: decode straight out of the buffer
+                require(length);
+                String value = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+                buffer.position(buffer.position() + length);
+                return value;
+            }
+            if (length > stringBytes.length) {
+                stringBytes = new byte[length];
+            }
+            int offset = 0;
+            while (offset < length) {
+                require(1);
+                int chunk = Math.min(buffer.remaining(), length - offset);
+                buffer.get(stringBytes, offset, chunk);
+                offset += chunk;
+            }
+            return new String(stringBytes, 0, length, StandardCharsets.UTF_8);
+        }
+
+        String readDictionaryString(List<String> dictionary) throws IOException {
+            int index = readInt();
+            if (index == NULL_LENGTH) {
+                return null;
+            }
+            if (index < dictionary.size()) {
+                return dictionary.get(index);
+            }
+            if (index != dictionary.size()) {
+                throw new IOException("Corrupt dictionary index " + index);
+            }
+            String value = readString();
+            dictionary.add(value);
+            return value;
+        }
+
+        <E extends Enum<E>> E readEnum(E[] values) throws IOException {
+            int ordinal = readByte() & 0xFF;
+            if (ordinal >= values.length) {
+                throw new IOException("Unknown " + values[0].getDeclaringClass().getSimpleName() + " ordinal " + ordinal);
+            }
+            return values[ordinal];
+        }
+
+        LocalDate readDate() throws IOException {
+            int epochDay = readInt();
+            return epochDay != NO_DATE ? LocalDate.ofEpochDay(epochDay) : null;
+        }
+
+        LocalDateTime readDateTime() throws IOException {
+            long epochSecond = readLong();
+            return epochSecond != NO_DATETIME ? LocalDateTime.ofEpochSecond(epochSecond, 0, ZoneOffset.UTC) : null;
+        }
+
+        // Make at least the given number of bytes available, refilling from the channel
+        private void require(int bytes) throws IOException {
+            if (buffer.remaining() >= bytes) {
+                return;
+            }
+            buffer.compact();
+            while (buffer.position() < bytes) {
+                if (channel.read(buffer) < 0) {
+                    throw new EOFException("Library data file ends mid-record");
+                }
+            }
+            buffer.flip();
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package utils;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import models.*;
+
+/**
+ * Generates a library of any size from a seed: the same seed always gives
+ * the same books and members.
+ *
+ * Authors and categories follow a Zipf distribution (a few prolific
+ * authors and large categories, a long tail of small ones). Members are
+ * mostly students, then staff and faculty, registered over the years before
+ * the given opening date.
+ */
+public class CatalogGenerator {
+    private static final String[] WORDS = {
+        "history", "garden", "river", "night", "stone", "empire", "silent", "winter", "ocean", "shadow",
+        "machine", "letters", "island", "journey", "mountain", "fire", "glass", "kingdom", "memory", "light",
+        "storm", "city", "forest", "secret", "iron", "summer", "bridge", "dream", "north", "crown",
+        "house", "war", "children", "song", "road", "world", "blood", "star", "time", "water"
+    };
+    private static final String[] SURNAMES = {
+        "Smith", "Garcia", "Okafor", "Nakamura", "Novak", "Silva", "Kowalski", "Haddad", "Ivanova", "Chen",
+        "Murphy", "Rossi", "Dubois", "Jensen", "Kaur", "Mensah", "Tanaka", "Olsen", "Moreau", "Lindqvist"
+    };
+    private static final String[] GIVEN_NAMES = {
+        "Ada", "Ben", "Chloe", "Dev", "Elena", "Femi", "Grace", "Hiro", "Ines", "Jonas",
+        "Kira", "Liam", "Maya", "Noor", "Omar", "Priya", "Quinn", "Rosa", "Sami", "Tara"
+    };
+    private static final String[] CATEGORIES = {
+        "Fiction", "Science", "History", "Children", "Biography", "Reference", "Poetry", "Travel",
+        "Philosophy", "Art", "Romance", "Dystopian", "Mystery", "Economics", "Law", "Medicine"
+    };
+    private static final int BOOKS_PER_AUTHOR = 15; // On average
+    private static final int STUDENT_PERCENT = 70;
+    private static final int STAFF_PERCENT = 20; // The rest are faculty
+    private static final int REGISTRATION_YEARS = 5;
+
+    private final long seed;
+
+    public CatalogGenerator(long seed) {
+        this.seed = seed;
+    }
+
+    public static String bookId(int index) {
+        return String.format("B%07d", index + 1);
+    }
+
+    public static String memberId(int index) {
+        return String.format("M%07d", index + 1);
+    }
+
+    /**
+     * Books B0000001, B0000002, ... all added before the opening date
+     */
+    public List<Book> generateBooks(int count, LocalDate openedOn) {
+        Random random = new Random(seed);
+        int authorCount = Math.max(1, count / BOOKS_PER_AUTHOR);
+        ZipfDistribution authors = new ZipfDistribution(authorCount, 1.0);
+        ZipfDistribution categories = new ZipfDistribution(CATEGORIES.length, 0.8);
+        List<Book> books = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int wordCount = 1 + random.nextInt(3);
+            StringBuilder title = new StringBuilder();
+            for (int w = 0; w < wordCount; w++) {
+                String word = WORDS[random.nextInt(WORDS.length)];
+                title.append(w == 0 ? "The " : " of ").append(Character.toUpperCase(word.charAt(0)))
+                     .append(word, 1, word.length());
+            }
+            Book book = new Book(bookId(i), title.toString(), authorName(authors.sample(random)),
+                                 isbn(random), CATEGORIES[categories.sample(random)]);
+            book.setDateAdded(openedOn.minusDays(random.nextInt(365 * REGISTRATION_YEARS)));
+            books.add(book);
+        }
+        return books;
+    }
+
+    /**
+     * Members M0000001, M0000002, ... of every MemberType, registered before
+     * the opening date
+     */
+    public List<Member> generateMembers(int count, LocalDate openedOn) {
+        Random random = new Random(seed ^ 0x5DEECE66DL);
+        List<Member> members = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int draw = random.nextInt(100);
+            Member.MemberType type = draw < STUDENT_PERCENT ? Member.MemberType.STUDENT
+                                   : draw < STUDENT_PERCENT + STAFF_PERCENT ? Member.MemberType.STAFF
+                                   : Member.MemberType.FACULTY;
+            String name = GIVEN_NAMES[random.nextInt(GIVEN_NAMES.length)] + " "
+                          + SURNAMES[random.nextInt(SURNAMES.length)];
+            String id = memberId(i);
+            Member member = new Member(id, name, id.toLowerCase() + "@library.example",
+                                       String.format("555-%04d", random.nextInt(10_000)),
+                                       (1 + random.nextInt(999)) + " " + SURNAMES[random.nextInt(SURNAMES.length)]
+                                       + " Street", type);
+            member.setRegistrationDate(openedOn.minusDays(random.nextInt(365 * REGISTRATION_YEARS)));
+            members.add(member);
+        }
+        return members;
+    }
+
+    // Utility Methods
+    // Author n is the n-th most prolific
+    private static String authorName(int rank) {
+        return GIVEN_NAMES[rank % GIVEN_NAMES.length] + " " + SURNAMES[(rank / GIVEN_NAMES.length) % SURNAMES.length]
+               + (rank >= GIVEN_NAMES.length * SURNAMES.length ? " " + (rank / (GIVEN_NAMES.length * SURNAMES.length) + 1)
+                                                               : "");
+    }
+
+    private static String isbn(Random random) {
+        return String.format("978-%d-%03d-%05d-%d", random.nextInt(10), random.nextInt(1000),
+                             random.nextInt(100_000), random.nextInt(10));
+    }
+}
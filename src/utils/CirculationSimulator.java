@@ -0,0 +1,256 @@
+package utils;
+
+import java.time.*;
+import java.util.*;
+import models.*;
+import services.LibraryService;
+
+/**
+ * Replays borrow, return and fine-payment traffic against a LibraryService
+ * on a simulated clock, a day at a time, as fast as the CPU allows.
+ *
+ * Each day, members borrow books chosen by Zipf popularity (book
+ * B0000001 is the most popular). Most loans come back before they are
+ * due; a share come back late by a geometrically distributed number of
+ * days and are fined by the service as usual. Most fined members pay
+ * within two weeks. The same seed and library replay the same traffic.
+ */
+public class CirculationSimulator {
+    public static final double DEFAULT_ZIPF_EXPONENT = 1.0;
+
+    private static final LocalTime OPENING_TIME = LocalTime.of(9, 0);
+    private static final long OPEN_SECONDS = 10 * 3600; // Events are spread over opening hours
+    private static final double LATE_RETURN_RATE = 0.15;
+    private static final double MEAN_DAYS_LATE = 6.0;
+    private static final int MAX_DAYS_LATE = 120;
+    private static final double FINE_PAYMENT_RATE = 0.6;
+    private static final int MAX_PAYMENT_DELAY_DAYS = 14;
+    private static final String BORROWED = "Book borrowed successfully!";
+    private static final int RETURN = 0; // Kinds of scheduled events
+    private static final int PAYMENT = 1;
+
+    private final LibraryService service;
+    private final SimulationClock clock;
+    private final Random random;
+    private final ZipfDistribution popularity;
+    private final String[] bookIds; // By popularity
+    private final Member[] members;
+
+    public CirculationSimulator(LibraryService service, SimulationClock clock, long seed) {
+        this(service, clock, seed, DEFAULT_ZIPF_EXPONENT);
+    }
+
+    public CirculationSimulator(LibraryService service, SimulationClock clock, long seed, double zipfExponent) {
+        if (service.getClock() != clock) {
+            throw new IllegalArgumentException("The service must read time from the simulation clock");
+        }
+        this.service = service;
+        this.clock = clock;
+        this.random = new Random(seed);
+        this.bookIds = service.getAllBooks().stream().map(Book::getBookId).sorted().toArray(String[]::new);
+        this.members = service.getAllMembers().stream()
+                              .sorted(Comparator.comparing(Member::getMemberId)).toArray(Member[]::new);
+        if (bookIds.length == 0 || members.length == 0) {
+            throw new IllegalArgumentException("The library needs books and members to simulate");
+        }
+        this.popularity = new ZipfDistribution(bookIds.length, zipfExponent);
+    }
+
+    /**
+     * Simulate the given number of days starting at the clock's current
+     * date, with borrowsPerDay borrow attempts a day. Loans still out at the
+     * end stay out.
+     */
+    public SimulationReport run(int days, int borrowsPerDay) {
+        LocalDate firstDay = clock.now().toLocalDate();
+        List<List<long[]>> schedule = new ArrayList<>(); // Day -> {kind, member, book} of returns and payments
+        Counters counters = new Counters();
+        long started = System.nanoTime();
+
+        for (int day = 0; day < days; day++) {
+            List<long[]> due = day < schedule.size() ? schedule.get(day) : Collections.emptyList();
+            LocalDateTime opening = firstDay.plusDays(day).atTime(OPENING_TIME);
+            int events = due.size() + borrowsPerDay;
+            int event = 0;
+            for (long[] scheduled : due) {
+                clock.advanceTo(opening.plusSeconds(OPEN_SECONDS * event++ / events));
+                if (scheduled[0] == RETURN) {
+                    giveBack((int) scheduled[1], (int) scheduled[2], day, schedule, counters);
+                } else {
+                    payFine(members[(int) scheduled[1]], counters);
+                }
+            }
+            for (int i = 0; i < borrowsPerDay; i++) {
+                clock.advanceTo(opening.plusSeconds(OPEN_SECONDS * event++ / events));
+                borrow(random.nextInt(members.length), popularity.sample(random), day, schedule, counters);
+            }
+            if (day < schedule.size()) {
+                schedule.set(day, null); // Done with the day
+            }
+        }
+        clock.advanceTo(firstDay.plusDays(days).atTime(OPENING_TIME));
+
+        long elapsed = System.nanoTime() - started;
+        return new SimulationReport(days, counters.borrowsAttempted, counters.borrows, counters.returns,
+                                    counters.payments, counters.finesCharged, counters.finesPaid,
+                                    outstandingFines(), elapsed, counters.refusals, counters.returnFines,
+                                    overdueLoans(), memberFines());
+    }
+
+    private void borrow(int memberIndex, int bookIndex, int day, List<List<long[]>> schedule, Counters counters) {
+        Member member = members[memberIndex];
+        counters.borrowsAttempted++;
+        String result = service.borrowBook(member.getMemberId(), bookIds[bookIndex]);
+        if (!result.startsWith(BORROWED)) {
+            counters.refusals.merge(result, 1L, Long::sum);
+            return;
+        }
+        counters.borrows++;
+        int loanDays = member.getMemberType().getBorrowDurationDays();
+        int keptDays = random.nextDouble() < LATE_RETURN_RATE ? loanDays + daysLate()
+                                                              : 1 + random.nextInt(loanDays);
+        schedule(schedule, day + keptDays, new long[] {RETURN, memberIndex, bookIndex});
+    }
+
+    private void giveBack(int memberIndex, int bookIndex, int day, List<List<long[]>> schedule,
+                          Counters counters) {
+        Member member = members[memberIndex];
+        double fineBefore = member.getFineAmount();
+        service.returnBook(member.getMemberId(), bookIds[bookIndex]);
+        counters.returns++;
+        double fine = member.getFineAmount() - fineBefore;
+        counters.returnFines.merge(fineBucket(fine), 1L, Long::sum);
+        if (fine > 0) {
+            counters.finesCharged += fine;
+            if (random.nextDouble() < FINE_PAYMENT_RATE) {
+                schedule(schedule, day + 1 + random.nextInt(MAX_PAYMENT_DELAY_DAYS),
+                         new long[] {PAYMENT, memberIndex, -1});
+            }
+        }
+    }
+
+    private void payFine(Member member, Counters counters) {
+        double owed = member.getFineAmount();
+        if (owed > 0 && service.payFine(member.getMemberId(), owed).startsWith("Fine payment")) {
+            counters.payments++;
+            counters.finesPaid += owed;
+        }
+    }
+
+    // Geometric with the configured mean, at least one day
+    private int daysLate() {
+        double p = 1.0 / MEAN_DAYS_LATE;
+        int days = 1 + (int) (Math.log(1 - random.nextDouble()) / Math.log(1 - p));
+        return Math.min(days, MAX_DAYS_LATE);
+    }
+
+    private static void schedule(List<List<long[]>> schedule, int day, long[] event) {
+        while (schedule.size() <= day) {
+            schedule.add(new ArrayList<>());
+        }
+        schedule.get(day).add(event);
+    }
+
+    // Distributions at the end of the run
+    private double outstandingFines() {
+        double total = 0;
+        for (Member member : members) {
+            total += member.getFineAmount();
+        }
+        return total;
+    }
+
+    private Map<String, Long> overdueLoans() {
+        LocalDate today = clock.now().toLocalDate();
+        Map<String, Long> buckets = buckets("1-7 days", "8-14 days", "15-30 days", "31-60 days", "over 60 days");
+        for (Book book : service.getOverdueBooks(today)) {
+            long days = book.getDaysOverdue(today);
+            String bucket = days <= 7 ? "1-7 days" : days <= 14 ? "8-14 days" : days <= 30 ? "15-30 days"
+                          : days <= 60 ? "31-60 days" : "over 60 days";
+            buckets.merge(bucket, 1L, Long::sum);
+        }
+        return buckets;
+    }
+
+    private Map<String, Long> memberFines() {
+        Map<String, Long> buckets = buckets("$0.01-10", "$10-25", "$25-50", "over $50");
+        for (Member member : members) {
+            double fine = member.getFineAmount();
+            if (fine > 0) {
+                String bucket = fine <= 10 ? "$0.01-10" : fine <= 25 ? "$10-25" : fine <= 50 ? "$25-50" : "over $50";
+                buckets.merge(bucket, 1L, Long::sum);
+            }
+        }
+        return buckets;
+    }
+
+    private static String fineBucket(double fine) {
+        return fine <= 0 ? "none" : fine <= 5 ? "$1-5" : fine <= 10 ? "$6-10" : fine <= 20 ? "$11-20"
+             : fine < 50 ? "$21-49" : "$50 (maximum)";
+    }
+
+    private static Map<String, Long> buckets(String... labels) {
+        Map<String, Long> buckets = new LinkedHashMap<>();
+        for (String label : labels) {
+            buckets.put(label, 0L);
+        }
+        return buckets;
+    }
+
+    private static final class Counters {
+        long borrowsAttempted;
+        long borrows;
+        long returns;
+        long payments;
+        double finesCharged;
+        double finesPaid;
+        final Map<String, Long> refusals = new TreeMap<>();
+        final Map<String, Long> returnFines = buckets("none", "$1-5", "$6-10", "$11-20", "$21-49", "$50 (maximum)");
+    }
+
+    /**
+     * Generate a library and simulate its circulation.
+     *
+     * Usage: java utils.CirculationSimulator [books] [members] [days] [borrowsPerDay] [seed]
+     */
+    public static void main(String[] args) {
+        int bookCount = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int memberCount = args.length > 1 ? Integer.parseInt(args[1]) : 20_000;
+        int days = args.length > 2 ? Integer.parseInt(args[2]) : 365;
+        int borrowsPerDay = args.length > 3 ? Integer.parseInt(args[3]) : Math.max(1, memberCount / 20);
+        long seed = args.length > 4 ? Long.parseLong(args[4]) : 42;
+
+        LocalDate opening = LocalDate.of(2024, 1, 1);
+        SimulationClock clock = new SimulationClock(opening.atTime(OPENING_TIME));
+        LibraryService service = new LibraryService(clock);
+        CatalogGenerator generator = new CatalogGenerator(seed);
+        long started = System.nanoTime();
+        service.addBooks(generator.generateBooks(bookCount, opening));
+        for (Member member : generator.generateMembers(memberCount, opening)) {
+            service.addMember(member);
+        }
+        System.out.printf("Generated %d books and %d members in %d ms%n", bookCount, memberCount,
+                          (System.nanoTime() - started) / 1_000_000);
+
+        SimulationReport report = new CirculationSimulator(service, clock, seed).run(days, borrowsPerDay);
+        System.out.printf("Simulated %d days in %d ms: %.0f operations/s, %.1f days/s%n",
+                          report.getDays(), report.getElapsedMillis(), report.getOperationsPerSecond(),
+                          report.getDaysPerSecond());
+        System.out.printf("Borrows: %d of %d attempts, returns: %d, fine payments: %d%n",
+                          report.getBorrows(), report.getBorrowsAttempted(), report.getReturns(),
+                          report.getFinePayments());
+        System.out.printf("Fines charged: $%.2f, paid: $%.2f, outstanding: $%.2f%n",
+                          report.getFinesCharged(), report.getFinesPaid(), report.getFinesOutstanding());
+        print("Refused borrows", report.getRefusals());
+        print("Fines charged on return", report.getReturnFines());
+        print("Overdue loans at end", report.getOverdueLoans());
+        print("Members owing fines at end", report.getMemberFines());
+    }
+
+    private static void print(String title, Map<String, Long> distribution) {
+        System.out.println("\n" + title + ":");
+        for (Map.Entry<String, Long> entry : distribution.entrySet()) {
+            System.out.printf("  %-70s %10d%n", entry.getKey(), entry.getValue());
+        }
+    }
+}
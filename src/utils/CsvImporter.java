@@ -0,0 +1,284 @@
+package utils;
+
+import models.*;
+import services.LibraryService;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Function;
+
+/**
+ * Parallel bulk import of books.csv / members.csv style files.
+ *
+ * The file is cut into fixed-size byte chunks that are processed on a
+ * fork-join pool in two passes. The first pass counts double quotes per
+ * chunk; their running parity tells whether each chunk starts inside a
+ * quoted field, so the second pass can move every chunk boundary to the next
+ * line break outside quotes without reading the file sequentially. Each
+ * chunk is then parsed and merged into the LibraryService as one batch.
+ * Rejected rows are reported with their row number and reason instead of
+ * being dropped silently.
+ */
+public class CsvImporter {
+
+    private static final int DEFAULT_CHUNK_SIZE = 8 * 1024 * 1024;
+    private static final int SCAN_BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_REPORTED_REJECTIONS = 1000;
+    private static final int MAX_ROW_PREVIEW = 200;
+
+    private final int parallelism;
+    private final int chunkSize;
+
+    public CsvImporter() {
+        this(Runtime.getRuntime().availableProcessors(), DEFAULT_CHUNK_SIZE);
+    }
+
+    public CsvImporter(int parallelism, int chunkSize) {
+        if (parallelism < 1 || chunkSize < 1) {
+            throw new IllegalArgumentException("Parallelism and chunk size must be positive");
+        }
+        this.parallelism = parallelism;
+        this.chunkSize = chunkSize;
+    }
+
+    // Import Methods
+    public ImportReport importBooks(File file, LibraryService libraryService) throws IOException {
+        return importFile(file, FileUtils::parseBook, libraryService::addBooks, Book::getBookId);
+    }
+
+    public ImportReport importMembers(File file, LibraryService libraryService) throws IOException {
+        return importFile(file, FileUtils::parseMember, libraryService::addMembers, Member::getMemberId);
+    }
+
+    private <T> ImportReport importFile(File file, Function<String[], T> parser,
+                                        Function<List<T>, List<T>> merger,
+                                        Function<T, String> idOf) throws IOException {
+        long startTime = System.nanoTime();
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            int chunkCount = (int) Math.max(1, (size + chunkSize - 1) / chunkSize);
+
+            // Pass 1: quote parity at the start of every chunk
+            List<ForkJoinTask<Long>> quoteCounts = new ArrayList<>(chunkCount);
+            for (int i = 0; i < chunkCount; i++) {
+                long from = chunkStart(i);
+                long to = Math.min(chunkStart(i + 1), size);
+                quoteCounts.add(pool.submit(() -> countQuotes(channel, from, to)));
+            }
+            boolean[] startsInQuotes = new boolean[chunkCount + 1];
+            for (int i = 0; i < chunkCount; i++) {
+                startsInQuotes[i + 1] = startsInQuotes[i] ^ (join(quoteCounts.get(i)) % 2 == 1);
+            }
+
+            // Pass 2: parse and merge the whole records that start in each chunk
+            List<ForkJoinTask<ChunkResult>> chunks = new ArrayList<>(chunkCount);
+            for (int i = 0; i < chunkCount; i++) {
+                int chunk = i;
+                chunks.add(pool.submit(() -> {
+                    long from = findRecordStart(channel, chunkStart(chunk), startsInQuotes[chunk], size);
+                    long to = chunk + 1 < chunkCount
+                            ? findRecordStart(channel, chunkStart(chunk + 1), startsInQuotes[chunk + 1], size)
+                            : size;
+                    return importChunk(channel, from, to, parser, merger, idOf);
+                }));
+            }
+
+            // Number rows across chunks in file order
+            long importedRows = 0;
+            long rejectedRows = 0;
+            long rowOffset = 0;
+            List<ImportReport.Rejection> rejections = new ArrayList<>();
+            for (ForkJoinTask<ChunkResult> task : chunks) {
+                ChunkResult result = join(task);
+                for (ImportReport.Rejection rejection : result.rejections) {
+                    if (rejections.size() < MAX_REPORTED_REJECTIONS) {
+                        rejections.add(new ImportReport.Rejection(rowOffset + rejection.getRowNumber(),
+                                rejection.getReason(), rejection.getRow()));
+                    }
+                }
+                importedRows += result.importedRows;
+                rejectedRows += result.rejectedRows;
+                rowOffset += result.rows;
+            }
+
+            return new ImportReport(file.getName(), importedRows, rejectedRows, size,
+                    System.nanoTime() - startTime, rejections);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private long chunkStart(int chunk) {
+        return (long) chunk * chunkSize;
+    }
+
+    // Chunk Processing
+    private static long countQuotes(FileChannel channel, long from, long to) {
+        ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+        long quotes = 0;
+        long position = from;
+        while (position < to) {
+            buffer.clear();
+            buffer.limit((int) Math.min(SCAN_BUFFER_SIZE, to - position));
+            int read = read(channel, buffer, position);
+            if (read <= 0) {
+                break;
+            }
+            byte[] bytes = buffer.array();
+            for (int i = 0; i < read; i++) {
+                if (bytes[i] == '"') {
+                    quotes++;
+                }
+            }
+            position += read;
+        }
+        return quotes;
+    }
+
+    /**
+     * Find the first record that starts at or after position, given whether
+     * position is inside a quoted field. The header line at position 0 is
+     * never a record.
+     */
+    private static long findRecordStart(FileChannel channel, long position, boolean inQuotes, long size) {
+        if (position > 0) {
+            // Already on a boundary if the previous byte ends a record
+            ByteBuffer previous = ByteBuffer.allocate(1);
+            if (read(channel, previous, position - 1) == 1 && previous.get(0) == '\n' && !inQuotes) {
+                return position;
+            }
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+        while (position < size) {
+            buffer.clear();
+            int read = read(channel, buffer, position);
+            if (read <= 0) {
+                break;
+            }
+            byte[] bytes = buffer.array();
+            for (int i = 0; i < read; i++) {
+                if (bytes[i] == '"') {
+                    inQuotes = !inQuotes;
+                } else if (bytes[i] == '\n' && !inQuotes) {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    private static <T> ChunkResult importChunk(FileChannel channel, long from, long to,
+                                               Function<String[], T> parser,
+                                               Function<List<T>, List<T>> merger,
+                                               Function<T, String> idOf) {
+        ChunkResult result = new ChunkResult();
+        if (from >= to) {
+            return result;
+        }
+
+        // Chunks end on line breaks, which never split a UTF-8 sequence
+        ByteBuffer buffer = ByteBuffer.allocate((int) (to - from));
+        while (buffer.hasRemaining()) {
+            if (read(channel, buffer, from + buffer.position()) <= 0) {
+                break;
+            }
+        }
+        String text = new String(buffer.array(), 0, buffer.position(), StandardCharsets.UTF_8);
+
+        List<T> items = new ArrayList<>();
+        List<Integer> itemRows = new ArrayList<>();
+        boolean inQuotes = false;
+        int recordStart = 0;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean endOfText = i == text.length();
+            char c = endOfText ? '\n' : text.charAt(i);
+            if (c == '"') {
+                inQuotes = !inQuotes;
+            } else if (c == '\n' && (!inQuotes || endOfText)) {
+                int recordEnd = i > recordStart && text.charAt(i - 1) == '\r' ? i - 1 : i;
+                String record = text.substring(recordStart, recordEnd);
+                recordStart = i + 1;
+                if (record.trim().isEmpty()) {
+                    continue;
+                }
+
+                result.rows++;
+                T item = parseRecord(record, parser, result);
+                if (item != null) {
+                    items.add(item);
+                    itemRows.add(result.rows);
+                }
+            }
+        }
+
+        // Bulk merge; anything the service turns down is a duplicate ID
+        Set<T> duplicates = Collections.newSetFromMap(new IdentityHashMap<>());
+        duplicates.addAll(merger.apply(items));
+        for (int i = 0; i < items.size(); i++) {
+            T item = items.get(i);
+            if (duplicates.contains(item)) {
+                result.reject(itemRows.get(i), "Duplicate ID " + idOf.apply(item), null);
+            } else {
+                result.importedRows++;
+            }
+        }
+        result.rejections.sort(Comparator.comparingLong(ImportReport.Rejection::getRowNumber));
+        return result;
+    }
+
+    private static <T> T parseRecord(String record, Function<String[], T> parser, ChunkResult result) {
+        String[] parts = FileUtils.parseCsvLine(record);
+        try {
+            T item = parser.apply(parts);
+            if (item == null) {
+                result.reject(result.rows, "Too few fields (" + parts.length + ")", record);
+            }
+            return item;
+        } catch (RuntimeException e) {
+            result.reject(result.rows, e.getClass().getSimpleName() + ": " + e.getMessage(), record);
+            return null;
+        }
+    }
+
+    // Utility Methods
+    private static int read(FileChannel channel, ByteBuffer buffer, long position) {
+        try {
+            return channel.read(buffer, position);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static <R> R join(ForkJoinTask<R> task) throws IOException {
+        try {
+            return task.join();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    // Counts and rejections for one chunk, with row numbers local to the chunk
+    private static final class ChunkResult {
+        private int rows;
+        private long importedRows;
+        private long rejectedRows;
+        private final List<ImportReport.Rejection> rejections = new ArrayList<>();
+
+        void reject(long row, String reason, String record) {
+            rejectedRows++;
+            if (rejections.size() < MAX_REPORTED_REJECTIONS) {
+                String preview = record != null && record.length() > MAX_ROW_PREVIEW
+                        ? record.substring(0, MAX_ROW_PREVIEW) + "..." : record;
+                rejections.add(new ImportReport.Rejection(row, reason, preview));
+            }
+        }
+    }
+}
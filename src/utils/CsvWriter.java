@@ -0,0 +1,244 @@
+package utils;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Locale;
+
+/**
+ * Streaming CSV writer that encodes fields straight into a reused byte
+ * buffer and drains it to a channel.
+ *
+ * Separators are inserted automatically between the fields of a row.
+ * Strings are checked for characters that need quoting and encoded in the
+ * same scan, so the common case of plain ASCII costs one pass and no
+ * allocation. Numbers and dates are written digit by digit in the formats
+ * FileUtils reads back: yyyy-MM-dd, yyyy-MM-dd HH:mm:ss and two decimals.
+ */
+final class CsvWriter implements Closeable {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final WritableByteChannel channel;
+    private final ByteBuffer buffer;
+    private final byte[] bytes;
+    private boolean rowStarted;
+
+    CsvWriter(WritableByteChannel channel) {
+        this.channel = channel;
+        this.buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        this.bytes = buffer.array();
+    }
+
+    // Fields
+    CsvWriter field(String value) throws IOException {
+        separate();
+        if (value == null || value.isEmpty()) {
+            return this;
+        }
+        int length = value.length();
+        if (buffer.remaining() < length) {
+            flush();
+        }
+        if (buffer.remaining() >= length) {
+            // Fast path: plain ASCII that needs no quoting, checked while copying
+            int position = buffer.position();
+            for (int i = 0; i < length; i++) {
+                char c = value.charAt(i);
+                if (c >= 0x80 || c == ',' || c == '"' || c == '\n' || c == '\r') {
+                    writeSlow(value);
+                    return this;
+                }
+                bytes[position + i] = (byte) c;
+            }
+            buffer.position(position + length);
+            return this;
+        }
+        writeSlow(value);
+        return this;
+    }
+
+    CsvWriter field(boolean value) throws IOException {
+        return field(value ? "true" : "false");
+    }
+
+    CsvWriter field(long value) throws IOException {
+        separate();
+        writeLong(value);
+        return this;
+    }
+
+    // A plain ASCII prefix followed by a non-negative number zero-padded to at least minDigits
+    CsvWriter field(String prefix, long value, int minDigits) throws IOException {
+        separate();
+        writeAscii(prefix);
+        int digits = 1;
+        for (long rest = value / 10; rest > 0; rest /= 10) {
+            digits++;
+        }
+        writeDigits(value, Math.max(digits, minDigits));
+        return this;
+    }
+
+    // Two decimal places, rounded half up
+    CsvWriter fieldMoney(double value) throws IOException {
+        separate();
+        if (Double.isNaN(value) || Double.isInfinite(value) || Math.abs(value) >= 1e15) {
+            writeAscii(String.format(Locale.ROOT, "%.2f", value));
+            return this;
+        }
+        double scaled = Math.abs(value) * 100;
+        long cents = Math.round(scaled);
+        if (Math.abs(scaled - Math.floor(scaled) - 0.5) < 1e-6) {
+            // Near a tie: round the shortest decimal form, as String.format does
+            cents = BigDecimal.valueOf(Math.abs(value)).setScale(2, RoundingMode.HALF_UP).unscaledValue().longValue();
+        }
+        if (value < 0 && cents != 0) {
+            writeByte('-');
+        }
+        writeLong(cents / 100);
+        writeByte('.');
+        writeDigits(cents % 100, 2);
+        return this;
+    }
+
+    CsvWriter field(LocalDate date) throws IOException {
+        separate();
+        if (date != null) {
+            writeDate(date);
+        }
+        return this;
+    }
+
+    CsvWriter field(LocalDateTime dateTime) throws IOException {
+        separate();
+        if (dateTime != null) {
+            writeDate(dateTime.toLocalDate());
+            writeByte(' ');
+            writeDigits(dateTime.getHour(), 2);
+            writeByte(':');
+            writeDigits(dateTime.getMinute(), 2);
+            writeByte(':');
+            writeDigits(dateTime.getSecond(), 2);
+        }
+        return this;
+    }
+
+    // Write a line of text as is, e.g. a header row
+    CsvWriter line(String text) throws IOException {
+        writeAscii(text);
+        return endRow();
+    }
+
+    CsvWriter endRow() throws IOException {
+        writeByte('\n');
+        rowStarted = false;
+        return this;
+    }
+
+    // Output
+    void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+
+    // Encoding helpers
+    private void separate() throws IOException {
+        if (rowStarted) {
+            writeByte(',');
+        }
+        rowStarted = true;
+    }
+
+    // Quote when needed (doubling embedded quotes) and encode as UTF-8
+    private void writeSlow(String value) throws IOException {
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        String text = quote ? "\"" + value.replace("\"", "\"\"") + "\"" : value;
+        byte[] encoded = text.getBytes(StandardCharsets.UTF_8);
+        int offset = 0;
+        while (offset < encoded.length) {
+            if (!buffer.hasRemaining()) {
+                flush();
+            }
+            int chunk = Math.min(buffer.remaining(), encoded.length - offset);
+            buffer.put(encoded, offset, chunk);
+            offset += chunk;
+        }
+    }
+
+    private void writeAscii(String text) throws IOException {
+        for (int i = 0; i < text.length(); i++) {
+            writeByte(text.charAt(i));
+        }
+    }
+
+    private void writeDate(LocalDate date) throws IOException {
+        int year = date.getYear();
+        if (year < 0 || year > 9999) {
+            writeAscii(date.toString()); // Outside the fixed four-digit range
+            return;
+        }
+        writeDigits(year, 4);
+        writeByte('-');
+        writeDigits(date.getMonthValue(), 2);
+        writeByte('-');
+        writeDigits(date.getDayOfMonth(), 2);
+    }
+
+    private void writeLong(long value) throws IOException {
+        if (value < 0) {
+            if (value == Long.MIN_VALUE) {
+                writeAscii(Long.toString(value));
+                return;
+            }
+            writeByte('-');
+            value = -value;
+        }
+        int digits = 1;
+        for (long rest = value / 10; rest > 0; rest /= 10) {
+            digits++;
+        }
+        writeDigits(value, digits);
+    }
+
+    // Write exactly the given number of digits, zero-padded on the left
+    private void writeDigits(long value, int digits) throws IOException {
+        if (buffer.remaining() < digits) {
+            flush();
+        }
+        int position = buffer.position();
+        for (int i = digits - 1; i >= 0; i--) {
+            bytes[position + i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        buffer.position(position + digits);
+    }
+
+    private void writeByte(int b) throws IOException {
+        if (!buffer.hasRemaining()) {
+            flush();
+        }
+        buffer.put((byte) b);
+    }
+}
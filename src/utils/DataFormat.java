@@ -0,0 +1,19 @@
+package utils;
+
+/**
+ * On-disk formats FileUtils can save and load library data in
+ */
+public enum DataFormat {
+    CSV(".csv"),     // Human-readable, one row per record with a header line
+    BINARY(".dat");  // Compact versioned records, fast to load
+
+    private final String extension;
+
+    DataFormat(String extension) {
+        this.extension = extension;
+    }
+
+    public String getExtension() {
+        return extension;
+    }
+}
@@ -0,0 +1,198 @@
+package utils;
+
+import models.*;
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * Append-only log of the books and members changed since a snapshot.
+ *
+ * Each flush appends one batch of CSV rows. A changed book or member is a
+ * record kind followed by the same columns as books.csv or members.csv, a
+ * removal is a record kind and the ID, and a closing COMMIT row holds the
+ * journal sequence the batch includes and how many rows it has. Batches are
+ * fsynced as a whole; one without a matching COMMIT row is a torn write and
+ * is ignored on replay and truncated away on open. Replaying the batches in
+ * order on top of the snapshot gives the state as of the last flush.
+ */
+final class DeltaLog implements Closeable {
+
+    private static final String BOOK = "BOOK";
+    private static final String MEMBER = "MEMBER";
+    private static final String REMOVE_BOOK = "REMOVE_BOOK";
+    private static final String REMOVE_MEMBER = "REMOVE_MEMBER";
+    private static final String COMMIT = "COMMIT";
+
+    private final FileChannel channel;
+    private long recordCount;
+
+    private DeltaLog(FileChannel channel, long recordCount) {
+        this.channel = channel;
+        this.recordCount = recordCount;
+    }
+
+    /**
+     * Open (or create) a delta log for appending, dropping any torn batch
+     */
+    static DeltaLog open(File file) throws IOException {
+        ScanResult scan = scan(file, null, null);
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        if (channel.size() > scan.validLength) {
+            channel.truncate(scan.validLength);
+            channel.force(true);
+        }
+        channel.position(scan.validLength);
+        return new DeltaLog(channel, scan.recordCount);
+    }
+
+    /**
+     * Apply every committed batch to the books and members loaded from the
+     * snapshot, keyed by ID
+     *
+     * @return the journal sequence included by the last batch, or 0 if there is none
+     */
+    static long replay(File file, Map<String, Book> books, Map<String, Member> members) throws IOException {
+        return scan(file, books, members).journalSequence;
+    }
+
+    // Appending
+    /**
+     * Write one batch and force it to disk. Removals are written first, so a
+     * book removed and added again under the same ID ends up present.
+     */
+    void append(Collection<String> removedBookIds, Collection<Book> books,
+                Collection<String> removedMemberIds, Collection<Member> members,
+                long journalSequence) throws IOException {
+        long start = channel.position();
+        try {
+            CsvWriter writer = new CsvWriter(channel);
+            for (String bookId : removedBookIds) {
+                writer.field(REMOVE_BOOK).field(bookId).endRow();
+            }
+            for (Book book : books) {
+                writer.field(BOOK);
+                FileUtils.writeBookFields(writer, book);
+                writer.endRow();
+            }
+            for (String memberId : removedMemberIds) {
+                writer.field(REMOVE_MEMBER).field(memberId).endRow();
+            }
+            for (Member member : members) {
+                writer.field(MEMBER);
+                FileUtils.writeMemberFields(writer, member);
+                writer.endRow();
+            }
+            long rows = removedBookIds.size() + books.size() + removedMemberIds.size() + members.size();
+            writer.field(COMMIT).field(journalSequence).field(rows).endRow();
+            writer.flush();
+            channel.force(false);
+            recordCount += rows;
+        } catch (IOException e) {
+            // Do not leave half a batch for the next one to follow
+            try {
+                channel.truncate(start);
+                channel.position(start);
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+    }
+
+    // Books and members written since the snapshot, counting repeats
+    long getRecordCount() {
+        return recordCount;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    // Reading
+    /**
+     * Walk the log row by row, the same way TransactionJournal does, applying
+     * each batch once its COMMIT row is read. Only checks the log's integrity
+     * when books and members are null.
+     */
+    private static ScanResult scan(File file, Map<String, Book> books, Map<String, Member> members)
+            throws IOException {
+        ScanResult result = new ScanResult();
+        if (!file.exists()) {
+            return result;
+        }
+
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file), 64 * 1024)) {
+            ByteArrayOutputStream record = new ByteArrayOutputStream(256);
+            List<String[]> batch = new ArrayList<>();
+            boolean inQuotes = false;
+            long position = 0;
+            int b;
+            while ((b = in.read()) != -1) {
+                position++;
+                if (b == '"') {
+                    inQuotes = !inQuotes;
+                } else if (b == '\n' && !inQuotes) {
+                    String[] parts = FileUtils.parseCsvLine(record.toString(StandardCharsets.UTF_8.name()));
+                    record.reset();
+                    if (!COMMIT.equals(parts[0])) {
+                        batch.add(parts);
+                        continue;
+                    }
+                    if (parts.length < 3 || Long.parseLong(parts[2]) != batch.size()) {
+                        break; // Rows of the batch are missing; nothing after it can be trusted
+                    }
+                    if (books != null) {
+                        applyBatch(batch, books, members);
+                    }
+                    result.journalSequence = Long.parseLong(parts[1]);
+                    result.recordCount += batch.size();
+                    result.validLength = position;
+                    batch.clear();
+                    continue;
+                }
+                record.write(b);
+            }
+        } catch (RuntimeException e) {
+            System.err.println("Ignoring the rest of the delta log: " + e.getMessage());
+        }
+        return result;
+    }
+
+    private static void applyBatch(List<String[]> batch, Map<String, Book> books, Map<String, Member> members) {
+        for (String[] parts : batch) {
+            String[] fields = Arrays.copyOfRange(parts, 1, parts.length);
+            switch (parts[0]) {
+                case BOOK:
+                    Book book = FileUtils.parseBook(fields);
+                    if (book != null) {
+                        books.put(book.getBookId(), book);
+                    }
+                    break;
+                case MEMBER:
+                    Member member = FileUtils.parseMember(fields);
+                    if (member != null) {
+                        members.put(member.getMemberId(), member);
+                    }
+                    break;
+                case REMOVE_BOOK:
+                    books.remove(fields[0]);
+                    break;
+                case REMOVE_MEMBER:
+                    members.remove(fields[0]);
+                    break;
+                default:
+                    System.err.println("Skipping unknown delta record: " + parts[0]);
+            }
+        }
+    }
+
+    private static final class ScanResult {
+        private long validLength = 0;
+        private long journalSequence = 0;
+        private long recordCount = 0;
+    }
+}
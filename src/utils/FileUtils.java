@@ -1,11 +1,22 @@
 package utils;
 
 import models.*;
+import services.MetricsRegistry;
+import services.OperationMetrics;
 import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.YearMonth;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * Utility class for handling file operations
@@ -14,14 +25,39 @@ import java.util.*;
 public class FileUtils {
     
     private static final String DATA_DIRECTORY = "data/";
-    private static final String BOOKS_FILE = "books.csv";
-    private static final String MEMBERS_FILE = "members.csv";
-    private static final String TRANSACTIONS_FILE = "transactions.csv";
+    private static final String BOOKS_FILE = "books";               // + DataFormat extension
+    private static final String MEMBERS_FILE = "members";           // + DataFormat extension
+    private static final String TRANSACTIONS_FILE = "transactions"; // + DataFormat extension
+    private static final String JOURNAL_FILE = "transactions.journal";
+    private static final String SNAPSHOT_FILE = "snapshot.properties"; // Manifest of the current snapshot generation
+    private static final String DELTA_FILE = "delta";               // + generation, changes saved since that snapshot
+    private static final String DELTA_EXTENSION = ".log";
+    private static final String PARTITION_DIRECTORY = "partitions/";   // Monthly transaction archives
+    private static final String TRANSACTION_ID_FILE = "transaction-ids.properties"; // Reserved transaction numbers
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final String BACKUP_PREFIX = "backup_";
+    private static final Pattern BACKUP_DIRECTORY = Pattern.compile("backup_(\\d{8}_\\d{6})(?:_(\\d+))?");
+    private static final Pattern GENERATION_FILE = Pattern.compile("(?:books|members|delta)-(\\d+)\\.(?:csv|dat|log)");
+    // Month, position of the first transaction in the month (a whole month if absent), journal sequence
+    private static final Pattern PARTITION_FILE =
+            Pattern.compile("transactions-(\\d{4}-\\d{2})\\.(?:(\\d{10})\\.)?(\\d{12})\\.dat");
     
     // Date formatters for consistent date handling
     private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd");
     private static final DateTimeFormatter DATETIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
     
+    // Latency, rows and bytes of every save and load
+    private static final MetricsRegistry METRICS = new MetricsRegistry("FileUtils");
+    private static final OperationMetrics SAVE_BOOKS = METRICS.operation("saveBooks");
+    private static final OperationMetrics LOAD_BOOKS = METRICS.operation("loadBooks");
+    private static final OperationMetrics SAVE_MEMBERS = METRICS.operation("saveMembers");
+    private static final OperationMetrics LOAD_MEMBERS = METRICS.operation("loadMembers");
+    private static final OperationMetrics SAVE_TRANSACTIONS = METRICS.operation("saveTransactions");
+    private static final OperationMetrics LOAD_TRANSACTIONS = METRICS.operation("loadTransactions");
+    private static final OperationMetrics SAVE_SNAPSHOT = METRICS.operation("saveSnapshot");
+    private static final OperationMetrics SAVE_PARTITION = METRICS.operation("savePartition");
+    private static final OperationMetrics CREATE_BACKUP = METRICS.operation("createBackup");
+    
     static {
         // Create data directory if it doesn't exist
         File dataDir = new File(DATA_DIRECTORY);
@@ -30,70 +66,78 @@ public class FileUtils {
         }
     }
     
+    public static MetricsRegistry getMetrics() {
+        return METRICS;
+    }
+    
     /**
      * Save books to CSV file
      */
     public static void saveBooks(Collection<Book> books) throws IOException {
-        File file = new File(DATA_DIRECTORY + BOOKS_FILE);
-        try (PrintWriter writer = new PrintWriter(new FileWriter(file))) {
-            // Write CSV header
-            writer.println("BookID,Title,Author,ISBN,Category,IsAvailable,DateAdded,BorrowedBy,BorrowDate,DueDate");
-            
-            for (Book book : books) {
-                writer.printf("%s,%s,%s,%s,%s,%b,%s,%s,%s,%s%n",
-                    escapeCsv(book.getBookId()),
-                    escapeCsv(book.getTitle()),
-                    escapeCsv(book.getAuthor()),
-                    escapeCsv(book.getIsbn()),
-                    escapeCsv(book.getCategory()),
-                    book.isAvailable(),
-                    book.getDateAdded().format(DATE_FORMATTER),
-                    book.getBorrowedBy() != null ? escapeCsv(book.getBorrowedBy()) : "",
-                    book.getBorrowDate() != null ? book.getBorrowDate().format(DATE_FORMATTER) : "",
-                    book.getDueDate() != null ? book.getDueDate().format(DATE_FORMATTER) : ""
-                );
-            }
+        saveBooks(books, DataFormat.CSV);
+    }
+    
+    /**
+     * Save books in the given format
+     */
+    public static void saveBooks(Collection<Book> books, DataFormat format) throws IOException {
+        meteredWrite(SAVE_BOOKS, dataFile(BOOKS_FILE, format), books.size(), channel -> writeBooks(channel, books, format));
+    }
+    
+    private static void writeBooks(FileChannel channel, Collection<Book> books, DataFormat format) throws IOException {
+        if (format == DataFormat.BINARY) {
+            BinaryFormat.writeBooks(channel, books);
+            return;
+        }
+        
+        CsvWriter writer = new CsvWriter(channel);
+        // Write CSV header
+        writer.line("BookID,Title,Author,ISBN,Category,IsAvailable,DateAdded,BorrowedBy,BorrowDate,DueDate");
+        
+        for (Book book : books) {
+            writeBookFields(writer, book);
+            writer.endRow();
         }
+        writer.flush();
     }
     
     /**
      * Load books from CSV file
      */
     public static List<Book> loadBooks() throws IOException {
+        return loadBooks(DataFormat.CSV);
+    }
+    
+    /**
+     * Load books saved in the given format
+     */
+    public static List<Book> loadBooks(DataFormat format) throws IOException {
+        return loadBooks(dataFile(BOOKS_FILE, format), format);
+    }
+    
+    static List<Book> loadBooks(File file, DataFormat format) throws IOException {
+        return meteredRead(LOAD_BOOKS, file, () -> readBooks(file, format));
+    }
+    
+    private static List<Book> readBooks(File file, DataFormat format) throws IOException {
         List<Book> books = new ArrayList<>();
-        File file = new File(DATA_DIRECTORY + BOOKS_FILE);
         
         if (!file.exists()) {
             return books; // Return empty list if file doesn't exist
         }
         
-        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+        if (format == DataFormat.BINARY) {
+            try (FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                return BinaryFormat.readBooks(in);
+            }
+        }
+        
+        try (BufferedReader reader = new BufferedReader(new FileReader(file, StandardCharsets.UTF_8))) {
             String line = reader.readLine(); // Skip header
             
             while ((line = reader.readLine()) != null) {
-                String[] parts = parseCsvLine(line);
-                if (parts.length >= 6) {
-                    Book book = new Book(
-                        parts[0], // bookId
-                        parts[1], // title
-                        parts[2], // author
-                        parts[3], // isbn
-                        parts[4]  // category
-                    );
-                    
-                    book.setAvailable(Boolean.parseBoolean(parts[5]));
-                    
-                    // Set borrowed information if available
-                    if (parts.length > 7 && !parts[7].isEmpty()) {
-                        book.setBorrowedBy(parts[7]);
-                        if (parts.length > 8 && !parts[8].isEmpty()) {
-                            book.setBorrowDate(LocalDate.parse(parts[8], DATE_FORMATTER));
-                        }
-                        if (parts.length > 9 && !parts[9].isEmpty()) {
-                            book.setDueDate(LocalDate.parse(parts[9], DATE_FORMATTER));
-                        }
-                    }
-                    
+                Book book = parseBook(parseCsvLine(line));
+                if (book != null) {
                     books.add(book);
                 }
             }
@@ -106,70 +150,71 @@ public class FileUtils {
      * Save members to CSV file
      */
     public static void saveMembers(Collection<Member> members) throws IOException {
-        File file = new File(DATA_DIRECTORY + MEMBERS_FILE);
-        try (PrintWriter writer = new PrintWriter(new FileWriter(file))) {
-            // Write CSV header
-            writer.println("MemberID,Name,Email,Phone,Address,MemberType,RegistrationDate,BorrowedBooks,FineAmount,IsActive");
-            
-            for (Member member : members) {
-                // Convert borrowed books list to semicolon-separated string
-                String borrowedBooksStr = String.join(";", member.getBorrowedBooks());
-                
-                writer.printf("%s,%s,%s,%s,%s,%s,%s,%s,%.2f,%b%n",
-                    escapeCsv(member.getMemberId()),
-                    escapeCsv(member.getName()),
-                    escapeCsv(member.getEmail()),
-                    escapeCsv(member.getPhoneNumber()),
-                    escapeCsv(member.getAddress()),
-                    member.getMemberType().name(),
-                    member.getRegistrationDate().format(DATE_FORMATTER),
-                    escapeCsv(borrowedBooksStr),
-                    member.getFineAmount(),
-                    member.isActive()
-                );
-            }
+        saveMembers(members, DataFormat.CSV);
+    }
+    
+    /**
+     * Save members in the given format
+     */
+    public static void saveMembers(Collection<Member> members, DataFormat format) throws IOException {
+        meteredWrite(SAVE_MEMBERS, dataFile(MEMBERS_FILE, format), members.size(),
+                     channel -> writeMembers(channel, members, format));
+    }
+    
+    private static void writeMembers(FileChannel channel, Collection<Member> members, DataFormat format) throws IOException {
+        if (format == DataFormat.BINARY) {
+            BinaryFormat.writeMembers(channel, members);
+            return;
         }
+        
+        CsvWriter writer = new CsvWriter(channel);
+        // Write CSV header
+        writer.line("MemberID,Name,Email,Phone,Address,MemberType,RegistrationDate,BorrowedBooks,FineAmount,IsActive");
+        
+        for (Member member : members) {
+            writeMemberFields(writer, member);
+            writer.endRow();
+        }
+        writer.flush();
     }
     
     /**
      * Load members from CSV file
      */
     public static List<Member> loadMembers() throws IOException {
+        return loadMembers(DataFormat.CSV);
+    }
+    
+    /**
+     * Load members saved in the given format
+     */
+    public static List<Member> loadMembers(DataFormat format) throws IOException {
+        return loadMembers(dataFile(MEMBERS_FILE, format), format);
+    }
+    
+    static List<Member> loadMembers(File file, DataFormat format) throws IOException {
+        return meteredRead(LOAD_MEMBERS, file, () -> readMembers(file, format));
+    }
+    
+    private static List<Member> readMembers(File file, DataFormat format) throws IOException {
         List<Member> members = new ArrayList<>();
-        File file = new File(DATA_DIRECTORY + MEMBERS_FILE);
         
         if (!file.exists()) {
             return members; // Return empty list if file doesn't exist
         }
         
-        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+        if (format == DataFormat.BINARY) {
+            try (FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                return BinaryFormat.readMembers(in);
+            }
+        }
+        
+        try (BufferedReader reader = new BufferedReader(new FileReader(file, StandardCharsets.UTF_8))) {
             String line = reader.readLine(); // Skip header
             
             while ((line = reader.readLine()) != null) {
-                String[] parts = parseCsvLine(line);
-                if (parts.length >= 9) {
-                    Member member = new Member(
-                        parts[0], // memberId
-                        parts[1], // name
-                        parts[2], // email
-                        parts[3], // phone
-                        parts[4], // address
-                        Member.MemberType.valueOf(parts[5]) // memberType
-                    );
-                    
-                    // Set borrowed books if any
-                    if (!parts[7].isEmpty()) {
-                        String[] bookIds = parts[7].split(";");
-                        for (String bookId : bookIds) {
-                            if (!bookId.trim().isEmpty()) {
-                                member.addBorrowedBook(bookId.trim());
-                            }
-                        }
-                    }
-                    
-                    member.setFineAmount(Double.parseDouble(parts[8]));
-                    member.setActive(Boolean.parseBoolean(parts[9]));
-                    
+                Member member = parseMember(parseCsvLine(line));
+                if (member != null) {
                     members.add(member);
                 }
             }
@@ -182,68 +227,70 @@ public class FileUtils {
      * Save transactions to CSV file
      */
     public static void saveTransactions(List<Transaction> transactions) throws IOException {
-        File file = new File(DATA_DIRECTORY + TRANSACTIONS_FILE);
-        try (PrintWriter writer = new PrintWriter(new FileWriter(file))) {
-            // Write CSV header
-            writer.println("TransactionID,MemberID,BookID,Type,TransactionDate,DueDate,ReturnDate,FineAmount,Notes");
-            
-            for (Transaction transaction : transactions) {
-                writer.printf("%s,%s,%s,%s,%s,%s,%s,%.2f,%s%n",
-                    escapeCsv(transaction.getTransactionId()),
-                    escapeCsv(transaction.getMemberId()),
-                    transaction.getBookId() != null ? escapeCsv(transaction.getBookId()) : "",
-                    transaction.getType().name(),
-                    transaction.getTransactionDate().format(DATETIME_FORMATTER),
-                    transaction.getDueDate() != null ? transaction.getDueDate().format(DATETIME_FORMATTER) : "",
-                    transaction.getReturnDate() != null ? transaction.getReturnDate().format(DATETIME_FORMATTER) : "",
-                    transaction.getFineAmount(),
-                    escapeCsv(transaction.getNotes())
-                );
-            }
+        saveTransactions(transactions, DataFormat.CSV);
+    }
+    
+    /**
+     * Save transactions in the given format
+     */
+    public static void saveTransactions(List<Transaction> transactions, DataFormat format) throws IOException {
+        meteredWrite(SAVE_TRANSACTIONS, dataFile(TRANSACTIONS_FILE, format), transactions.size(),
+                     channel -> writeTransactions(channel, transactions, format));
+    }
+    
+    private static void writeTransactions(FileChannel channel, Collection<Transaction> transactions, DataFormat format) throws IOException {
+        if (format == DataFormat.BINARY) {
+            BinaryFormat.writeTransactions(channel, transactions);
+            return;
         }
+        
+        CsvWriter writer = new CsvWriter(channel);
+        // Write CSV header
+        writer.line("TransactionID,MemberID,BookID,Type,TransactionDate,DueDate,ReturnDate,FineAmount,Notes");
+        
+        for (Transaction transaction : transactions) {
+            writeTransaction(writer, transaction);
+        }
+        writer.flush();
     }
     
     /**
      * Load transactions from CSV file
      */
     public static List<Transaction> loadTransactions() throws IOException {
+        return loadTransactions(DataFormat.CSV);
+    }
+    
+    /**
+     * Load transactions saved in the given format
+     */
+    public static List<Transaction> loadTransactions(DataFormat format) throws IOException {
+        return loadTransactions(dataFile(TRANSACTIONS_FILE, format), format);
+    }
+    
+    static List<Transaction> loadTransactions(File file, DataFormat format) throws IOException {
+        return meteredRead(LOAD_TRANSACTIONS, file, () -> readTransactions(file, format));
+    }
+    
+    private static List<Transaction> readTransactions(File file, DataFormat format) throws IOException {
         List<Transaction> transactions = new ArrayList<>();
-        File file = new File(DATA_DIRECTORY + TRANSACTIONS_FILE);
         
         if (!file.exists()) {
             return transactions; // Return empty list if file doesn't exist
         }
         
-        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+        if (format == DataFormat.BINARY) {
+            try (FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                return BinaryFormat.readTransactions(in);
+            }
+        }
+        
+        try (BufferedReader reader = new BufferedReader(new FileReader(file, StandardCharsets.UTF_8))) {
             String line = reader.readLine(); // Skip header
             
             while ((line = reader.readLine()) != null) {
-                String[] parts = parseCsvLine(line);
-                if (parts.length >= 8) {
-                    String bookId = parts[2].isEmpty() ? null : parts[2];
-                    Transaction.TransactionType type = Transaction.TransactionType.valueOf(parts[3]);
-                    
-                    Transaction transaction = new Transaction(
-                        parts[0], // transactionId
-                        parts[1], // memberId
-                        bookId,   // bookId
-                        type      // type
-                    );
-                    
-                    // Set dates
-                    if (!parts[5].isEmpty()) {
-                        transaction.setDueDate(LocalDateTime.parse(parts[5], DATETIME_FORMATTER));
-                    }
-                    if (!parts[6].isEmpty()) {
-                        transaction.setReturnDate(LocalDateTime.parse(parts[6], DATETIME_FORMATTER));
-                    }
-                    
-                    transaction.setFineAmount(Double.parseDouble(parts[7]));
-                    
-                    if (parts.length > 8) {
-                        transaction.setNotes(parts[8]);
-                    }
-                    
+                Transaction transaction = parseTransaction(parseCsvLine(line), 0);
+                if (transaction != null) {
                     transactions.add(transaction);
                 }
             }
@@ -252,46 +299,513 @@ public class FileUtils {
         return transactions;
     }
     
+    // The columns of a books.csv row, without ending the row
+    static void writeBookFields(CsvWriter writer, Book book) throws IOException {
+        LoanState loan = book.getLoanState();
+        writer.field(book.getBookId())
+              .field(book.getTitle())
+              .field(book.getAuthor())
+              .field(book.getIsbn())
+              .field(book.getCategory())
+              .field(loan.isAvailable())
+              .field(book.getDateAdded())
+              .field(loan.getBorrowedBy())
+              .field(loan.getBorrowDate())
+              .field(loan.getDueDate());
+    }
+    
     /**
-     * Create a backup of all data files
+     * Build a book from CSV fields, or return null if the row is too short
      */
-    public static void createBackup() throws IOException {
-        String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss"));
-        String backupDir = DATA_DIRECTORY + "backup_" + timestamp + "/";
+    static Book parseBook(String[] parts) {
+        if (parts.length < 6) {
+            return null;
+        }
+        Book book = new Book(
+            parts[0], // bookId
+            parts[1], // title
+            parts[2], // author
+            parts[3], // isbn
+            parts[4]  // category
+        );
         
-        File backupDirectory = new File(backupDir);
-        if (!backupDirectory.exists()) {
-            backupDirectory.mkdirs();
+        book.setAvailable(Boolean.parseBoolean(parts[5]));
+        if (parts.length > 6 && !parts[6].isEmpty()) {
+            book.setDateAdded(LocalDate.parse(parts[6], DATE_FORMATTER));
         }
         
-        // Copy each data file to backup directory
-        String[] dataFiles = {BOOKS_FILE, MEMBERS_FILE, TRANSACTIONS_FILE};
+        // Set borrowed information if available
+        if (parts.length > 7 && !parts[7].isEmpty()) {
+            book.setBorrowedBy(parts[7]);
+            if (parts.length > 8 && !parts[8].isEmpty()) {
+                book.setBorrowDate(LocalDate.parse(parts[8], DATE_FORMATTER));
+            }
+            if (parts.length > 9 && !parts[9].isEmpty()) {
+                book.setDueDate(LocalDate.parse(parts[9], DATE_FORMATTER));
+            }
+        }
         
-        for (String fileName : dataFiles) {
-            File sourceFile = new File(DATA_DIRECTORY + fileName);
-            File backupFile = new File(backupDir + fileName);
-            
-            if (sourceFile.exists()) {
-                copyFile(sourceFile, backupFile);
+        return book;
+    }
+    
+    // The columns of a members.csv row, without ending the row
+    static void writeMemberFields(CsvWriter writer, Member member) throws IOException {
+        // Convert borrowed books list to semicolon-separated string
+        String borrowedBooksStr = String.join(";", member.getBorrowedBooks());
+        
+        writer.field(member.getMemberId())
+              .field(member.getName())
+              .field(member.getEmail())
+              .field(member.getPhoneNumber())
+              .field(member.getAddress())
+              .field(member.getMemberType().name())
+              .field(member.getRegistrationDate())
+              .field(borrowedBooksStr)
+              .fieldMoney(member.getFineAmount())
+              .field(member.isActive());
+    }
+    
+    /**
+     * Build a member from CSV fields, or return null if the row is too short
+     */
+    static Member parseMember(String[] parts) {
+        if (parts.length < 9) {
+            return null;
+        }
+        Member member = new Member(
+            parts[0], // memberId
+            parts[1], // name
+            parts[2], // email
+            parts[3], // phone
+            parts[4], // address
+            Member.MemberType.valueOf(parts[5]) // memberType
+        );
+        
+        if (!parts[6].isEmpty()) {
+            member.setRegistrationDate(LocalDate.parse(parts[6], DATE_FORMATTER));
+        }
+        
+        // Set borrowed books if any
+        if (!parts[7].isEmpty()) {
+            String[] bookIds = parts[7].split(";");
+            for (String bookId : bookIds) {
+                if (!bookId.trim().isEmpty() && !member.addBorrowedBook(bookId.trim())) {
+                    System.err.println("Skipping duplicate loan of " + bookId.trim() + " by member " + parts[0]);
+                }
+            }
+        }
+        
+        member.setFineAmount(Double.parseDouble(parts[8]));
+        if (parts.length > 9) {
+            member.setActive(Boolean.parseBoolean(parts[9]));
+        }
+        
+        return member;
+    }
+    
+    /**
+     * Write the fields of one transaction to the current CSV row; the
+     * caller ends the row
+     */
+    static void writeTransactionFields(CsvWriter writer, Transaction transaction) throws IOException {
+        if (transaction.isNumbered()) {
+            writer.field(Transaction.ID_PREFIX, transaction.getTransactionNumber(), Transaction.ID_DIGITS);
+        } else {
+            writer.field(transaction.getTransactionId());
+        }
+        writer.field(transaction.getMemberId())
+              .field(transaction.getBookId())
+              .field(transaction.getType().name())
+              .field(transaction.getTransactionDate())
+              .field(transaction.getDueDate())
+              .field(transaction.getReturnDate())
+              .fieldMoney(transaction.getFineAmount())
+              .field(transaction.getNotes());
+    }
+    
+    private static void writeTransaction(CsvWriter writer, Transaction transaction) throws IOException {
+        writeTransactionFields(writer, transaction);
+        writer.endRow();
+    }
+    
+    /**
+     * Build a transaction from CSV fields starting at the given offset,
+     * or return null if the row is too short
+     */
+    static Transaction parseTransaction(String[] parts, int offset) {
+        if (parts.length < offset + 8) {
+            return null;
+        }
+        String bookId = parts[offset + 2].isEmpty() ? null : parts[offset + 2];
+        Transaction.TransactionType type = Transaction.TransactionType.valueOf(parts[offset + 3]);
+        
+        Transaction transaction = new Transaction(
+            parts[offset],     // transactionId
+            parts[offset + 1], // memberId
+            bookId,            // bookId
+            type               // type
+        );
+        
+        // Set dates
+        if (!parts[offset + 4].isEmpty()) {
+            transaction.setTransactionDate(LocalDateTime.parse(parts[offset + 4], DATETIME_FORMATTER));
+        }
+        if (!parts[offset + 5].isEmpty()) {
+            transaction.setDueDate(LocalDateTime.parse(parts[offset + 5], DATETIME_FORMATTER));
+        }
+        if (!parts[offset + 6].isEmpty()) {
+            transaction.setReturnDate(LocalDateTime.parse(parts[offset + 6], DATETIME_FORMATTER));
+        }
+        
+        transaction.setFineAmount(Double.parseDouble(parts[offset + 7]));
+        
+        if (parts.length > offset + 8) {
+            transaction.setNotes(parts[offset + 8]);
+        }
+        
+        return transaction;
+    }
+    
+    /**
+     * Get the file transactions are saved to in the given format
+     */
+    public static File getTransactionsFile(DataFormat format) {
+        return dataFile(TRANSACTIONS_FILE, format);
+    }
+    
+    /**
+     * Get the append-only transaction journal file
+     */
+    public static File getJournalFile() {
+        return new File(DATA_DIRECTORY + JOURNAL_FILE);
+    }
+    
+    /**
+     * Save books and members as a new snapshot generation that includes
+     * every journal record up to and including journalSequence.
+     *
+     * The generation's files are written and synced under new names first;
+     * renaming the manifest into place then switches readers over in one
+     * step, so a crash at any point leaves the previous generation intact.
+     *
+     * @return the number of the new generation
+     */
+    public static long saveSnapshot(Collection<Book> books, Collection<Member> members,
+                                    long journalSequence, DataFormat format) throws IOException {
+        long started = SAVE_SNAPSHOT.start();
+        try {
+            long generation = writeSnapshot(books, members, journalSequence, format);
+            SAVE_SNAPSHOT.stop(started, books.size() + members.size(), snapshotBytes());
+            return generation;
+        } catch (IOException | RuntimeException e) {
+            SAVE_SNAPSHOT.fail(started);
+            throw e;
+        }
+    }
+    
+    private static long writeSnapshot(Collection<Book> books, Collection<Member> members,
+                                      long journalSequence, DataFormat format) throws IOException {
+        SnapshotManifest previous = readSnapshotManifest();
+        long generation = previous != null ? previous.getGeneration() + 1 : 1;
+        String booksFile = generationFileName(BOOKS_FILE, generation, format);
+        String membersFile = generationFileName(MEMBERS_FILE, generation, format);
+        
+        writeAtomically(new File(DATA_DIRECTORY + booksFile), channel -> writeBooks(channel, books, format));
+        writeAtomically(new File(DATA_DIRECTORY + membersFile), channel -> writeMembers(channel, members, format));
+        
+        SnapshotManifest manifest = new SnapshotManifest(generation, format, journalSequence, booksFile, membersFile,
+                                                         LocalDateTime.now().format(DATETIME_FORMATTER));
+        writeAtomically(new File(DATA_DIRECTORY + SNAPSHOT_FILE),
+                        channel -> manifest.write(Channels.newOutputStream(channel)));
+        
+        deleteOldGenerations(generation);
+        return generation;
+    }
+    
+    /**
+     * Read the manifest of the current snapshot, or null if none was saved
+     */
+    static SnapshotManifest readSnapshotManifest() throws IOException {
+        return SnapshotManifest.read(new File(DATA_DIRECTORY + SNAPSHOT_FILE));
+    }
+    
+    static File getDataFile(String fileName) {
+        return new File(DATA_DIRECTORY + fileName);
+    }
+    
+    // Delta log of the changes saved on top of a snapshot generation
+    static File getDeltaFile(long generation) {
+        return new File(DATA_DIRECTORY + String.format("%s-%06d%s", DELTA_FILE, generation, DELTA_EXTENSION));
+    }
+    
+    /**
+     * Archive of a run of one month's transactions, from position first
+     * within the month up to every one journaled up to and including
+     * journalSequence, e.g. partitions/transactions-2024-03.0000000000.000000001234.dat
+     */
+    static File getPartitionFile(YearMonth month, int first, long journalSequence) {
+        return new File(DATA_DIRECTORY + PARTITION_DIRECTORY + String.format("%s-%s.%010d.%012d%s",
+                        TRANSACTIONS_FILE, month, first, journalSequence, DataFormat.BINARY.getExtension()));
+    }
+    
+    /**
+     * Save a run of one month's transactions in DataFormat.BINARY, so it can
+     * be mapped instead of kept on the heap, then delete the month's runs it
+     * replaces, which start at the same position or later. Journal records
+     * up to journalSequence may be dropped once every month holding them is
+     * saved.
+     */
+    static File savePartition(YearMonth month, int first, long journalSequence, List<Transaction> transactions)
+            throws IOException {
+        File file = getPartitionFile(month, first, journalSequence);
+        file.getParentFile().mkdirs();
+        meteredWrite(SAVE_PARTITION, file, transactions.size(),
+                     channel -> writeTransactions(channel, transactions, DataFormat.BINARY));
+        for (File older : listPartitionFiles(month)) {
+            if (!older.equals(file) && getPartitionStart(older) >= first) {
+                Files.deleteIfExists(older.toPath());
+            }
+        }
+        // Unnumbered archives of older versions were only caches of the journal
+        Files.deleteIfExists(new File(file.getParentFile(), String.format("%s-%s%s", TRANSACTIONS_FILE, month,
+                                      DataFormat.BINARY.getExtension())).toPath());
+        return file;
+    }
+    
+    /**
+     * Each month's archived runs by the position of their first transaction.
+     * A crash may have left runs that a newer one replaces; of those starting
+     * at the same position, only the newest is listed.
+     */
+    static NavigableMap<YearMonth, NavigableMap<Integer, File>> loadPartitionRuns() {
+        NavigableMap<YearMonth, NavigableMap<Integer, File>> runs = new TreeMap<>();
+        for (File file : listPartitionFiles(null)) {
+            Matcher matcher = PARTITION_FILE.matcher(file.getName());
+            if (matcher.matches()) {
+                runs.computeIfAbsent(YearMonth.parse(matcher.group(1)), month -> new TreeMap<>())
+                    .merge(getPartitionStart(file), file,
+                           (a, b) -> getPartitionSequence(a) >= getPartitionSequence(b) ? a : b);
             }
         }
+        return runs;
+    }
+    
+    // The journal sequence an archived run is saved through
+    static long getPartitionSequence(File file) {
+        Matcher matcher = PARTITION_FILE.matcher(file.getName());
+        return matcher.matches() ? Long.parseLong(matcher.group(3)) : 0;
+    }
+    
+    // Archives saved whole, before months were archived in runs, start at 0
+    private static int getPartitionStart(File file) {
+        Matcher matcher = PARTITION_FILE.matcher(file.getName());
+        return matcher.matches() && matcher.group(2) != null ? Integer.parseInt(matcher.group(2)) : 0;
+    }
+    
+    // Archives of the month, or of every month if null
+    private static List<File> listPartitionFiles(YearMonth month) {
+        File[] files = new File(DATA_DIRECTORY + PARTITION_DIRECTORY).listFiles();
+        List<File> result = new ArrayList<>();
+        if (files != null) {
+            for (File file : files) {
+                Matcher matcher = PARTITION_FILE.matcher(file.getName());
+                if (matcher.matches() && (month == null || matcher.group(1).equals(month.toString()))) {
+                    result.add(file);
+                }
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Read the end of the last block of transaction numbers reserved, or 0
+     * if none was
+     */
+    public static long loadTransactionIdLimit() throws IOException {
+        File file = new File(DATA_DIRECTORY + TRANSACTION_ID_FILE);
+        if (!file.exists()) {
+            return 0;
+        }
+        Properties properties = new Properties();
+        try (InputStream in = new FileInputStream(file)) {
+            properties.load(in);
+        }
+        try {
+            return Long.parseLong(properties.getProperty("reservedLimit", "0"));
+        } catch (NumberFormatException e) {
+            throw new IOException("Corrupt " + TRANSACTION_ID_FILE + ": " + e.getMessage(), e);
+        }
+    }
+    
+    /**
+     * Durably record that transaction numbers below limit may be in use
+     */
+    public static void saveTransactionIdLimit(long limit) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("reservedLimit", Long.toString(limit));
+        writeAtomically(new File(DATA_DIRECTORY + TRANSACTION_ID_FILE),
+                        channel -> properties.store(Channels.newOutputStream(channel), "Reserved transaction numbers"));
+    }
+    
+    /**
+     * Create a backup of all data files, keeping every earlier backup
+     */
+    public static void createBackup() throws IOException {
+        createBackup(Integer.MAX_VALUE);
+    }
+    
+    /**
+     * Create a backup of all data files and delete all but the newest
+     * keepBackups backups.
+     *
+     * Files whose size and modification time are unchanged since the
+     * previous backup are hard-linked to it rather than copied, so immutable
+     * snapshot generations and archives cost no I/O after their first backup;
+     * changed files are copied with FileChannel.transferTo. The backup is
+     * assembled in a temp directory and renamed into place once complete, so
+     * an interrupted backup is never used as the base of the next one.
+     */
+    public static void createBackup(int keepBackups) throws IOException {
+        if (keepBackups < 1) {
+            throw new IllegalArgumentException("At least one backup must be kept");
+        }
+        long started = CREATE_BACKUP.start();
+        try {
+            writeBackup(keepBackups, started);
+        } catch (IOException | RuntimeException e) {
+            CREATE_BACKUP.fail(started);
+            throw e;
+        }
+    }
+    
+    private static void writeBackup(int keepBackups, long started) throws IOException {
+        String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss"));
+        File backupDirectory = new File(DATA_DIRECTORY + BACKUP_PREFIX + timestamp);
+        for (int attempt = 2; backupDirectory.exists(); attempt++) {
+            backupDirectory = new File(DATA_DIRECTORY + BACKUP_PREFIX + timestamp + "_" + attempt);
+        }
+        File tempDirectory = new File(backupDirectory.getPath() + TEMP_SUFFIX);
+        deleteRecursively(tempDirectory);
+        Files.createDirectories(tempDirectory.toPath());
+        
+        File previous = latestBackup();
+        BackupManifest previousManifest = previous != null ? BackupManifest.read(previous) : new BackupManifest();
+        BackupManifest manifest = new BackupManifest();
+        int copiedFiles = 0;
+        int linkedFiles = 0;
+        long copiedBytes = 0;
+        try {
+            for (File sourceFile : getDataFiles()) {
+                // Attributes are read before copying, so a file changing meanwhile is copied again next time
+                String name = sourceFile.getName();
+                long size = sourceFile.length();
+                long lastModified = sourceFile.lastModified();
+                File backupFile = new File(tempDirectory, name);
+                if (previous != null && previousManifest.matches(name, size, lastModified)
+                        && linkFile(new File(previous, name), backupFile)) {
+                    linkedFiles++;
+                } else {
+                    copyFile(sourceFile, backupFile);
+                    copiedFiles++;
+                    copiedBytes += size;
+                }
+                manifest.add(name, size, lastModified);
+            }
+            manifest.write(tempDirectory);
+            syncDirectory(tempDirectory);
+            Files.move(tempDirectory.toPath(), backupDirectory.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            syncDirectory(new File(DATA_DIRECTORY));
+        } catch (IOException | RuntimeException e) {
+            deleteRecursively(tempDirectory);
+            throw e;
+        }
         
-        System.out.println("Backup created successfully at: " + backupDir);
+        pruneBackups(keepBackups);
+        CREATE_BACKUP.stop(started, copiedFiles + linkedFiles, copiedBytes);
+        System.out.println("Backup created successfully at: " + backupDirectory.getPath() + "/ ("
+                + copiedFiles + " files copied, " + linkedFiles + " unchanged files linked, "
+                + formatFileSize(copiedBytes) + " written)");
+    }
+    
+    // The newest complete backup, or null if there is none
+    private static File latestBackup() {
+        List<File> backups = listBackups();
+        return backups.isEmpty() ? null : backups.get(backups.size() - 1);
+    }
+    
+    // Complete backup directories, oldest first
+    private static List<File> listBackups() {
+        List<File> backups = new ArrayList<>();
+        File[] files = new File(DATA_DIRECTORY).listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.isDirectory() && BACKUP_DIRECTORY.matcher(file.getName()).matches()) {
+                    backups.add(file);
+                }
+            }
+        }
+        backups.sort(Comparator.comparing(FileUtils::backupSortKey));
+        return backups;
+    }
+    
+    // Order backups taken in the same second by their _2, _3, ... suffix
+    private static String backupSortKey(File backup) {
+        Matcher matcher = BACKUP_DIRECTORY.matcher(backup.getName());
+        matcher.matches();
+        String attempt = matcher.group(2) != null ? matcher.group(2) : "1";
+        return matcher.group(1) + String.format("_%06d", Integer.parseInt(attempt));
+    }
+    
+    // Delete the oldest backups beyond the number to keep; linked files live on in the newer ones
+    private static void pruneBackups(int keepBackups) throws IOException {
+        List<File> backups = listBackups();
+        for (int i = 0; i < backups.size() - keepBackups; i++) {
+            deleteRecursively(backups.get(i));
+        }
+    }
+    
+    private static boolean linkFile(File existing, File link) {
+        if (!existing.isFile()) {
+            return false;
+        }
+        try {
+            Files.createLink(link.toPath(), existing.toPath());
+            return true;
+        } catch (IOException | UnsupportedOperationException e) {
+            return false; // No hard links on this file system; copy instead
+        }
     }
     
     /**
-     * Copy file from source to destination
+     * Copy file from source to destination, letting the OS move the bytes
      */
     private static void copyFile(File source, File destination) throws IOException {
-        try (FileInputStream fis = new FileInputStream(source);
-             FileOutputStream fos = new FileOutputStream(destination)) {
-            
-            byte[] buffer = new byte[1024];
-            int length;
-            while ((length = fis.read(buffer)) > 0) {
-                fos.write(buffer, 0, length);
+        try (FileChannel in = FileChannel.open(source.toPath(), StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(destination.toPath(), StandardOpenOption.CREATE,
+                                                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            long size = in.size();
+            long position = 0;
+            while (position < size) {
+                long transferred = in.transferTo(position, size - position, out);
+                if (transferred <= 0) {
+                    break; // Truncated while copying
+                }
+                position += transferred;
+            }
+            out.force(true);
+        }
+    }
+    
+    private static void deleteRecursively(File file) throws IOException {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
             }
         }
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Could not delete " + file);
+        }
     }
     
     /**
@@ -352,28 +866,10 @@ public class FileUtils {
         System.out.println("Statistics exported to: " + filename);
     }
     
-    /**
-     * Escape CSV special characters
-     */
-    private static String escapeCsv(String value) {
-        if (value == null) {
-            return "";
-        }
-        
-        // If the value contains comma, double quote, or newline, wrap it in double quotes
-        if (value.contains(",") || value.contains("\"") || value.contains("\n") || value.contains("\r")) {
-            // Escape existing double quotes by doubling them
-            value = value.replace("\"", "\"\"");
-            return "\"" + value + "\"";
-        }
-        
-        return value;
-    }
-    
     /**
      * Parse a CSV line handling quoted values
      */
-    private static String[] parseCsvLine(String line) {
+    static String[] parseCsvLine(String line) {
         List<String> result = new ArrayList<>();
         boolean inQuotes = false;
         StringBuilder currentField = new StringBuilder();
@@ -418,16 +914,141 @@ public class FileUtils {
      */
     public static long getDataSize() {
         long totalSize = 0;
-        String[] dataFiles = {BOOKS_FILE, MEMBERS_FILE, TRANSACTIONS_FILE};
+        for (File file : getDataFiles()) {
+            totalSize += file.length();
+        }
         
-        for (String fileName : dataFiles) {
-            File file = new File(DATA_DIRECTORY + fileName);
-            if (file.exists()) {
-                totalSize += file.length();
+        return totalSize;
+    }
+    
+    /**
+     * Get every existing data file, in either format
+     */
+    private static List<File> getDataFiles() {
+        List<File> files = new ArrayList<>();
+        for (String baseName : new String[] {BOOKS_FILE, MEMBERS_FILE, TRANSACTIONS_FILE}) {
+            for (DataFormat format : DataFormat.values()) {
+                files.add(dataFile(baseName, format));
             }
         }
+        files.add(new File(DATA_DIRECTORY + JOURNAL_FILE));
+        files.addAll(TransactionJournal.segments(getJournalFile()).values());
+        files.addAll(listPartitionFiles(null)); // Names are unique across months
+        files.add(new File(DATA_DIRECTORY + SNAPSHOT_FILE));
+        files.add(new File(DATA_DIRECTORY + TRANSACTION_ID_FILE));
         
-        return totalSize;
+        try {
+            SnapshotManifest manifest = readSnapshotManifest();
+            long generation = manifest != null ? manifest.getGeneration() : 0;
+            if (generation > 0) {
+                files.add(new File(DATA_DIRECTORY + manifest.getBooksFile()));
+                files.add(new File(DATA_DIRECTORY + manifest.getMembersFile()));
+            }
+            files.add(getDeltaFile(generation));
+        } catch (IOException e) {
+            // Unreadable manifest: report the files we can find
+        }
+        
+        files.removeIf(file -> !file.exists());
+        return files;
+    }
+    
+    // Metered Reads and Writes
+    private interface FileRows<T> {
+        List<T> read() throws IOException;
+    }
+    
+    private static <T> List<T> meteredRead(OperationMetrics operation, File file, FileRows<T> reader) throws IOException {
+        long started = operation.start();
+        try {
+            List<T> rows = reader.read();
+            operation.stop(started, rows.size(), file.length());
+            return rows;
+        } catch (IOException | RuntimeException e) {
+            operation.fail(started);
+            throw e;
+        }
+    }
+    
+    private static void meteredWrite(OperationMetrics operation, File target, int rows, FileContent content) throws IOException {
+        long started = operation.start();
+        try {
+            writeAtomically(target, content);
+        } catch (IOException | RuntimeException e) {
+            operation.fail(started);
+            throw e;
+        }
+        operation.stop(started, rows, target.length());
+    }
+    
+    // Size of the current snapshot's books and members files
+    private static long snapshotBytes() throws IOException {
+        SnapshotManifest manifest = readSnapshotManifest();
+        return manifest == null ? 0 : new File(DATA_DIRECTORY + manifest.getBooksFile()).length()
+                                      + new File(DATA_DIRECTORY + manifest.getMembersFile()).length();
+    }
+    
+    // Atomic Writes
+    private interface FileContent {
+        void writeTo(FileChannel channel) throws IOException;
+    }
+    
+    /**
+     * Write to a temp file next to the target, sync it, and rename it over
+     * the target, so the target is always either the old or the new file
+     */
+    private static void writeAtomically(File target, FileContent content) throws IOException {
+        File temp = new File(target.getPath() + TEMP_SUFFIX);
+        try (FileChannel channel = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE,
+                                                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            content.writeTo(channel);
+            channel.force(true);
+        } catch (IOException | RuntimeException e) {
+            temp.delete();
+            throw e;
+        }
+        Files.move(temp.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        syncDirectory(target.getAbsoluteFile().getParentFile());
+    }
+    
+    // Make a rename durable; not every platform can sync a directory
+    static void syncDirectory(File directory) {
+        try (FileChannel channel = FileChannel.open(directory.toPath(), StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Best effort
+        }
+    }
+    
+    private static String generationFileName(String baseName, long generation, DataFormat format) {
+        return String.format("%s-%06d%s", baseName, generation, format.getExtension());
+    }
+    
+    // Remove snapshot files of other generations and the temp files an interrupted snapshot save left.
+    // Other temp files, e.g. of the transaction ID reservation or a backup, may belong to a save in progress.
+    private static void deleteOldGenerations(long currentGeneration) {
+        File[] files = new File(DATA_DIRECTORY).listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            String name = file.getName();
+            boolean temp = name.endsWith(TEMP_SUFFIX);
+            if (temp) {
+                name = name.substring(0, name.length() - TEMP_SUFFIX.length());
+            }
+            Matcher matcher = GENERATION_FILE.matcher(name);
+            boolean generationFile = matcher.matches();
+            boolean oldGeneration = generationFile && Long.parseLong(matcher.group(1)) != currentGeneration;
+            boolean snapshotTemp = temp && (generationFile || name.equals(SNAPSHOT_FILE));
+            if (oldGeneration || snapshotTemp) {
+                file.delete();
+            }
+        }
+    }
+    
+    private static File dataFile(String baseName, DataFormat format) {
+        return new File(DATA_DIRECTORY + baseName + format.getExtension());
     }
     
     /**
@@ -0,0 +1,104 @@
+package utils;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Outcome of a bulk CSV import: how many rows were imported or rejected,
+ * how long it took, and why individual rows were rejected
+ */
+public class ImportReport {
+    private final String fileName;
+    private final long importedRows;
+    private final long rejectedRows;
+    private final long bytesRead;
+    private final long elapsedNanos;
+    private final List<Rejection> rejections;
+
+    ImportReport(String fileName, long importedRows, long rejectedRows, long bytesRead,
+                 long elapsedNanos, List<Rejection> rejections) {
+        this.fileName = fileName;
+        this.importedRows = importedRows;
+        this.rejectedRows = rejectedRows;
+        this.bytesRead = bytesRead;
+        this.elapsedNanos = elapsedNanos;
+        this.rejections = Collections.unmodifiableList(rejections);
+    }
+
+    // Getters
+    public String getFileName() {
+        return fileName;
+    }
+
+    public long getImportedRows() {
+        return importedRows;
+    }
+
+    public long getRejectedRows() {
+        return rejectedRows;
+    }
+
+    public long getTotalRows() {
+        return importedRows + rejectedRows;
+    }
+
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedNanos / 1_000_000;
+    }
+
+    public double getRowsPerSecond() {
+        return elapsedNanos > 0 ? getTotalRows() * 1_000_000_000.0 / elapsedNanos : 0;
+    }
+
+    // The first rejections in file order; getRejectedRows() counts all of them
+    public List<Rejection> getRejections() {
+        return rejections;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ImportReport{File='%s', Imported=%d, Rejected=%d, Size=%s, Time=%dms, Rate=%.0f rows/s}",
+                fileName, importedRows, rejectedRows, FileUtils.formatFileSize(bytesRead),
+                getElapsedMillis(), getRowsPerSecond());
+    }
+
+    /**
+     * A row that could not be imported. Rows are numbered from 1, not
+     * counting the header; a quoted field may span several lines of a row.
+     */
+    public static class Rejection {
+        private final long rowNumber;
+        private final String reason;
+        private final String row;
+
+        public Rejection(long rowNumber, String reason, String row) {
+            this.rowNumber = rowNumber;
+            this.reason = reason;
+            this.row = row;
+        }
+
+        public long getRowNumber() {
+            return rowNumber;
+        }
+
+        public String getReason() {
+            return reason;
+        }
+
+        public String getRow() {
+            return row;
+        }
+
+        @Override
+        public String toString() {
+            if (row == null) {
+                return String.format("Row %d: %s", rowNumber, reason);
+            }
+            return String.format("Row %d: %s [%s]", rowNumber, reason, row);
+        }
+    }
+}
@@ -0,0 +1,257 @@
+package utils;
+
+import models.*;
+import services.CatalogState;
+import services.LibraryService;
+import java.io.*;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.*;
+
+/**
+ * Keeps a LibraryService durable with snapshots plus a write-ahead journal.
+ *
+ * Every transaction the service records is appended to the journal as it
+ * happens. A checkpoint saves books and members exactly as of one journal
+ * sequence, captured together with it, so startup loads the last snapshot
+ * and replays only the journal records written after it, each once. The cost of staying durable is
+ * proportional to new activity instead of to the length of the history.
+ *
+ * Between checkpoints, {@link #flush()} saves only the books and members
+ * marked dirty since the last save, plus removals, to a delta log kept
+ * next to the snapshot. Once the log holds more records than half the
+ * snapshot, the flush compacts it into a fresh checkpoint.
+ *
+ * Transaction numbers are reserved a block at a time in a small file of
+ * their own, so numbering resumes past every ID handed out before a crash,
+ * journaled or not, skipping fewer than two blocks. If that file can't be
+ * written, operations that need a new number are refused rather than
+ * handed an unreserved one.
+ *
+ * Every checkpoint also moves the transactions journaled up to its
+ * sequence out of the heap into memory-mapped files, adding to each month
+ * a run of the transactions new since the last checkpoint, named after
+ * that sequence. It then rolls the journal into a new segment and deletes
+ * the segments those files hold. The journal thus stays about two
+ * checkpoints long, and startup maps the monthly runs and loads only the
+ * journal records newer than them. History saved to transactions.csv
+ * before the journal existed is converted once to transactions.dat and
+ * mapped from there.
+ */
+public class LibraryPersistence implements Closeable {
+
+    private static final long COMMIT_INTERVAL_MILLIS = 20;
+    private static final DataFormat SNAPSHOT_FORMAT = DataFormat.BINARY;
+    private static final long MIN_COMPACTION_RECORDS = 10_000;
+    private static final YearMonth UNDATED = YearMonth.of(1970, 1); // The service's month for undated transactions
+
+    private final LibraryService libraryService;
+    private final TransactionJournal journal;
+    private final LibraryService.TransactionListener journalWriter;
+
+    // Guarded by this
+    private long generation;
+    private long snapshotRecords;
+    private DeltaLog delta;
+
+    private LibraryPersistence(LibraryService libraryService, TransactionJournal journal,
+                               long generation, long snapshotRecords, DeltaLog delta) {
+        this.libraryService = libraryService;
+        this.journal = journal;
+        this.journalWriter = journal::append;
+        this.generation = generation;
+        this.snapshotRecords = snapshotRecords;
+        this.delta = delta;
+    }
+
+    /**
+     * Load the last snapshot and its delta log into the service, replay the
+     * journal tail, and start journaling new transactions
+     */
+    public static LibraryPersistence open(LibraryService libraryService) throws IOException {
+        SnapshotManifest manifest = FileUtils.readSnapshotManifest();
+        long generation = manifest != null ? manifest.getGeneration() : 0;
+        long snapshotSequence = 0;
+        Map<String, Book> books = new LinkedHashMap<>();
+        Map<String, Member> members = new LinkedHashMap<>();
+        if (manifest != null) {
+            snapshotSequence = manifest.getJournalSequence();
+            for (Book book : FileUtils.loadBooks(FileUtils.getDataFile(manifest.getBooksFile()), manifest.getFormat())) {
+                books.put(book.getBookId(), book);
+            }
+            for (Member member : FileUtils.loadMembers(FileUtils.getDataFile(manifest.getMembersFile()),
+                                                       manifest.getFormat())) {
+                members.put(member.getMemberId(), member);
+            }
+        }
+        long snapshotRecords = books.size() + members.size();
+        File deltaFile = FileUtils.getDeltaFile(generation);
+        snapshotSequence = Math.max(snapshotSequence, DeltaLog.replay(deltaFile, books, members));
+        
+        // Archived history is mapped, not loaded; only journal records archived in no month go on the heap.
+        // The journal keeps just the segments written since the checkpoint before last.
+        MappedTransactionLog archive = openTransactionArchive();
+        Map<YearMonth, List<MappedTransactionLog>> archivedRuns = new TreeMap<>();
+        NavigableMap<YearMonth, Long> archivedThrough = new TreeMap<>();
+        for (Map.Entry<YearMonth, NavigableMap<Integer, File>> month : FileUtils.loadPartitionRuns().entrySet()) {
+            // Each run starts where the one before ends; runs replaced by a longer one are skipped
+            List<MappedTransactionLog> runs = new ArrayList<>();
+            int position = 0;
+            File file;
+            while ((file = month.getValue().get(position)) != null) {
+                MappedTransactionLog run = MappedTransactionLog.open(file);
+                runs.add(run);
+                archivedThrough.put(month.getKey(), FileUtils.getPartitionSequence(file));
+                if (run.size() == 0) {
+                    break;
+                }
+                position += run.size();
+            }
+            archivedRuns.put(month.getKey(), runs);
+        }
+        List<Transaction> history = new ArrayList<>();
+        List<Transaction> tail = new ArrayList<>();
+        for (TransactionJournal.Entry entry : TransactionJournal.read(FileUtils.getJournalFile(), 0)) {
+            if (entry.getSequence() > archivedThrough.getOrDefault(monthOf(entry.getTransaction()), 0L)) {
+                history.add(entry.getTransaction());
+            }
+            if (entry.getSequence() > snapshotSequence) {
+                tail.add(entry.getTransaction());
+            }
+        }
+
+        // Everything loaded is saved; replayed changes mark what they touch dirty again
+        books.values().forEach(Book::markClean);
+        members.values().forEach(Member::markClean);
+        history.forEach(Transaction::markClean);
+
+        libraryService.setTransactionArchive(archive);
+        for (Map.Entry<YearMonth, List<MappedTransactionLog>> month : archivedRuns.entrySet()) {
+            for (MappedTransactionLog run : month.getValue()) {
+                libraryService.addTransactionArchive(month.getKey(), run);
+            }
+        }
+        libraryService.loadData(books.values(), members.values(), history);
+        libraryService.replayTransactions(tail);
+        libraryService.setTransactionIdStore(FileUtils::saveTransactionIdLimit, FileUtils.loadTransactionIdLimit());
+        libraryService.reserveTransactionIds(); // The first block; a PersistenceScheduler reserves the next ones
+
+        // After an idle restart the journal may hold no records at all; numbering resumes past what was saved
+        long savedSequence = snapshotSequence;
+        for (long sequence : archivedThrough.values()) {
+            savedSequence = Math.max(savedSequence, sequence);
+        }
+        TransactionJournal journal = TransactionJournal.open(FileUtils.getJournalFile(), savedSequence,
+                                                             COMMIT_INTERVAL_MILLIS);
+        LibraryPersistence persistence = new LibraryPersistence(libraryService, journal, generation,
+                                                                snapshotRecords, DeltaLog.open(deltaFile));
+        libraryService.setTransactionLog(persistence.journalWriter);
+        return persistence;
+    }
+
+    /**
+     * Save only what changed since the last flush or checkpoint: make the
+     * journal durable, then append the dirty books and members and the
+     * removals to the delta log as one batch covering it. Compacts the log
+     * into a new checkpoint once it outgrows half the snapshot.
+     *
+     * @return the number of books and members saved or removed
+     */
+    public synchronized int flush() throws IOException {
+        CatalogState state = libraryService.captureChanges(journal::getLastSequence);
+        List<String> removedBooks = state.getRemovedBookIds();
+        List<Book> books = state.getBooks();
+        List<String> removedMembers = state.getRemovedMemberIds();
+        List<Member> members = state.getMembers();
+        int changes = removedBooks.size() + books.size() + removedMembers.size() + members.size();
+        if (changes == 0) {
+            return 0; // The journal already covers any new transactions
+        }
+
+        try {
+            journal.sync();
+            delta.append(removedBooks, books, removedMembers, members, state.getSequence());
+        } catch (IOException | RuntimeException e) {
+            libraryService.requeueChanges(state);
+            throw e;
+        }
+
+        if (delta.getRecordCount() > Math.max(MIN_COMPACTION_RECORDS, snapshotRecords / 2)) {
+            checkpoint();
+        }
+        return changes;
+    }
+
+    /**
+     * Make the journal durable, write a snapshot covering it, move the
+     * transactions it covers out of the heap into monthly archives, and
+     * delete the journal segments those archives hold.
+     *
+     * The snapshot holds loans and fines exactly as of the journal sequence
+     * saved with it: transactions that commit while it is written are
+     * journaled after that sequence and left out of the snapshot.
+     */
+    public synchronized void checkpoint() throws IOException {
+        CatalogState state = libraryService.captureCatalog(journal::getLastSequence); // Removals are absent
+        List<Book> books = state.getBooks();
+        List<Member> members = state.getMembers();
+
+        delta.close(); // The old generation's log is deleted with it
+        try {
+            journal.sync();
+            generation = FileUtils.saveSnapshot(books, members, state.getSequence(), SNAPSHOT_FORMAT);
+            snapshotRecords = books.size() + members.size();
+        } catch (IOException | RuntimeException e) {
+            libraryService.requeueChanges(state);
+            throw e;
+        } finally {
+            delta = DeltaLog.open(FileUtils.getDeltaFile(generation));
+        }
+
+        // Segments are deleted only once every month with records in them is archived
+        long sequence = state.getSequence();
+        libraryService.archiveTransactions(state, (month, first, transactions) ->
+                MappedTransactionLog.open(FileUtils.savePartition(month, first, sequence, transactions)));
+        journal.roll();
+        journal.deleteSegmentsThrough(sequence);
+    }
+
+    /**
+     * Wait until every transaction recorded so far is on disk
+     */
+    public void sync() throws IOException {
+        journal.sync();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        libraryService.setTransactionLog(null);
+        try {
+            journal.close();
+        } finally {
+            delta.close();
+        }
+    }
+
+    /**
+     * Map the history saved before the journal existed, converting
+     * transactions.csv to DataFormat.BINARY the first time. The CSV file is
+     * left in place but not read again.
+     */
+    private static MappedTransactionLog openTransactionArchive() throws IOException {
+        File archiveFile = FileUtils.getTransactionsFile(DataFormat.BINARY);
+        if (!archiveFile.exists()) {
+            if (!FileUtils.getTransactionsFile(DataFormat.CSV).exists()) {
+                return null;
+            }
+            FileUtils.saveTransactions(FileUtils.loadTransactions(DataFormat.CSV), DataFormat.BINARY);
+        }
+        return MappedTransactionLog.open(archiveFile);
+    }
+
+    // The month the service files a transaction under, as named in the archives
+    private static YearMonth monthOf(Transaction transaction) {
+        LocalDateTime date = transaction.getTransactionDate();
+        return date != null ? YearMonth.from(date) : UNDATED;
+    }
+}
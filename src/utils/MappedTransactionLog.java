@@ -0,0 +1,336 @@
+package utils;
+
+import models.Transaction;
+import services.TransactionArchive;
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Memory-mapped, read-only view of a binary transactions file.
+ *
+ * Opening the log walks the mapped file once to record where each record
+ * starts and to decode the dictionaries of member IDs, book IDs and notes;
+ * no Transaction objects are created. Records are decoded on demand through
+ * a reusable {@link Cursor}, so iterating the whole history allocates only
+ * what the caller reads, and the file's pages live in the OS page cache
+ * rather than on the heap. Files larger than 2 GB are not supported.
+ *
+ * The scan also groups record numbers by member and by book into compact
+ * posting arrays, so one member's or one book's history is found without
+ * visiting any other record.
+ */
+public class MappedTransactionLog implements TransactionArchive {
+
+    private static final int FIXED_FIELDS_SIZE = 1 + 8 + 8 + 8 + 8; // type, three date-times, fine
+
+    // Set in a record's flags when its member or book entry introduces a new dictionary value
+    private static final byte DEFINES_MEMBER = 1;
+    private static final byte DEFINES_BOOK = 2;
+
+    private static final Transaction.TransactionType[] TYPES = Transaction.TransactionType.values();
+
+    private final MappedByteBuffer buffer;
+    private final int[] offsets;
+    private final byte[] flags;
+    private final String[] memberIds;
+    private final String[] bookIds;
+    private final String[] notes;
+    private final Map<String, Integer> memberIndexes;
+    private final Map<String, Integer> bookIndexes;
+    private final Postings memberPostings;
+    private final Postings bookPostings;
+
+    private MappedTransactionLog(MappedByteBuffer buffer, int[] offsets, byte[] flags,
+                                 List<String> memberIds, List<String> bookIds, List<String> notes,
+                                 int[] memberOf, int[] bookOf) {
+        this.buffer = buffer;
+        this.offsets = offsets;
+        this.flags = flags;
+        this.memberIds = memberIds.toArray(new String[0]);
+        this.bookIds = bookIds.toArray(new String[0]);
+        this.notes = notes.toArray(new String[0]);
+        this.memberIndexes = indexesOf(this.memberIds);
+        this.bookIndexes = indexesOf(this.bookIds);
+        this.memberPostings = new Postings(memberOf, this.memberIds.length);
+        this.bookPostings = new Postings(bookOf, this.bookIds.length);
+    }
+
+    /**
+     * Map a transactions file written in DataFormat.BINARY
+     */
+    public static MappedTransactionLog open(File file) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Transaction file too large to map: " + file);
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()); // Stays valid after close
+        }
+
+        if (buffer.limit() < BinaryFormat.HEADER_SIZE || buffer.getInt(0) != BinaryFormat.MAGIC) {
+            throw new IOException("Not a library data file: " + file);
+        }
+        if (buffer.getShort(4) != BinaryFormat.VERSION) {
+            throw new IOException("Unsupported library data file version: " + buffer.getShort(4));
+        }
+        if (buffer.get(6) != BinaryFormat.TRANSACTIONS) {
+            throw new IOException("Not a transactions file: " + file);
+        }
+
+        int count = buffer.getInt(7);
+        int[] offsets = new int[count];
+        byte[] flags = new byte[count];
+        int[] memberOf = new int[count];
+        int[] bookOf = new int[count];
+        List<String> memberIds = new ArrayList<>();
+        List<String> bookIds = new ArrayList<>();
+        List<String> notes = new ArrayList<>();
+        try {
+            int position = BinaryFormat.HEADER_SIZE;
+            for (int i = 0; i < count; i++) {
+                offsets[i] = position;
+                position = skipString(buffer, position); // transactionId
+                memberOf[i] = buffer.getInt(position);
+                int next = scanDictionaryEntry(buffer, position, memberIds);
+                if (next != position + 4) {
+                    flags[i] |= DEFINES_MEMBER;
+                }
+                position = next;
+                bookOf[i] = buffer.getInt(position);
+                next = scanDictionaryEntry(buffer, position, bookIds);
+                if (next != position + 4) {
+                    flags[i] |= DEFINES_BOOK;
+                }
+                position = next + FIXED_FIELDS_SIZE;
+                position = scanDictionaryEntry(buffer, position, notes);
+            }
+            if (position > buffer.limit()) {
+                throw new IndexOutOfBoundsException();
+            }
+        } catch (IndexOutOfBoundsException e) {
+            throw new EOFException("Transaction file ends mid-record: " + file);
+        }
+        return new MappedTransactionLog(buffer, offsets, flags, memberIds, bookIds, notes, memberOf, bookOf);
+    }
+
+    // TransactionArchive
+    @Override
+    public int size() {
+        return offsets.length;
+    }
+
+    @Override
+    public Transaction get(int index) {
+        return cursor().moveTo(index).toTransaction();
+    }
+
+    /**
+     * Materialize only the records of one member, checking the date range
+     * before decoding anything else
+     */
+    @Override
+    public List<Transaction> getMemberTransactions(String memberId, LocalDateTime from, LocalDateTime to) {
+        return select(memberPostings, memberIndexes.get(memberId), from, to);
+    }
+
+    @Override
+    public List<Transaction> getBookTransactions(String bookId, LocalDateTime from, LocalDateTime to) {
+        return select(bookPostings, bookIndexes.get(bookId), from, to);
+    }
+
+    private List<Transaction> select(Postings postings, Integer key, LocalDateTime from, LocalDateTime to) {
+        List<Transaction> result = new ArrayList<>();
+        if (key == null) {
+            return result;
+        }
+        Cursor cursor = cursor();
+        for (int i = postings.starts[key]; i < postings.starts[key + 1]; i++) {
+            cursor.moveTo(postings.records[i]);
+            LocalDateTime date = cursor.getTransactionDate();
+            if ((from == null || (date != null && !date.isBefore(from)))
+                    && (to == null || (date != null && date.isBefore(to)))) {
+                result.add(cursor.toTransaction());
+            }
+        }
+        return result;
+    }
+
+    // Flyweight access
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * Visit every record in order through one reused cursor. The cursor is
+     * only valid during the callback.
+     */
+    public void forEach(Consumer<Cursor> action) {
+        Cursor cursor = cursor();
+        for (int i = 0; i < offsets.length; i++) {
+            action.accept(cursor.moveTo(i));
+        }
+    }
+
+    /**
+     * A movable view of one record. Each getter decodes its field from the
+     * mapped file when called. Not thread-safe; use one cursor per thread.
+     */
+    public final class Cursor {
+        private int index = -1;
+        private int idPosition;
+        private int memberPosition;
+        private int bookPosition;
+        private int fixedPosition;
+        private int notesPosition;
+
+        private Cursor() {
+        }
+
+        public Cursor moveTo(int index) {
+            if (index < 0 || index >= offsets.length) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + offsets.length);
+            }
+            this.index = index;
+            this.idPosition = offsets[index];
+            this.memberPosition = skipString(buffer, idPosition);
+            this.bookPosition = (flags[index] & DEFINES_MEMBER) != 0 ? skipString(buffer, memberPosition + 4)
+                                                                     : memberPosition + 4;
+            this.fixedPosition = (flags[index] & DEFINES_BOOK) != 0 ? skipString(buffer, bookPosition + 4)
+                                                                   : bookPosition + 4;
+            this.notesPosition = fixedPosition + FIXED_FIELDS_SIZE;
+            return this;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public String getTransactionId() {
+            return decodeString(buffer, idPosition);
+        }
+
+        public String getMemberId() {
+            return lookup(memberIds, buffer.getInt(memberPosition));
+        }
+
+        public String getBookId() {
+            return lookup(bookIds, buffer.getInt(bookPosition));
+        }
+
+        public Transaction.TransactionType getType() {
+            return TYPES[buffer.get(fixedPosition) & 0xFF];
+        }
+
+        public LocalDateTime getTransactionDate() {
+            return decodeDateTime(buffer.getLong(fixedPosition + 1));
+        }
+
+        public LocalDateTime getDueDate() {
+            return decodeDateTime(buffer.getLong(fixedPosition + 9));
+        }
+
+        public LocalDateTime getReturnDate() {
+            return decodeDateTime(buffer.getLong(fixedPosition + 17));
+        }
+
+        public double getFineAmount() {
+            return buffer.getDouble(fixedPosition + 25);
+        }
+
+        public String getNotes() {
+            return lookup(notes, buffer.getInt(notesPosition));
+        }
+
+        // Copy the current record onto the heap
+        public Transaction toTransaction() {
+            Transaction transaction = new Transaction(getTransactionId(), getMemberId(), getBookId(), getType());
+            transaction.setTransactionDate(getTransactionDate());
+            transaction.setDueDate(getDueDate());
+            transaction.setReturnDate(getReturnDate());
+            transaction.setFineAmount(getFineAmount());
+            transaction.setNotes(getNotes());
+            return transaction;
+        }
+    }
+
+    /**
+     * Record numbers grouped by dictionary index, in record order: the
+     * records of key k are records[starts[k]] up to records[starts[k + 1]]
+     */
+    private static final class Postings {
+        private final int[] starts;
+        private final int[] records;
+
+        Postings(int[] keyOf, int keyCount) {
+            starts = new int[keyCount + 1];
+            int indexed = 0;
+            for (int key : keyOf) {
+                if (key != BinaryFormat.NULL_LENGTH) {
+                    starts[key + 1]++;
+                    indexed++;
+                }
+            }
+            for (int k = 0; k < keyCount; k++) {
+                starts[k + 1] += starts[k];
+            }
+            records = new int[indexed];
+            int[] next = Arrays.copyOf(starts, keyCount);
+            for (int i = 0; i < keyOf.length; i++) {
+                if (keyOf[i] != BinaryFormat.NULL_LENGTH) {
+                    records[next[keyOf[i]]++] = i;
+                }
+            }
+        }
+    }
+
+    private static Map<String, Integer> indexesOf(String[] dictionary) {
+        Map<String, Integer> indexes = new HashMap<>(dictionary.length * 2);
+        for (int i = 0; i < dictionary.length; i++) {
+            indexes.put(dictionary[i], i);
+        }
+        return indexes;
+    }
+
+    // Decoding helpers, all using absolute reads so cursors never share a position
+    private static int skipString(MappedByteBuffer buffer, int position) {
+        int length = buffer.getInt(position);
+        return position + 4 + Math.max(length, 0);
+    }
+
+    // Returns the position after the entry, adding its value if it is a first occurrence
+    private static int scanDictionaryEntry(MappedByteBuffer buffer, int position, List<String> dictionary) {
+        int index = buffer.getInt(position);
+        if (index == dictionary.size()) {
+            dictionary.add(decodeString(buffer, position + 4));
+            return skipString(buffer, position + 4);
+        }
+        return position + 4;
+    }
+
+    private static String decodeString(MappedByteBuffer buffer, int position) {
+        int length = buffer.getInt(position);
+        if (length == BinaryFormat.NULL_LENGTH) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = buffer.get(position + 4 + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static LocalDateTime decodeDateTime(long epochSecond) {
+        return epochSecond != BinaryFormat.NO_DATETIME ? LocalDateTime.ofEpochSecond(epochSecond, 0, ZoneOffset.UTC) : null;
+    }
+
+    private static String lookup(String[] dictionary, int index) {
+        return index != BinaryFormat.NULL_LENGTH ? dictionary[index] : null;
+    }
+}
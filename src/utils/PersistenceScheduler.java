@@ -0,0 +1,307 @@
+package utils;
+
+import models.*;
+import services.LibraryService;
+import java.io.*;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Saves a LibraryService in the background so that no caller waits for the
+ * disk.
+ *
+ * Transactions and added or removed books and members only bump a counter
+ * of pending changes; a single writer thread coalesces them and runs
+ * {@link LibraryPersistence#flush()} once the flush interval has passed or
+ * as soon as the flush threshold is reached, so a burst of checkouts costs
+ * one incremental save. If the writer falls behind by more than the
+ * maximum number of pending changes, threads recording transactions wait
+ * for it to catch up (back-pressure) instead of letting unsaved work grow
+ * without bound. {@link #close()} stops the writer after a final flush.
+ * A save that fails, with any exception, is retried at the next interval;
+ * should the writer thread die anyway, waiting callers get an error rather
+ * than waiting forever.
+ *
+ * The writer also reserves transaction numbers ahead of time once the
+ * service runs low, so checkouts never wait for that disk write either.
+ *
+ * Changes made through entity setters alone, outside the service, raise no
+ * event; they are saved by the next flush.
+ */
+public class PersistenceScheduler implements Closeable {
+
+    public static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 1000;
+    public static final int DEFAULT_FLUSH_THRESHOLD = 1000;
+    public static final int DEFAULT_MAX_PENDING_CHANGES = 100_000;
+
+    private final LibraryService libraryService;
+    private final LibraryPersistence persistence;
+    private final long flushIntervalMillis;
+    private final long flushThreshold;
+    private final long maxPendingChanges;
+    private final AtomicLong pendingChanges;
+    private final LibraryService.TransactionListener transactionCounter;
+    private final LibraryService.EntityListener entityCounter;
+    private final Object lock = new Object();
+    private final Thread writer;
+    private volatile boolean reservationRequested; // Set under lock, read without it to spare the lock
+
+    // Guarded by lock
+    private boolean flushRequested;
+    private long startedFlushes;
+    private long completedFlushes;
+    private boolean closed;
+    private boolean stopped; // The writer thread has exited
+    private IOException failure;
+
+    private PersistenceScheduler(LibraryService libraryService, LibraryPersistence persistence,
+                                 long flushIntervalMillis, long flushThreshold, long maxPendingChanges) {
+        this.libraryService = libraryService;
+        this.persistence = persistence;
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.flushThreshold = flushThreshold;
+        this.maxPendingChanges = maxPendingChanges;
+        this.pendingChanges = new AtomicLong();
+        this.transactionCounter = this::onTransactionsRecorded;
+        this.entityCounter = new LibraryService.EntityListener() {
+            @Override
+            public void onBookAdded(Book book) {
+                changed(1);
+            }
+
+            @Override
+            public void onBookRemoved(Book book) {
+                changed(1);
+            }
+
+            @Override
+            public void onMemberAdded(Member member) {
+                changed(1);
+            }
+
+            @Override
+            public void onMemberRemoved(Member member) {
+                changed(1);
+            }
+        };
+        this.writer = new Thread(this::runWriter, "library-persistence-writer");
+        this.writer.setDaemon(true);
+    }
+
+    public static PersistenceScheduler start(LibraryService libraryService, LibraryPersistence persistence) {
+        return start(libraryService, persistence, DEFAULT_FLUSH_INTERVAL_MILLIS, DEFAULT_FLUSH_THRESHOLD,
+                     DEFAULT_MAX_PENDING_CHANGES);
+    }
+
+    /**
+     * Start saving the service's changes in the background
+     *
+     * @param flushIntervalMillis longest time a change waits before it is saved
+     * @param flushThreshold pending changes that trigger a flush before the interval ends
+     * @param maxPendingChanges pending changes beyond which recording transactions waits for the writer
+     */
+    public static PersistenceScheduler start(LibraryService libraryService, LibraryPersistence persistence,
+                                             long flushIntervalMillis, int flushThreshold,
+                                             int maxPendingChanges) {
+        if (flushIntervalMillis <= 0 || flushThreshold < 1 || maxPendingChanges < flushThreshold) {
+            throw new IllegalArgumentException("Invalid flush interval or thresholds");
+        }
+        PersistenceScheduler scheduler = new PersistenceScheduler(libraryService, persistence,
+                flushIntervalMillis, flushThreshold, maxPendingChanges);
+        libraryService.addTransactionListener(scheduler.transactionCounter);
+        libraryService.addEntityListener(scheduler.entityCounter);
+        scheduler.writer.start();
+        return scheduler;
+    }
+
+    /**
+     * Ask the writer to flush now, without waiting for it
+     */
+    public void requestFlush() {
+        synchronized (lock) {
+            flushRequested = true;
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Flush now and wait until everything changed before this call is saved
+     */
+    public void flush() throws IOException {
+        synchronized (lock) {
+            long target = startedFlushes + 1; // A flush already running may have missed recent changes
+            flushRequested = true;
+            lock.notifyAll();
+            while (completedFlushes < target && !closed && !stopped) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for flush");
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    public long getPendingChanges() {
+        return pendingChanges.get();
+    }
+
+    /**
+     * Stop listening for changes, save what is pending, and stop the writer
+     */
+    @Override
+    public void close() throws IOException {
+        libraryService.removeTransactionListener(transactionCounter);
+        libraryService.removeEntityListener(entityCounter);
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            lock.notifyAll();
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (lock) {
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    // Change events
+    private void onTransactionsRecorded(List<Transaction> transactions) {
+        changed(transactions.size());
+        if (!reservationRequested && libraryService.needsTransactionIdReservation()) {
+            synchronized (lock) {
+                reservationRequested = true;
+                lock.notifyAll();
+            }
+        }
+        if (pendingChanges.get() >= maxPendingChanges) {
+            awaitCapacity();
+        }
+    }
+
+    private void changed(int count) {
+        long pending = pendingChanges.addAndGet(count);
+        if (pending >= flushThreshold && pending - count < flushThreshold) {
+            requestFlush(); // Only the change that crosses the threshold wakes the writer
+        }
+    }
+
+    // Back-pressure: wait while the writer is too far behind, unless it has stopped
+    private void awaitCapacity() {
+        synchronized (lock) {
+            while (pendingChanges.get() >= maxPendingChanges && !closed && !stopped && failure == null) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    // Writer
+    private void runWriter() {
+        try {
+            writeUntilClosed();
+        } finally {
+            // Whatever ended the writer, nobody may keep waiting for it
+            synchronized (lock) {
+                stopped = true;
+                if (!closed && failure == null) {
+                    failure = new IOException("Background writer stopped unexpectedly");
+                }
+                lock.notifyAll();
+            }
+        }
+    }
+
+    private void writeUntilClosed() {
+        boolean retrying = false;
+        long deadline = System.currentTimeMillis() + flushIntervalMillis;
+        while (true) {
+            boolean stopping;
+            boolean requested;
+            boolean reserving;
+            boolean flushing;
+            synchronized (lock) {
+                long remaining;
+                try {
+                    // After a failure only the interval or an explicit request triggers the retry
+                    while (!closed && !flushRequested && !reservationRequested
+                            && (retrying || pendingChanges.get() < flushThreshold)
+                            && (remaining = deadline - System.currentTimeMillis()) > 0) {
+                        lock.wait(remaining);
+                    }
+                } catch (InterruptedException e) {
+                    // Flush what we have
+                }
+                stopping = closed;
+                reserving = reservationRequested;
+                reservationRequested = false;
+                if (reserving && !stopping && !flushRequested && System.currentTimeMillis() < deadline
+                        && (retrying || pendingChanges.get() < flushThreshold)) {
+                    flushing = false; // Woken only to reserve; the flush waits for its turn
+                    requested = false;
+                } else {
+                    flushing = true;
+                    requested = flushRequested;
+                    flushRequested = false;
+                    startedFlushes++;
+                }
+            }
+
+            if (reserving) {
+                try {
+                    libraryService.reserveTransactionIds();
+                } catch (IOException | RuntimeException e) {
+                    // Checkouts reserve the block themselves and report the failure if it persists
+                    System.err.println("Reserving transaction IDs failed, will retry: " + e.getMessage());
+                }
+            }
+            if (!flushing) {
+                continue;
+            }
+            deadline = System.currentTimeMillis() + flushIntervalMillis;
+
+            long flushed = pendingChanges.get();
+            IOException error = null;
+            try {
+                if (flushed > 0 || requested || stopping) {
+                    persistence.flush();
+                }
+            } catch (IOException e) {
+                error = e;
+            } catch (RuntimeException e) {
+                error = new IOException("Unexpected error while saving: " + e, e);
+            }
+            if (error != null) {
+                System.err.println("Background save failed, will retry: " + error.getMessage());
+            }
+
+            retrying = error != null;
+            synchronized (lock) {
+                if (error == null) {
+                    pendingChanges.addAndGet(-flushed);
+                }
+                failure = error; // Cleared again by the next successful flush
+                completedFlushes++;
+                lock.notifyAll();
+                if (stopping) {
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package utils;
+
+import java.time.*;
+
+/**
+ * A clock that only moves when told to, so a LibraryService built on it
+ * can replay days of circulation as fast as the CPU allows, with the same
+ * dates on every run.
+ */
+public class SimulationClock extends Clock {
+    private final ZoneId zone;
+    private volatile Instant instant;
+
+    public SimulationClock(LocalDateTime start) {
+        this(start, ZoneOffset.UTC);
+    }
+
+    public SimulationClock(LocalDateTime start, ZoneId zone) {
+        this.zone = zone;
+        this.instant = start.atZone(zone).toInstant();
+    }
+
+    private SimulationClock(Instant instant, ZoneId zone) {
+        this.zone = zone;
+        this.instant = instant;
+    }
+
+    @Override
+    public ZoneId getZone() {
+        return zone;
+    }
+
+    // A frozen copy in another zone; it does not follow this clock
+    @Override
+    public Clock withZone(ZoneId zone) {
+        return new SimulationClock(instant, zone);
+    }
+
+    @Override
+    public Instant instant() {
+        return instant;
+    }
+
+    public LocalDateTime now() {
+        return LocalDateTime.ofInstant(instant, zone);
+    }
+
+    // Business methods
+    public void advance(Duration duration) {
+        if (duration.isNegative()) {
+            throw new IllegalArgumentException("Simulated time cannot go back: " + duration);
+        }
+        instant = instant.plus(duration);
+    }
+
+    public void advanceTo(LocalDateTime dateTime) {
+        Instant target = dateTime.atZone(zone).toInstant();
+        if (target.isBefore(instant)) {
+            throw new IllegalArgumentException("Simulated time cannot go back to " + dateTime);
+        }
+        instant = target;
+    }
+}
@@ -0,0 +1,122 @@
+package utils;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Outcome of a circulation simulation: how much traffic was replayed, how
+ * fast, and the fines and overdue loans it left behind
+ */
+public class SimulationReport {
+    private final int days;
+    private final long borrowsAttempted;
+    private final long borrows;
+    private final long returns;
+    private final long finePayments;
+    private final double finesCharged;
+    private final double finesPaid;
+    private final double finesOutstanding;
+    private final long elapsedNanos;
+    private final Map<String, Long> refusals;
+    private final Map<String, Long> returnFines;
+    private final Map<String, Long> overdueLoans;
+    private final Map<String, Long> memberFines;
+
+    SimulationReport(int days, long borrowsAttempted, long borrows, long returns, long finePayments,
+                     double finesCharged, double finesPaid, double finesOutstanding, long elapsedNanos,
+                     Map<String, Long> refusals, Map<String, Long> returnFines,
+                     Map<String, Long> overdueLoans, Map<String, Long> memberFines) {
+        this.days = days;
+        this.borrowsAttempted = borrowsAttempted;
+        this.borrows = borrows;
+        this.returns = returns;
+        this.finePayments = finePayments;
+        this.finesCharged = finesCharged;
+        this.finesPaid = finesPaid;
+        this.finesOutstanding = finesOutstanding;
+        this.elapsedNanos = elapsedNanos;
+        this.refusals = Collections.unmodifiableMap(new LinkedHashMap<>(refusals));
+        this.returnFines = Collections.unmodifiableMap(new LinkedHashMap<>(returnFines));
+        this.overdueLoans = Collections.unmodifiableMap(new LinkedHashMap<>(overdueLoans));
+        this.memberFines = Collections.unmodifiableMap(new LinkedHashMap<>(memberFines));
+    }
+
+    // Getters
+    public int getDays() {
+        return days;
+    }
+
+    public long getBorrowsAttempted() {
+        return borrowsAttempted;
+    }
+
+    public long getBorrows() {
+        return borrows;
+    }
+
+    public long getReturns() {
+        return returns;
+    }
+
+    public long getFinePayments() {
+        return finePayments;
+    }
+
+    public double getFinesCharged() {
+        return finesCharged;
+    }
+
+    public double getFinesPaid() {
+        return finesPaid;
+    }
+
+    public double getFinesOutstanding() {
+        return finesOutstanding;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedNanos / 1_000_000;
+    }
+
+    // Borrow attempts, returns and payments replayed
+    public long getOperations() {
+        return borrowsAttempted + returns + finePayments;
+    }
+
+    public double getOperationsPerSecond() {
+        return elapsedNanos > 0 ? getOperations() * 1_000_000_000.0 / elapsedNanos : 0;
+    }
+
+    public double getDaysPerSecond() {
+        return elapsedNanos > 0 ? days * 1_000_000_000.0 / elapsedNanos : 0;
+    }
+
+    // Refused borrows by the service's message
+    public Map<String, Long> getRefusals() {
+        return refusals;
+    }
+
+    // Fines charged on returns, by amount
+    public Map<String, Long> getReturnFines() {
+        return returnFines;
+    }
+
+    // Books still out past their due date at the end, by days overdue
+    public Map<String, Long> getOverdueLoans() {
+        return overdueLoans;
+    }
+
+    // Members owing fines at the end, by amount owed
+    public Map<String, Long> getMemberFines() {
+        return memberFines;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("SimulationReport{Days=%d, Borrows=%d/%d, Returns=%d, Payments=%d, " +
+                             "Fines=$%.2f charged/$%.2f paid/$%.2f outstanding, Time=%dms, Rate=%.0f ops/s}",
+                days, borrows, borrowsAttempted, returns, finePayments, finesCharged, finesPaid,
+                finesOutstanding, getElapsedMillis(), getOperationsPerSecond());
+    }
+}
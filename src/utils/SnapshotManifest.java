@@ -0,0 +1,92 @@
+package utils;
+
+import java.io.*;
+import java.util.Properties;
+
+/**
+ * The manifest (snapshot.properties) naming the files of the current
+ * snapshot generation and the journal sequence the snapshot includes.
+ *
+ * Snapshot files are written under new generation-numbered names and only
+ * become current when the manifest pointing at them is renamed into place,
+ * so readers always see one complete generation.
+ */
+final class SnapshotManifest {
+
+    private final long generation;
+    private final DataFormat format;
+    private final long journalSequence;
+    private final String booksFile;
+    private final String membersFile;
+    private final String createdAt;
+
+    SnapshotManifest(long generation, DataFormat format, long journalSequence,
+                     String booksFile, String membersFile, String createdAt) {
+        this.generation = generation;
+        this.format = format;
+        this.journalSequence = journalSequence;
+        this.booksFile = booksFile;
+        this.membersFile = membersFile;
+        this.createdAt = createdAt;
+    }
+
+    /**
+     * Read a manifest, or return null if there is none. Manifests written
+     * before generations existed point at the plain books and members files.
+     */
+    static SnapshotManifest read(File file) throws IOException {
+        if (!file.exists()) {
+            return null;
+        }
+
+        Properties properties = new Properties();
+        try (InputStream in = new FileInputStream(file)) {
+            properties.load(in);
+        }
+        DataFormat format = DataFormat.valueOf(properties.getProperty("format", DataFormat.CSV.name()));
+        return new SnapshotManifest(
+            Long.parseLong(properties.getProperty("generation", "0")),
+            format,
+            Long.parseLong(properties.getProperty("journalSequence", "0")),
+            properties.getProperty("books", "books" + format.getExtension()),
+            properties.getProperty("members", "members" + format.getExtension()),
+            properties.getProperty("createdAt", "")
+        );
+    }
+
+    void write(OutputStream out) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("generation", Long.toString(generation));
+        properties.setProperty("format", format.name());
+        properties.setProperty("journalSequence", Long.toString(journalSequence));
+        properties.setProperty("books", booksFile);
+        properties.setProperty("members", membersFile);
+        properties.setProperty("createdAt", createdAt);
+        properties.store(out, "Library snapshot manifest");
+    }
+
+    // Getters
+    long getGeneration() {
+        return generation;
+    }
+
+    DataFormat getFormat() {
+        return format;
+    }
+
+    long getJournalSequence() {
+        return journalSequence;
+    }
+
+    String getBooksFile() {
+        return booksFile;
+    }
+
+    String getMembersFile() {
+        return membersFile;
+    }
+
+    String getCreatedAt() {
+        return createdAt;
+    }
+}
@@ -0,0 +1,430 @@
+package utils;
+
+import models.Transaction;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Append-only journal of library transactions.
+ *
+ * Each record is one CSV row: a journal sequence number followed by the same
+ * columns as transactions.csv. Appends only buffer the record; a committer
+ * thread writes everything buffered since the last commit and fsyncs it in
+ * one go (group commit), either after the commit interval elapses, when the
+ * buffer grows past its threshold, or when a caller asks for {@link #sync()}.
+ * A record cut short by a crash is detected on open and truncated away.
+ *
+ * {@link #roll()} seals the file written so far as a segment named after its
+ * last sequence number, e.g. transactions.journal.000000001234, and
+ * continues in a new file, so records that are saved elsewhere can be
+ * deleted a segment at a time. Reading covers the segments and the current
+ * file in order.
+ */
+public class TransactionJournal implements Closeable {
+
+    private static final int MAX_PENDING_BYTES = 256 * 1024;
+    private static final Pattern SEGMENT_SUFFIX = Pattern.compile("\\.(\\d{12})");
+
+    private final File file;
+    private FileChannel channel; // Used by the committer thread only once it runs
+    private final long commitIntervalMillis;
+    private final Object lock = new Object();
+    private final Thread committer;
+
+    // Guarded by lock
+    private final ByteArrayOutputStream pending;
+    private final CsvWriter pendingWriter;
+    private long nextSequence;
+    private long appendedSequence;
+    private long durableSequence;
+    private long sealedSequence; // Last sequence number in a sealed segment
+    private long rollSequence = -1; // Seal after this record, once committed; -1 if no roll is requested
+    private int rollOffset; // Where in pending that record ends
+    private boolean syncRequested;
+    private boolean closed;
+    private IOException failure;
+
+    private TransactionJournal(File file, FileChannel channel, long lastSequence, long sealedSequence,
+                               long commitIntervalMillis) {
+        this.file = file;
+        this.channel = channel;
+        this.commitIntervalMillis = commitIntervalMillis;
+        this.pending = new ByteArrayOutputStream(MAX_PENDING_BYTES);
+        this.pendingWriter = new CsvWriter(Channels.newChannel(pending));
+        this.nextSequence = lastSequence + 1;
+        this.appendedSequence = lastSequence;
+        this.durableSequence = lastSequence;
+        this.sealedSequence = sealedSequence;
+        this.committer = new Thread(this::runCommitter, "transaction-journal-committer");
+        this.committer.setDaemon(true);
+    }
+
+    /**
+     * Open (or create) a journal for appending, dropping any torn final record.
+     * Numbering continues after the last record of the file or its segments,
+     * or after floorSequence if that is higher: once the segments holding
+     * the newest records are deleted, only the files saved from them still
+     * know how far numbering got.
+     */
+    public static TransactionJournal open(File file, long floorSequence, long commitIntervalMillis)
+            throws IOException {
+        ScanResult scan = scan(file, Long.MAX_VALUE, null);
+        NavigableMap<Long, File> segments = segments(file);
+        long sealedSequence = segments.isEmpty() ? 0 : segments.lastKey();
+        if (scan.validLength == 0) {
+            sealedSequence = Math.max(sealedSequence, floorSequence); // Nothing in the file to seal
+        }
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                                               StandardOpenOption.WRITE);
+        if (channel.size() > scan.validLength) {
+            channel.truncate(scan.validLength);
+            channel.force(true);
+        }
+        channel.position(scan.validLength);
+
+        long lastSequence = Math.max(floorSequence, Math.max(scan.lastSequence, sealedSequence));
+        TransactionJournal journal = new TransactionJournal(file, channel, lastSequence, sealedSequence,
+                                                            commitIntervalMillis);
+        journal.committer.start();
+        return journal;
+    }
+
+    /**
+     * Read every complete record with a sequence number greater than
+     * afterSequence, skipping segments that end before it
+     */
+    public static List<Entry> read(File file, long afterSequence) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        for (File segment : segments(file).tailMap(afterSequence, false).values()) {
+            scan(segment, afterSequence, entries);
+        }
+        scan(file, afterSequence, entries);
+        return entries;
+    }
+
+    // Sealed segments of the journal file, by their last sequence number
+    static NavigableMap<Long, File> segments(File file) {
+        NavigableMap<Long, File> segments = new TreeMap<>();
+        File[] siblings = file.getAbsoluteFile().getParentFile().listFiles();
+        if (siblings == null) {
+            return segments;
+        }
+        for (File sibling : siblings) {
+            String name = sibling.getName();
+            if (name.startsWith(file.getName())) {
+                Matcher matcher = SEGMENT_SUFFIX.matcher(name.substring(file.getName().length()));
+                if (matcher.matches()) {
+                    segments.put(Long.parseLong(matcher.group(1)), sibling);
+                }
+            }
+        }
+        return segments;
+    }
+
+    // Appending
+    public long append(Transaction transaction) {
+        return append(Collections.singletonList(transaction));
+    }
+
+    /**
+     * Buffer the transactions for the next group commit
+     *
+     * @return the sequence number of the last record appended
+     */
+    public long append(List<Transaction> transactions) {
+        synchronized (lock) {
+            if (closed) {
+                throw new IllegalStateException("Journal is closed");
+            }
+            try {
+                for (Transaction transaction : transactions) {
+                    transaction.markClean();
+                    pendingWriter.field(nextSequence++);
+                    FileUtils.writeTransactionFields(pendingWriter, transaction);
+                    pendingWriter.endRow();
+                }
+                pendingWriter.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e); // Not expected from an in-memory buffer
+            }
+            appendedSequence = nextSequence - 1;
+            if (pending.size() >= MAX_PENDING_BYTES) {
+                lock.notifyAll();
+            }
+            return appendedSequence;
+        }
+    }
+
+    /**
+     * Commit immediately and wait until everything appended so far is on disk
+     */
+    public void sync() throws IOException {
+        synchronized (lock) {
+            long target = appendedSequence;
+            syncRequested = true;
+            lock.notifyAll();
+            while (durableSequence < target && failure == null) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for journal sync");
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    public long getLastSequence() {
+        synchronized (lock) {
+            return appendedSequence;
+        }
+    }
+
+    public long getDurableSequence() {
+        synchronized (lock) {
+            return durableSequence;
+        }
+    }
+
+    // Segments
+
+    /**
+     * Commit everything appended so far and seal it as a segment; later
+     * records go to a new file. Appends carry on meanwhile.
+     *
+     * @return the last sequence number sealed, which is the previous one
+     *         if nothing was appended since
+     */
+    public long roll() throws IOException {
+        synchronized (lock) {
+            if (appendedSequence == sealedSequence) {
+                return sealedSequence;
+            }
+            long target = appendedSequence;
+            if (rollSequence < 0) {
+                rollSequence = target;
+                rollOffset = pending.size();
+            }
+            syncRequested = true;
+            lock.notifyAll();
+            while (sealedSequence < target && failure == null) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while rolling the journal");
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            return sealedSequence;
+        }
+    }
+
+    /**
+     * Delete the sealed segments whose records all have a sequence number
+     * of at most the given one
+     *
+     * @return the number of segments deleted
+     */
+    public int deleteSegmentsThrough(long sequence) throws IOException {
+        int deleted = 0;
+        for (File segment : segments(file).headMap(sequence, true).values()) {
+            Files.deleteIfExists(segment.toPath());
+            deleted++;
+        }
+        return deleted;
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            lock.notifyAll();
+        }
+        try {
+            committer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+        synchronized (lock) {
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    // Group commit
+    private void runCommitter() {
+        while (true) {
+            byte[] batch;
+            long batchSequence;
+            long sealAfter;
+            int sealOffset;
+            synchronized (lock) {
+                try {
+                    while (pending.size() == 0 && rollSequence < 0 && !closed) {
+                        syncRequested = false;
+                        lock.wait();
+                    }
+                    if (pending.size() == 0 && rollSequence < 0) {
+                        return; // Closed with nothing left to write
+                    }
+                    // Let more appends join this commit unless someone is waiting
+                    long deadline = System.currentTimeMillis() + commitIntervalMillis;
+                    long remaining;
+                    while (!syncRequested && !closed && pending.size() < MAX_PENDING_BYTES
+                            && (remaining = deadline - System.currentTimeMillis()) > 0) {
+                        lock.wait(remaining);
+                    }
+                } catch (InterruptedException e) {
+                    // Fall through and commit what we have
+                }
+                batch = pending.toByteArray();
+                batchSequence = appendedSequence;
+                sealAfter = rollSequence;
+                sealOffset = rollOffset;
+                pending.reset();
+                rollSequence = -1;
+                syncRequested = false;
+            }
+
+            try {
+                if (sealAfter < 0) {
+                    write(ByteBuffer.wrap(batch));
+                } else {
+                    write(ByteBuffer.wrap(batch, 0, sealOffset));
+                    seal(sealAfter);
+                    write(ByteBuffer.wrap(batch, sealOffset, batch.length - sealOffset));
+                }
+            } catch (IOException e) {
+                synchronized (lock) {
+                    failure = e;
+                    lock.notifyAll();
+                }
+                return;
+            }
+
+            synchronized (lock) {
+                durableSequence = batchSequence;
+                if (sealAfter >= 0) {
+                    sealedSequence = sealAfter;
+                }
+                lock.notifyAll();
+            }
+        }
+    }
+
+    private void write(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        channel.force(false);
+    }
+
+    // Rename the file, ending with the given record, to a segment and start a new one
+    private void seal(long lastSequence) throws IOException {
+        channel.close();
+        File segment = new File(file.getPath() + String.format(".%012d", lastSequence));
+        Files.move(file.toPath(), segment.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                   StandardOpenOption.TRUNCATE_EXISTING);
+        FileUtils.syncDirectory(file.getAbsoluteFile().getParentFile());
+    }
+
+    // Reading
+    /**
+     * Walk the journal record by record. Records end at a newline outside
+     * double quotes; '"' and '\n' are ASCII, so scanning raw UTF-8 bytes is
+     * safe. A trailing record without its newline is a torn write and is not
+     * counted as valid.
+     */
+    private static ScanResult scan(File file, long afterSequence, List<Entry> entries) throws IOException {
+        ScanResult result = new ScanResult();
+        if (!file.exists()) {
+            return result;
+        }
+
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file), 64 * 1024)) {
+            ByteArrayOutputStream record = new ByteArrayOutputStream(256);
+            boolean inQuotes = false;
+            long position = 0;
+            int b;
+            while ((b = in.read()) != -1) {
+                position++;
+                if (b == '"') {
+                    inQuotes = !inQuotes;
+                } else if (b == '\n' && !inQuotes) {
+                    parseRecord(record.toString(StandardCharsets.UTF_8.name()), afterSequence, entries, result);
+                    result.validLength = position;
+                    record.reset();
+                    continue;
+                }
+                record.write(b);
+            }
+        }
+        return result;
+    }
+
+    private static void parseRecord(String line, long afterSequence, List<Entry> entries, ScanResult result) {
+        if (line.isEmpty()) {
+            return;
+        }
+        try {
+            String[] parts = FileUtils.parseCsvLine(line);
+            long sequence = Long.parseLong(parts[0]);
+            result.lastSequence = Math.max(result.lastSequence, sequence);
+            if (entries != null && sequence > afterSequence) {
+                Transaction transaction = FileUtils.parseTransaction(parts, 1);
+                if (transaction != null) {
+                    entries.add(new Entry(sequence, transaction));
+                }
+            }
+        } catch (RuntimeException e) {
+            System.err.println("Skipping unreadable journal record: " + e.getMessage());
+        }
+    }
+
+    private static final class ScanResult {
+        private long validLength = 0;
+        private long lastSequence = 0;
+    }
+
+    /**
+     * A journaled transaction and its sequence number
+     */
+    public static class Entry {
+        private final long sequence;
+        private final Transaction transaction;
+
+        public Entry(long sequence, Transaction transaction) {
+            this.sequence = sequence;
+            this.transaction = transaction;
+        }
+
+        public long getSequence() {
+            return sequence;
+        }
+
+        public Transaction getTransaction() {
+            return transaction;
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package utils;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Ranks 0..n-1 drawn with probability proportional to 1 / (rank + 1)^exponent,
+ * so a few ranks are drawn very often and most rarely, like loans of a
+ * library's catalog. Sampling is a binary search of the cumulative weights.
+ */
+final class ZipfDistribution {
+    private final double[] cumulative; // cumulative[i] = P(rank <= i)
+
+    ZipfDistribution(int size, double exponent) {
+        if (size < 1 || exponent <= 0) {
+            throw new IllegalArgumentException("Invalid Zipf distribution: size=" + size + ", exponent=" + exponent);
+        }
+        this.cumulative = new double[size];
+        double total = 0;
+        for (int i = 0; i < size; i++) {
+            total += 1.0 / Math.pow(i + 1, exponent);
+            cumulative[i] = total;
+        }
+        for (int i = 0; i < size; i++) {
+            cumulative[i] /= total;
+        }
+    }
+
+    int sample(Random random) {
+        int index = Arrays.binarySearch(cumulative, random.nextDouble());
+        int rank = index >= 0 ? index : -index - 1;
+        return Math.min(rank, cumulative.length - 1); // Rounding can leave the last weight just under 1
+    }
+
+    int size() {
+        return cumulative.length;
+    }
+}